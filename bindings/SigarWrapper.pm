@@ -1215,6 +1215,11 @@ use vars qw(%classes %cmds);
          desc => '',
          plat => 'LFS'
       },
+      {
+         name => 'inode', type => 'Long',
+         desc => 'Socket inode, used to find the owning process',
+         plat => 'L'
+      },
     ],
     #only for jfieldId cache/setters
     NetStat => [
@@ -1837,6 +1842,8 @@ my %init = (
     String => 'null',
 );
 
+my %direct_types = map { $_ => 1 } qw(Long Double Int Char);
+
 my %type = (
     String  => 'String',
 );
@@ -2002,6 +2009,12 @@ sub generate_class {
 
     my $jfh = $self->create_jfile($class);
 
+    #numeric fields can also be written to a direct ByteBuffer
+    my @direct_fields =
+      grep { $direct_types{$_->{type}} } @{ $func->{fields} };
+    my $has_direct = $func->{has_get} && @direct_fields &&
+      !$self->jfile_exists($class);
+
     print $cfh <<EOF if $func->{has_get};
 
 $proto;
@@ -2027,6 +2040,61 @@ $proto
 
 EOF
 
+    my $direct_code = "";
+
+    if ($has_direct) {
+        my $directfunc = join '_', $jni_prefix, 'gatherDirect';
+        my $direct_define = "JAVA_SIGAR_DIRECT_FIELDS_\U$class";
+        my $direct_proto = join "\n",
+          "JNIEXPORT void JNICALL $directfunc",
+            "(JNIEnv *env, jobject obj, jobject sigar_obj$args_proto,",
+            " jobject buffer, jint offset)";
+
+        $direct_code = <<EOF;
+
+$direct_proto;
+
+$direct_proto
+{
+    $func->{sigar_type} s;
+    int status;
+    char *ptr;
+    $decl_string
+    dSIGAR_VOID;
+
+    $get_string
+
+    status = $func->{sigar_function}(sigar,${args}&s);
+
+    $release_string
+
+    if (status != SIGAR_OK) {
+        sigar_throw_error(env, jsigar, status);
+        return;
+    }
+
+    ptr = JENV->GetDirectBufferAddress(env, buffer);
+    if (!ptr) {
+        sigar_throw_exception(env, "buffer is not direct");
+        return;
+    }
+
+    $direct_define(ptr + offset, s);
+}
+EOF
+
+        my @direct = ("\#define $direct_define(ptr, s)");
+        my $offset = 0;
+        for my $field (@direct_fields) {
+            my $member = $field->{member} || $field->{name};
+            my $ctype = $field->{type} eq 'Double' ? 'jdouble' : 'jlong';
+            push @direct,
+              "    JAVA_SIGAR_DIRECT_SET(ptr, $offset, $ctype, s.$member)";
+            $offset += 8;
+        }
+        print $hfh join(' \\' . "\n", @direct), "\n\n";
+    }
+
     my $jargs_proto = 'Sigar sigar';
     my $jargs = 'sigar';
 
@@ -2049,10 +2117,12 @@ EOF
             SigarWrapper::hash($field->{name});
     }
 
+    my $imports = $has_direct ? "import java.nio.ByteBuffer;\n" : "";
+
     print $jfh <<EOF;
 package $self->{package};
 
-import java.util.HashMap;
+${imports}import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -2080,6 +2150,53 @@ public class $class implements java.io.Serializable {
 
 EOF
 
+    if ($has_direct) {
+        my $offset = 0;
+        for my $field (@direct_fields) {
+            my $name = $field->{name};
+            my $type = $field->{type} eq 'Double' ? 'double' : 'long';
+            print $jfh "    /** Offset of the $name field, stored as a $type. */\n";
+            print $jfh "    public static final int OFFSET_\U$name\E = $offset;\n";
+            $offset += 8;
+        }
+
+        print $jfh <<EOF;
+
+    /**
+     * Number of bytes written by gather into a direct buffer.
+     */
+    public static final int DIRECT_SIZE = $offset;
+
+    native void gatherDirect($jargs_proto,
+                             ByteBuffer buffer, int offset)
+        throws SigarException;
+
+    /**
+     * Gather the numeric fields directly into a ByteBuffer,
+     * without allocating any objects.
+     * Each field is written to an 8 byte slot at <code>offset</code>
+     * plus its OFFSET_* constant, in the native byte order.
+     * Long, Int and Char fields are widened to long.
+     * \@param buffer A buffer from ByteBuffer.allocateDirect().
+     * \@param offset Position in the buffer to start writing.
+     * \@exception SigarException on failure.
+     */
+    public void gather($jargs_proto,
+                       ByteBuffer buffer, int offset)
+        throws SigarException {
+
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer is not direct");
+        }
+        if ((offset < 0) || (offset + DIRECT_SIZE > buffer.capacity())) {
+            throw new IndexOutOfBoundsException(String.valueOf(offset));
+        }
+        gatherDirect($jargs, buffer, offset);
+    }
+
+EOF
+    }
+
     my(@copy, @tostring);
     my $setter = "JAVA_SIGAR_SET_FIELDS_\U$class";
     my $getter = "JAVA_SIGAR_GET_FIELDS_\U$class";
@@ -2197,21 +2314,293 @@ EOF
     print $cfh "\n\n    $setter(cls, obj, s);" if $func->{has_get};
 
     print $cfh "\n}\n" if $func->{has_get};
+    print $cfh $direct_code;
     print $jfh "\n}\n";
 
     close $jfh;
 }
 
+#SigarProxy implementation with a typed cache per method,
+#avoiding the reflection and boxing of SigarProxyCache
+sub proxy_methods {
+    my $self = shift;
+    my $file = "../../src/$self->{jsrc}/SigarProxy.java";
+    my @methods;
+
+    open PROXY, $file or die "open $file: $!";
+    my $src = join '', <PROXY>;
+    close PROXY;
+
+    while ($src =~ /public\s+([\w\[\]]+)\s+(\w+)\s*\(([^)]*)\)\s*(throws\s+\w+)?\s*;/g) {
+        my($type, $name, $params, $throws) = ($1, $2, $3, $4);
+        my @params;
+        for my $param (split /,/, $params) {
+            next unless $param =~ /^\s*([\w\[\]]+)\s+(\w+)\s*$/;
+            push @params, { type => $1, name => $2 };
+        }
+        (my $type_name = $type) =~ s/\[\]$//;
+        push @methods, {
+            type => $type,
+            type_name => $type_name,
+            name => $name,
+            params => \@params,
+            throws => $throws ? " $throws" : "",
+        };
+    }
+
+    return \@methods;
+}
+
+my %java_primitive = map { $_ => 1 } qw(int long);
+
+sub generate_caching_sigar {
+    my $self = shift;
+    my $class = 'CachingSigar';
+    my $jfh = $self->create_jfile($class);
+    my $methods = $self->proxy_methods;
+
+    my(@fields, @clear, @code, @method_names, @type_names);
+
+    my $i = 0;
+    for my $method (@$methods) {
+        my $name = $method->{name};
+        my $type = $method->{type};
+        my $params = $method->{params};
+        my $cache = "this.cache$i";
+        my $decl = join ', ', map { "$_->{type} $_->{name}" } @$params;
+        my $args = join ', ', map { $_->{name} } @$params;
+        my $call = "this.sigar.$name($args)";
+        my $entry;
+
+        push @method_names, qq("$name");
+        push @type_names, qq("$method->{type_name}");
+
+        if (@$params == 0) {
+            push @fields, "private final SigarCacheObject cache$i = new SigarCacheObject();";
+            push @clear, "$cache.set(null, 0);";
+            $entry = $cache;
+        }
+        elsif (grep({ $_->{type} =~ /\[\]$/ } @$params) || @$params > 2) {
+            #array arguments are compared by reference, not cached
+            push @code, <<EOF;
+    public $type $name($decl)$method->{throws} {
+        synchronized (this.sigarLock) {
+            return $call;
+        }
+    }
+EOF
+            $i++;
+            next;
+        }
+        elsif (@$params == 1 && $java_primitive{$params->[0]->{type}}) {
+            push @fields, "private final SigarLongCacheMap cache$i = new SigarLongCacheMap();";
+            push @clear, "$cache.clear();";
+            $entry = "$cache.get($args, timeNow, expire)";
+        }
+        else {
+            push @fields, "private final SigarCacheMap cache$i = new SigarCacheMap();";
+            push @clear, "$cache.clear();";
+            my $key;
+            if (@$params == 1) {
+                $key = $args;
+            }
+            else {
+                my @key;
+                for my $param (@$params) {
+                    if ($java_primitive{$param->{type}}) {
+                        push @key, $param->{name}, "null";
+                    }
+                    else {
+                        push @key, "0", $param->{name};
+                    }
+                }
+                $key = "new SigarCacheMap.Key(" . join(', ', @key) . ")";
+            }
+            $entry = "$cache.get($key, timeNow, expire)";
+        }
+
+        #values of a process are checked against its start time
+        my $is_proc = @$params && $params->[0]->{name} eq 'pid';
+        my $check = "";
+        my $set_proc = "";
+        if ($is_proc) {
+            $check = <<EOF;
+        if ((value != null) && entry.needsProcessCheck(timeNow) &&
+            !entry.isSameProcess(getStartTime(pid), timeNow))
+        {
+            value = null;
+        }
+EOF
+            $set_proc = <<EOF;
+            long startTime = ProcIdentity.getStartTime(this.sigar, pid);
+            if (startTime == 0) {
+                //exited or unreadable, pid reuse could not be detected
+                return retval;
+            }
+            entry.setProcess(startTime, timeNow);
+EOF
+        }
+
+        my($hit, $store);
+        if ($java_primitive{$type}) {
+            $hit = "return entry.longValue;";
+            $store = <<EOF;
+            $type retval = $call;
+            entry.longValue = retval;
+            entry.set(Boolean.TRUE, timeNow);
+EOF
+        }
+        else {
+            $hit = "return ($type)value;";
+            $store = <<EOF;
+            $type retval = $call;
+$set_proc            entry.set(retval, timeNow);
+EOF
+        }
+
+        push @code, <<EOF;
+    public $type $name($decl)$method->{throws} {
+        long timeNow = System.currentTimeMillis();
+        int expire = this.expires[$i];
+        SigarCacheObject entry = $entry;
+        Object value = entry.get(timeNow, expire);
+$check        if (value != null) {
+            $hit
+        }
+        synchronized (this.sigarLock) {
+            value = entry.get(timeNow, expire);
+            if (value != null) {
+                $hit
+            }
+$store            return retval;
+        }
+    }
+EOF
+        $i++;
+    }
+
+    my $fields = join "\n", map { "    $_" } @fields;
+    my $clear = join "\n", map { "        $_" } @clear;
+    my $names = join ",\n", map { "        $_" } @method_names;
+    my $types = join ",\n", map { "        $_" } @type_names;
+    my $code = join "\n", @code;
+    my $imports = (grep { $_->{type} eq 'List' } @$methods) ?
+        "import java.util.List;\n" : "";
+
+    print $jfh <<EOF;
+package $self->{package};
+
+import java.util.HashMap;
+${imports}import java.util.Map;
+
+/**
+ * Caching implementation of SigarProxy, generated from SigarProxy.java.
+ * Unlike SigarProxyCache, calls are dispatched without reflection
+ * and pids are used as cache keys without boxing.
+ * <p>
+ * The cache may be shared between threads.  Calls into the underlying
+ * Sigar instance are serialized, cache hits do not wait for them.
+ * \@see SigarProxyCache
+ */
+public class $class implements SigarProxy {
+
+    private static final String[] METHOD_NAMES = {
+$names
+    };
+
+    private static final String[] TYPE_NAMES = {
+$types
+    };
+
+    private Sigar sigar;
+    private Object sigarLock = new Object();
+    private int expire;
+    //method or type name -> Integer, guarded by this
+    private Map expireSettings = new HashMap();
+    //replaced (not modified) on update
+    private volatile int[] expires;
+
+$fields
+
+    public $class(Sigar sigar) {
+        this(sigar, SigarProxyCache.EXPIRE_DEFAULT);
+    }
+
+    /**
+     * \@param sigar The Sigar instance to cache.
+     * \@param expire Milliseconds values are cached.
+     */
+    public $class(Sigar sigar, int expire) {
+        this.sigar = sigar;
+        this.expire = expire;
+        this.expires = new int[METHOD_NAMES.length];
+        for (int i=0; i<this.expires.length; i++) {
+            this.expires[i] = expire;
+        }
+    }
+
+    public Sigar getSigar() {
+        return this.sigar;
+    }
+
+    /**
+     * Set the cache expiration for a method or type.
+     * \@param type Method name (e.g. "getProcMem") or
+     * return type name (e.g. "ProcMem"), arrays are named by their
+     * element type (e.g. "Cpu" or "long").  A method name takes
+     * precedence over the type name of the method.
+     * \@param expire Milliseconds values of this type are cached.
+     */
+    public synchronized void setExpire(String type, int expire) {
+        this.expireSettings.put(type, new Integer(expire));
+
+        int[] expires = new int[METHOD_NAMES.length];
+        for (int i=0; i<expires.length; i++) {
+            Integer value = (Integer)this.expireSettings.get(METHOD_NAMES[i]);
+            if (value == null) {
+                value = (Integer)this.expireSettings.get(TYPE_NAMES[i]);
+            }
+            expires[i] = (value == null) ? this.expire : value.intValue();
+        }
+        this.expires = expires;
+    }
+
+    public void clear() {
+$clear
+    }
+
+    private long getStartTime(long pid) {
+        synchronized (this.sigarLock) {
+            return ProcIdentity.getStartTime(this.sigar, pid);
+        }
+    }
+
+    private long getStartTime(String pid) {
+        synchronized (this.sigarLock) {
+            return ProcIdentity.getStartTime(this.sigar, pid);
+        }
+    }
+
+$code}
+EOF
+}
+
 sub finish {
     my $self = shift;
+    $self->generate_caching_sigar;
     $self->SUPER::finish;
 }
 
+sub jfile_exists {
+    my($self, $name) = @_;
+    return -e "../../src/$self->{jsrc}/$name.java";
+}
+
 sub create_jfile {
     my($self, $name) = @_;
     my $jsrc = $self->{jsrc};
     my $jfile = "$jsrc/$name.java";
-    if (-e "../../src/$jsrc/$name.java") {
+    if ($self->jfile_exists($name)) {
         print "skipping $jfile\n";
         #dont generate .java if already exists
         $jfile = undef;
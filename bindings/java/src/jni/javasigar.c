@@ -396,6 +396,15 @@ static jstring jnet_address_to_string(JNIEnv *env, sigar_t *sigar, sigar_net_add
 #define SetNetAddressField(env, obj, fieldID, val) \
     SetObjectField(env, obj, fieldID, jnet_address_to_string(env, sigar, &val))
 
+/* used by the generated gatherDirect functions,
+ * memcpy since the buffer offset may not be aligned
+ */
+#define JAVA_SIGAR_DIRECT_SET(ptr, offset, type, val) \
+    { \
+        type v = (type)(val); \
+        memcpy((char *)(ptr) + (offset), &v, sizeof(v)); \
+    }
+
 #include "javasigar_generated.c"
 
 #define SIGAR_ALLOC_OBJECT(name) \
@@ -620,6 +629,119 @@ JNIEXPORT void SIGAR_JNI(CpuPerc_gather)
     JAVA_SIGAR_SET_FIELDS_CPUPERC(NULL, jperc, perc);
 }
 
+#define SNAPSHOT_SET_OBJECT(field, sig, value) \
+    id = JENV->GetFieldID(env, cls, field, sig); \
+    JENV->SetObjectField(env, obj, id, value)
+
+/*
+ * SIGAR_ENOTIMPL leaves the snapshot field null,
+ * any other error is thrown.
+ */
+#define SNAPSHOT_STATUS_CHECK(status) \
+    if ((status != SIGAR_OK) && (status != SIGAR_ENOTIMPL)) { \
+        sigar_throw_error(env, jsigar, status); \
+        return; \
+    }
+
+JNIEXPORT void SIGAR_JNI(SystemSnapshot_gather)
+(JNIEnv *env, jobject obj, jobject sigar_obj)
+{
+    int status;
+    unsigned int i;
+    sigar_mem_t mem;
+    sigar_swap_t swap;
+    sigar_cpu_t cpu;
+    sigar_cpu_list_t cpulist;
+    sigar_loadavg_t loadavg;
+    sigar_uptime_t uptime;
+    sigar_proc_stat_t procstat;
+    jclass cls = JENV->GetObjectClass(env, obj);
+    jclass mem_cls = SIGAR_FIND_CLASS("Mem");
+    jclass swap_cls = SIGAR_FIND_CLASS("Swap");
+    jclass cpu_cls = SIGAR_FIND_CLASS("Cpu");
+    jclass uptime_cls = SIGAR_FIND_CLASS("Uptime");
+    jclass procstat_cls = SIGAR_FIND_CLASS("ProcStat");
+    jfieldID id;
+    jobject value;
+    dSIGAR_VOID;
+
+    id = JENV->GetFieldID(env, cls, "timestamp", "J");
+    JENV->SetLongField(env, obj, id, sigar_time_now_millis());
+
+    status = sigar_mem_get(sigar, &mem);
+    SNAPSHOT_STATUS_CHECK(status);
+    if (status == SIGAR_OK) {
+        JAVA_SIGAR_INIT_FIELDS_MEM(mem_cls);
+        value = JENV->AllocObject(env, mem_cls);
+        JAVA_SIGAR_SET_FIELDS_MEM(mem_cls, value, mem);
+        SNAPSHOT_SET_OBJECT("mem", SIGAR_CLASS_SIG("Mem"), value);
+    }
+
+    status = sigar_swap_get(sigar, &swap);
+    SNAPSHOT_STATUS_CHECK(status);
+    if (status == SIGAR_OK) {
+        JAVA_SIGAR_INIT_FIELDS_SWAP(swap_cls);
+        value = JENV->AllocObject(env, swap_cls);
+        JAVA_SIGAR_SET_FIELDS_SWAP(swap_cls, value, swap);
+        SNAPSHOT_SET_OBJECT("swap", SIGAR_CLASS_SIG("Swap"), value);
+    }
+
+    JAVA_SIGAR_INIT_FIELDS_CPU(cpu_cls);
+
+    status = sigar_cpu_get(sigar, &cpu);
+    SNAPSHOT_STATUS_CHECK(status);
+    if (status == SIGAR_OK) {
+        value = JENV->AllocObject(env, cpu_cls);
+        JAVA_SIGAR_SET_FIELDS_CPU(cpu_cls, value, cpu);
+        SNAPSHOT_SET_OBJECT("cpu", SIGAR_CLASS_SIG("Cpu"), value);
+    }
+
+    status = sigar_cpu_list_get(sigar, &cpulist);
+    SNAPSHOT_STATUS_CHECK(status);
+    if (status == SIGAR_OK) {
+        value = JENV->NewObjectArray(env, cpulist.number, cpu_cls, 0);
+
+        for (i=0; i<cpulist.number; i++) {
+            jobject cpu_obj = JENV->AllocObject(env, cpu_cls);
+            JAVA_SIGAR_SET_FIELDS_CPU(cpu_cls, cpu_obj,
+                                      cpulist.data[i]);
+            JENV->SetObjectArrayElement(env, value, i, cpu_obj);
+            JENV->DeleteLocalRef(env, cpu_obj);
+        }
+
+        sigar_cpu_list_destroy(sigar, &cpulist);
+
+        SNAPSHOT_SET_OBJECT("cpuList", "[" SIGAR_CLASS_SIG("Cpu"), value);
+    }
+
+    status = sigar_loadavg_get(sigar, &loadavg);
+    SNAPSHOT_STATUS_CHECK(status);
+    if (status == SIGAR_OK) {
+        value = JENV->NewDoubleArray(env, 3);
+        JENV->SetDoubleArrayRegion(env, value, 0,
+                                   3, loadavg.loadavg);
+        SNAPSHOT_SET_OBJECT("loadAverage", "[D", value);
+    }
+
+    status = sigar_uptime_get(sigar, &uptime);
+    SNAPSHOT_STATUS_CHECK(status);
+    if (status == SIGAR_OK) {
+        JAVA_SIGAR_INIT_FIELDS_UPTIME(uptime_cls);
+        value = JENV->AllocObject(env, uptime_cls);
+        JAVA_SIGAR_SET_FIELDS_UPTIME(uptime_cls, value, uptime);
+        SNAPSHOT_SET_OBJECT("uptime", SIGAR_CLASS_SIG("Uptime"), value);
+    }
+
+    status = sigar_proc_stat_get(sigar, &procstat);
+    SNAPSHOT_STATUS_CHECK(status);
+    if (status == SIGAR_OK) {
+        JAVA_SIGAR_INIT_FIELDS_PROCSTAT(procstat_cls);
+        value = JENV->AllocObject(env, procstat_cls);
+        JAVA_SIGAR_SET_FIELDS_PROCSTAT(procstat_cls, value, procstat);
+        SNAPSHOT_SET_OBJECT("procStat", SIGAR_CLASS_SIG("ProcStat"), value);
+    }
+}
+
 JNIEXPORT jlongArray SIGAR_JNIx(getProcList)
 (JNIEnv *env, jobject sigar_obj)
 {
@@ -660,6 +782,360 @@ JNIEXPORT jlongArray SIGAR_JNIx(getProcList)
     return procarray;
 }
 
+/* must match ProcTable.FIELD_* */
+#define PROC_TABLE_STATE     (1<<0)
+#define PROC_TABLE_TIME      (1<<1)
+#define PROC_TABLE_MEM       (1<<2)
+#define PROC_TABLE_CRED      (1<<3)
+#define PROC_TABLE_CRED_NAME (1<<4)
+
+typedef struct {
+    jarray array;
+    void *data;
+} jni_proc_table_column_t;
+
+static void proc_table_column_get(JNIEnv *env, jclass cls, jobject obj,
+                                  const char *name, const char *sig,
+                                  jni_proc_table_column_t *column)
+{
+    jfieldID id = JENV->GetFieldID(env, cls, name, sig);
+
+    column->array = JENV->GetObjectField(env, obj, id);
+    column->data = NULL;
+
+    if (!column->array) {
+        return;
+    }
+
+    switch (sig[1]) {
+      case 'J':
+        column->data =
+            JENV->GetLongArrayElements(env, column->array, NULL);
+        break;
+      case 'I':
+        column->data =
+            JENV->GetIntArrayElements(env, column->array, NULL);
+        break;
+      case 'C':
+        column->data =
+            JENV->GetCharArrayElements(env, column->array, NULL);
+        break;
+    }
+}
+
+static void proc_table_column_release(JNIEnv *env, const char *sig,
+                                      jni_proc_table_column_t *column)
+{
+    if (!column->data) {
+        return;
+    }
+
+    switch (sig[1]) {
+      case 'J':
+        JENV->ReleaseLongArrayElements(env, column->array,
+                                       column->data, 0);
+        break;
+      case 'I':
+        JENV->ReleaseIntArrayElements(env, column->array,
+                                      column->data, 0);
+        break;
+      case 'C':
+        JENV->ReleaseCharArrayElements(env, column->array,
+                                       column->data, 0);
+        break;
+    }
+}
+
+static void proc_table_string_set(JNIEnv *env, jobjectArray array,
+                                  jsize i, const char *value)
+{
+    jstring s = JENV->NewStringUTF(env, value);
+    JENV->SetObjectArrayElement(env, array, i, s);
+    JENV->DeleteLocalRef(env, s);
+}
+
+enum {
+    PT_PIDS, PT_FAILED,
+    PT_STATE, PT_PPID, PT_PRIORITY, PT_NICE, PT_THREADS,
+    PT_START_TIME, PT_USER, PT_SYS, PT_TOTAL,
+    PT_SIZE, PT_RESIDENT, PT_SHARE, PT_PAGE_FAULTS,
+    PT_UID, PT_GID,
+    PT_MAX
+};
+
+static const char *proc_table_columns[PT_MAX][2] = {
+    { "pids", "[J" }, { "failed", "[I" },
+    { "state", "[C" }, { "ppid", "[J" }, { "priority", "[I" },
+    { "nice", "[I" }, { "threads", "[J" },
+    { "startTime", "[J" }, { "user", "[J" }, { "sys", "[J" },
+    { "total", "[J" },
+    { "size", "[J" }, { "resident", "[J" }, { "share", "[J" },
+    { "pageFaults", "[J" },
+    { "uid", "[J" }, { "gid", "[J" }
+};
+
+#define PT_LONG(c) ((jlong *)columns[c].data)
+#define PT_INT(c)  ((jint *)columns[c].data)
+#define PT_CHAR(c) ((jchar *)columns[c].data)
+
+JNIEXPORT jobjectArray SIGAR_JNIx(getProcEvents)
+(JNIEnv *env, jobject sigar_obj, jint timeout)
+{
+    int status;
+    unsigned int i;
+    jobjectArray eventarray;
+    jclass cls = SIGAR_FIND_CLASS("ProcEvent");
+    jmethodID id;
+    sigar_proc_event_list_t events;
+    dSIGAR(NULL);
+
+    status = sigar_proc_event_list_get(sigar, &events, timeout);
+
+    if (status != SIGAR_OK) {
+        sigar_throw_error(env, jsigar, status);
+        return NULL;
+    }
+
+    id = JENV->GetMethodID(env, cls, "<init>", "(IJJI)V");
+
+    eventarray = JENV->NewObjectArray(env, events.number, cls, 0);
+
+    for (i=0; i<events.number; i++) {
+        sigar_proc_event_t *event = &events.data[i];
+        jobject obj =
+            JENV->NewObject(env, cls, id,
+                            (jint)event->type,
+                            (jlong)event->pid,
+                            (jlong)event->ppid,
+                            (jint)event->exit_code);
+        JENV->SetObjectArrayElement(env, eventarray, i, obj);
+        JENV->DeleteLocalRef(env, obj);
+    }
+
+    sigar_proc_event_list_destroy(sigar, &events);
+
+    return eventarray;
+}
+
+JNIEXPORT void SIGAR_JNI(ProcTable_gather)
+(JNIEnv *env, jobject obj, jobject sigar_obj)
+{
+    jni_proc_table_column_t columns[PT_MAX];
+    jobjectArray names=NULL, users=NULL, groups=NULL;
+    jclass cls = JENV->GetObjectClass(env, obj);
+    jint fields =
+        JENV->GetIntField(env, obj,
+                          JENV->GetFieldID(env, cls, "fields", "I"));
+    jsize i, len;
+    int c;
+    dSIGAR_VOID;
+
+    for (c=0; c<PT_MAX; c++) {
+        proc_table_column_get(env, cls, obj,
+                              proc_table_columns[c][0],
+                              proc_table_columns[c][1],
+                              &columns[c]);
+    }
+
+    len = JENV->GetArrayLength(env, columns[PT_PIDS].array);
+
+    if (fields & PROC_TABLE_STATE) {
+        names = JENV->GetObjectField(env, obj,
+                                     JENV->GetFieldID(env, cls, "name",
+                                                      "[Ljava/lang/String;"));
+    }
+    if (fields & PROC_TABLE_CRED_NAME) {
+        users = JENV->GetObjectField(env, obj,
+                                     JENV->GetFieldID(env, cls, "userName",
+                                                      "[Ljava/lang/String;"));
+        groups = JENV->GetObjectField(env, obj,
+                                      JENV->GetFieldID(env, cls, "groupName",
+                                                       "[Ljava/lang/String;"));
+    }
+
+    for (i=0; i<len; i++) {
+        sigar_pid_t pid = (sigar_pid_t)PT_LONG(PT_PIDS)[i];
+        jint failed = 0;
+
+        /* state, time and mem are all read from the same
+         * /proc/<pid>/stat on linux, which is cached by pid
+         */
+        if (fields & PROC_TABLE_STATE) {
+            sigar_proc_state_t state;
+
+            if (sigar_proc_state_get(sigar, pid, &state) == SIGAR_OK) {
+                proc_table_string_set(env, names, i, state.name);
+                PT_CHAR(PT_STATE)[i]    = state.state;
+                PT_LONG(PT_PPID)[i]     = state.ppid;
+                PT_INT(PT_PRIORITY)[i]  = state.priority;
+                PT_INT(PT_NICE)[i]      = state.nice;
+                PT_LONG(PT_THREADS)[i]  = state.threads;
+            }
+            else {
+                failed |= PROC_TABLE_STATE;
+                PT_CHAR(PT_STATE)[i]    = 0;
+                PT_LONG(PT_PPID)[i]     = SIGAR_FIELD_NOTIMPL;
+                PT_INT(PT_PRIORITY)[i]  = SIGAR_FIELD_NOTIMPL;
+                PT_INT(PT_NICE)[i]      = SIGAR_FIELD_NOTIMPL;
+                PT_LONG(PT_THREADS)[i]  = SIGAR_FIELD_NOTIMPL;
+            }
+        }
+
+        if (fields & PROC_TABLE_TIME) {
+            sigar_proc_time_t time;
+
+            if (sigar_proc_time_get(sigar, pid, &time) == SIGAR_OK) {
+                PT_LONG(PT_START_TIME)[i] = time.start_time;
+                PT_LONG(PT_USER)[i]       = time.user;
+                PT_LONG(PT_SYS)[i]        = time.sys;
+                PT_LONG(PT_TOTAL)[i]      = time.total;
+            }
+            else {
+                failed |= PROC_TABLE_TIME;
+                PT_LONG(PT_START_TIME)[i] = SIGAR_FIELD_NOTIMPL;
+                PT_LONG(PT_USER)[i]       = SIGAR_FIELD_NOTIMPL;
+                PT_LONG(PT_SYS)[i]        = SIGAR_FIELD_NOTIMPL;
+                PT_LONG(PT_TOTAL)[i]      = SIGAR_FIELD_NOTIMPL;
+            }
+        }
+
+        if (fields & PROC_TABLE_MEM) {
+            sigar_proc_mem_t mem;
+
+            if (sigar_proc_mem_get(sigar, pid, &mem) == SIGAR_OK) {
+                PT_LONG(PT_SIZE)[i]        = mem.size;
+                PT_LONG(PT_RESIDENT)[i]    = mem.resident;
+                PT_LONG(PT_SHARE)[i]       = mem.share;
+                PT_LONG(PT_PAGE_FAULTS)[i] = mem.page_faults;
+            }
+            else {
+                failed |= PROC_TABLE_MEM;
+                PT_LONG(PT_SIZE)[i]        = SIGAR_FIELD_NOTIMPL;
+                PT_LONG(PT_RESIDENT)[i]    = SIGAR_FIELD_NOTIMPL;
+                PT_LONG(PT_SHARE)[i]       = SIGAR_FIELD_NOTIMPL;
+                PT_LONG(PT_PAGE_FAULTS)[i] = SIGAR_FIELD_NOTIMPL;
+            }
+        }
+
+        if (fields & PROC_TABLE_CRED) {
+            sigar_proc_cred_t cred;
+
+            if (sigar_proc_cred_get(sigar, pid, &cred) == SIGAR_OK) {
+                PT_LONG(PT_UID)[i] = cred.uid;
+                PT_LONG(PT_GID)[i] = cred.gid;
+            }
+            else {
+                failed |= PROC_TABLE_CRED;
+                PT_LONG(PT_UID)[i] = SIGAR_FIELD_NOTIMPL;
+                PT_LONG(PT_GID)[i] = SIGAR_FIELD_NOTIMPL;
+            }
+        }
+
+        if (fields & PROC_TABLE_CRED_NAME) {
+            sigar_proc_cred_name_t cred;
+
+            if (sigar_proc_cred_name_get(sigar, pid, &cred) == SIGAR_OK) {
+                proc_table_string_set(env, users, i, cred.user);
+                proc_table_string_set(env, groups, i, cred.group);
+            }
+            else {
+                failed |= PROC_TABLE_CRED_NAME;
+            }
+        }
+
+        PT_INT(PT_FAILED)[i] = failed;
+    }
+
+    for (c=0; c<PT_MAX; c++) {
+        proc_table_column_release(env, proc_table_columns[c][1],
+                                  &columns[c]);
+    }
+}
+
+enum {
+    PG_IDS, PG_PROCESSES, PG_THREADS, PG_RESIDENT, PG_CPU_TOTAL, PG_FDS,
+    PG_MAX
+};
+
+static const char *proc_group_columns[PG_MAX] = {
+    "ids", "processes", "threads", "resident", "cpuTotal", "fds"
+};
+
+JNIEXPORT void SIGAR_JNI(ProcessAggregator_gather)
+(JNIEnv *env, jobject obj, jobject sigar_obj)
+{
+    int status, c;
+    jsize i, len;
+    jclass cls = JENV->GetObjectClass(env, obj);
+    jclass stringclass = JENV->FindClass(env, "java/lang/String");
+    jint by =
+        JENV->GetIntField(env, obj,
+                          JENV->GetFieldID(env, cls, "groupBy", "I"));
+    jobjectArray keys;
+    jlong *values;
+    sigar_proc_group_list_t groups;
+    dSIGAR_VOID;
+
+    status = sigar_proc_group_list_get(sigar, by, &groups);
+
+    if (status != SIGAR_OK) {
+        sigar_throw_error(env, jsigar, status);
+        return;
+    }
+
+    len = groups.number;
+    keys = JENV->NewObjectArray(env, len, stringclass, 0);
+    values = malloc(sizeof(*values) * (len ? len : 1));
+
+    for (i=0; i<len; i++) {
+        proc_table_string_set(env, keys, i, groups.data[i].key);
+    }
+
+    JENV->SetObjectField(env, obj,
+                         JENV->GetFieldID(env, cls, "keys",
+                                          "[Ljava/lang/String;"),
+                         keys);
+
+    for (c=0; c<PG_MAX; c++) {
+        jlongArray array = JENV->NewLongArray(env, len);
+
+        for (i=0; i<len; i++) {
+            sigar_proc_group_t *group = &groups.data[i];
+
+            switch (c) {
+              case PG_IDS:
+                values[i] = group->id;
+                break;
+              case PG_PROCESSES:
+                values[i] = group->processes;
+                break;
+              case PG_THREADS:
+                values[i] = group->threads;
+                break;
+              case PG_RESIDENT:
+                values[i] = group->resident;
+                break;
+              case PG_CPU_TOTAL:
+                values[i] = group->cpu_total;
+                break;
+              case PG_FDS:
+                values[i] = group->fds;
+                break;
+            }
+        }
+
+        JENV->SetLongArrayRegion(env, array, 0, len, values);
+        JENV->SetObjectField(env, obj,
+                             JENV->GetFieldID(env, cls,
+                                              proc_group_columns[c], "[J"),
+                             array);
+        JENV->DeleteLocalRef(env, array);
+    }
+
+    free(values);
+    sigar_proc_group_list_destroy(sigar, &groups);
+}
+
 JNIEXPORT jobjectArray SIGAR_JNIx(getProcArgs)
 (JNIEnv *env, jobject sigar_obj, jlong pid)
 {
@@ -1180,6 +1656,113 @@ JNIEXPORT jlong SIGAR_JNIx(getProcPort)
     return pid;
 }
 
+JNIEXPORT jlongArray SIGAR_JNIx(getProcPorts)
+(JNIEnv *env, jobject sigar_obj, jint protocol, jlongArray jports)
+{
+    int status;
+    jsize i, len = JENV->GetArrayLength(env, jports);
+    jlongArray pidarray;
+    jlong *ports, *jpids;
+    unsigned long *cports;
+    sigar_pid_t *pids;
+    dSIGAR(NULL);
+
+    cports = malloc(sizeof(*cports) * (len + 1));
+    pids = malloc(sizeof(*pids) * (len + 1));
+
+    ports = JENV->GetLongArrayElements(env, jports, 0);
+    for (i=0; i<len; i++) {
+        cports[i] = (unsigned long)ports[i];
+    }
+    JENV->ReleaseLongArrayElements(env, jports, ports, JNI_ABORT);
+
+    status = sigar_proc_port_list_get(sigar, protocol,
+                                      cports, len, pids);
+    free(cports);
+
+    if (status != SIGAR_OK) {
+        free(pids);
+        sigar_throw_error(env, jsigar, status);
+        return NULL;
+    }
+
+    pidarray = JENV->NewLongArray(env, len);
+    jpids = JENV->GetLongArrayElements(env, pidarray, 0);
+    for (i=0; i<len; i++) {
+        jpids[i] = pids[i];
+    }
+    JENV->ReleaseLongArrayElements(env, pidarray, jpids, 0);
+
+    free(pids);
+
+    return pidarray;
+}
+
+JNIEXPORT jobject SIGAR_JNIx(getProcStatSummary)
+(JNIEnv *env, jobject sigar_obj)
+{
+    int status;
+    jobject obj;
+    jclass cls = SIGAR_FIND_CLASS("ProcStat");
+    sigar_proc_stat_t procstat;
+    dSIGAR(NULL);
+
+    if ((status = sigar_proc_stat_summary_get(sigar, &procstat)) != SIGAR_OK) {
+        sigar_throw_error(env, jsigar, status);
+        return NULL;
+    }
+
+    JAVA_SIGAR_INIT_FIELDS_PROCSTAT(cls);
+
+    obj = JENV->AllocObject(env, cls);
+    JAVA_SIGAR_SET_FIELDS_PROCSTAT(cls, obj, procstat);
+
+    return obj;
+}
+
+JNIEXPORT jlongArray SIGAR_JNIx(getNetConnectionOwnersNative)
+(JNIEnv *env, jobject sigar_obj, jlongArray jinodes)
+{
+    int status;
+    jsize i, len = JENV->GetArrayLength(env, jinodes);
+    jlongArray pidarray;
+    jlong *inodes, *jpids;
+    sigar_net_connection_list_t connlist;
+    sigar_pid_t *pids;
+    dSIGAR(NULL);
+
+    /* owners are looked up by inode only */
+    connlist.number = connlist.size = len;
+    connlist.data = calloc(len + 1, sizeof(*connlist.data));
+    pids = malloc(sizeof(*pids) * (len + 1));
+
+    inodes = JENV->GetLongArrayElements(env, jinodes, 0);
+    for (i=0; i<len; i++) {
+        connlist.data[i].inode = (unsigned long)inodes[i];
+    }
+    JENV->ReleaseLongArrayElements(env, jinodes, inodes, JNI_ABORT);
+
+    status = sigar_net_connection_owners_get(sigar, &connlist, pids);
+    free(connlist.data);
+
+    if (status != SIGAR_OK) {
+        free(pids);
+        sigar_throw_error(env, jsigar, status);
+        return NULL;
+    }
+
+    pidarray = JENV->NewLongArray(env, len);
+    jpids = JENV->GetLongArrayElements(env, pidarray, 0);
+    for (i=0; i<len; i++) {
+        jpids[i] = pids[i];
+    }
+    JENV->ReleaseLongArrayElements(env, pidarray, jpids, 0);
+
+    free(pids);
+
+    return pidarray;
+}
+
 JNIEXPORT jobjectArray SIGAR_JNIx(getNetInterfaceList)
 (JNIEnv *env, jobject sigar_obj)
 {
@@ -1207,6 +1790,48 @@ JNIEXPORT jobjectArray SIGAR_JNIx(getNetInterfaceList)
     return ifarray;
 }
 
+JNIEXPORT jobject SIGAR_JNIx(getNetInterfaceStatList)
+(JNIEnv *env, jobject sigar_obj)
+{
+    int status;
+    unsigned int i;
+    jobject map;
+    jclass cls = SIGAR_FIND_CLASS("NetInterfaceStat");
+    jclass mapclass =
+        JENV->FindClass(env, "java/util/LinkedHashMap");
+    jmethodID mapid =
+        JENV->GetMethodID(env, mapclass, "<init>", "()V");
+    jmethodID putid =
+        JENV->GetMethodID(env, mapclass, "put", MAP_PUT_SIG);
+    sigar_net_interface_stat_list_t statlist;
+    dSIGAR(NULL);
+
+    status = sigar_net_interface_stat_list_get(sigar, &statlist);
+
+    if (status != SIGAR_OK) {
+        sigar_throw_error(env, jsigar, status);
+        return NULL;
+    }
+
+    JAVA_SIGAR_INIT_FIELDS_NETINTERFACESTAT(cls);
+
+    map = JENV->NewObject(env, mapclass, mapid);
+
+    for (i=0; i<statlist.number; i++) {
+        jobject obj = JENV->AllocObject(env, cls);
+        jstring name = JENV->NewStringUTF(env, statlist.data[i].name);
+        JAVA_SIGAR_SET_FIELDS_NETINTERFACESTAT(cls, obj,
+                                               statlist.data[i].stat);
+        JENV->CallObjectMethod(env, map, putid, name, obj);
+        JENV->DeleteLocalRef(env, obj);
+        JENV->DeleteLocalRef(env, name);
+    }
+
+    sigar_net_interface_stat_list_destroy(sigar, &statlist);
+
+    return map;
+}
+
 JNIEXPORT jstring SIGAR_JNIx(getPasswordNative)
 (JNIEnv *env, jclass classinstance, jstring prompt)
 {
@@ -1339,6 +1964,71 @@ JNIEXPORT void SIGAR_JNI(ptql_SigarProcessQuery_destroy)
     }
 }
 
+JNIEXPORT jobject SIGAR_JNI(ptql_SigarProcessQuery_findSorted)
+(JNIEnv *env, jobject obj, jobject sigar_obj)
+{
+    int status;
+    unsigned int i;
+    jlongArray procarray;
+    jdoubleArray valarray;
+    jlong *pids;
+    double *values;
+    sigar_proc_list_t proclist;
+    jni_ptql_re_data_t re;
+    jclass cls = SIGAR_FIND_CLASS("ptql/SortedProcessList");
+    jmethodID id =
+        JENV->GetMethodID(env, cls, "<init>", "([J[D)V");
+    sigar_ptql_query_t *query =
+        (sigar_ptql_query_t *)sigar_get_pointer(env, obj);
+    dSIGAR(NULL);
+
+    re_impl_set(env, sigar, obj, &re);
+
+    status = sigar_ptql_query_find_sorted(sigar, query, &proclist, &values);
+
+    sigar_ptql_re_impl_set(sigar, NULL, NULL);
+
+    if (status < 0) {
+        sigar_throw_exception(env, sigar->errbuf);
+        return NULL;
+    }
+    else if (status != SIGAR_OK) {
+        sigar_throw_error(env, jsigar, status);
+        return NULL;
+    }
+
+    procarray = JENV->NewLongArray(env, proclist.number);
+    pids = JENV->GetLongArrayElements(env, procarray, 0);
+    for (i=0; i<proclist.number; i++) {
+        pids[i] = proclist.data[i];
+    }
+    JENV->ReleaseLongArrayElements(env, procarray, pids, 0);
+
+    valarray = JENV->NewDoubleArray(env, proclist.number);
+    JENV->SetDoubleArrayRegion(env, valarray, 0, proclist.number, values);
+
+    free(values);
+    sigar_proc_list_destroy(sigar, &proclist);
+
+    return JENV->NewObject(env, cls, id, procarray, valarray);
+}
+
+JNIEXPORT jstring SIGAR_JNI(ptql_SigarProcessQuery_explain)
+(JNIEnv *env, jobject obj)
+{
+    char buffer[8192];
+    sigar_ptql_query_t *query =
+        (sigar_ptql_query_t *)sigar_get_pointer(env, obj);
+
+    if (!query) {
+        return NULL;
+    }
+
+    sigar_ptql_query_explain(query, buffer, sizeof(buffer));
+
+    return JENV->NewStringUTF(env, buffer);
+}
+
 JNIEXPORT jlong SIGAR_JNI(ptql_SigarProcessQuery_findProcess)
 (JNIEnv *env, jobject obj, jobject sigar_obj)
 {
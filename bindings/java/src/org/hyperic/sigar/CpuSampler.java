@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar;
+
+/**
+ * Samples system cpu times in a background thread at a fixed
+ * interval and computes CpuPerc over a set of time windows.
+ * Unlike {@link Sigar#getCpuPerc()}, callers never block and
+ * all callers see the same values for a given window.
+ * <p>
+ * Until enough samples have been taken to fill a window, values are
+ * computed over the available history.  Before the second sample,
+ * values are the average since boot.
+ */
+public class CpuSampler implements Runnable {
+
+    public static final long DEFAULT_INTERVAL = 1000;
+
+    public static final long[] DEFAULT_WINDOWS = {
+        1000, 10 * 1000, 60 * 1000
+    };
+
+    private static CpuSampler instance = null;
+
+    private Thread thread = null;
+    private volatile boolean shouldDie = false;
+    private Sigar sigar;
+    private long interval;
+    private long[] windows;
+
+    //ring buffer of samples, only touched by the sampler thread
+    private long[] times;
+    private Cpu[] cpus;
+    private Cpu[][] cpuLists;
+    private int head = -1;
+    private int count = 0;
+
+    //published results, indexed by window
+    private Object lock = new Object();
+    private long timestamp;
+    private CpuPerc[] percs;
+    private CpuPerc[][] percLists;
+
+    /**
+     * @return A shared sampler using the default interval and windows,
+     * started on first use.
+     */
+    public static synchronized CpuSampler getInstance()
+        throws SigarException {
+
+        if (instance == null) {
+            instance = new CpuSampler();
+            instance.doStart();
+        }
+
+        return instance;
+    }
+
+    public CpuSampler() {
+        this(DEFAULT_INTERVAL, DEFAULT_WINDOWS);
+    }
+
+    /**
+     * @param interval Milliseconds between samples.
+     * @param windows Windows in milliseconds over which CpuPerc
+     * are computed.
+     */
+    public CpuSampler(long interval, long[] windows) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval=" + interval);
+        }
+        if (windows.length == 0) {
+            throw new IllegalArgumentException("no windows");
+        }
+
+        this.interval = interval;
+        this.windows = (long[])windows.clone();
+
+        long max = 0;
+        for (int i=0; i<windows.length; i++) {
+            if (windows[i] < interval) {
+                throw new IllegalArgumentException("window " + windows[i] +
+                                                   " < interval " + interval);
+            }
+            if (windows[i] > max) {
+                max = windows[i];
+            }
+        }
+
+        int size = (int)(max / interval) + 2;
+        this.times = new long[size];
+        this.cpus = new Cpu[size];
+        this.cpuLists = new Cpu[size][];
+    }
+
+    public long getInterval() {
+        return this.interval;
+    }
+
+    public long[] getWindows() {
+        return (long[])this.windows.clone();
+    }
+
+    /**
+     * Take the first sample and start the sampler thread.
+     * @exception SigarException If the first sample fails.
+     */
+    public synchronized void doStart() throws SigarException {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.shouldDie = false;
+        this.head = -1;
+        this.count = 0;
+        this.sigar = new Sigar();
+        try {
+            sample();
+        } catch (SigarException e) {
+            this.sigar.close();
+            this.sigar = null;
+            throw e;
+        }
+
+        this.thread = new Thread(this, "CpuSampler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public synchronized void doStop() {
+        if (this.thread == null) {
+            return;
+        }
+        die();
+        this.thread.interrupt();
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+        }
+        this.thread = null;
+        this.sigar.close();
+        this.sigar = null;
+    }
+
+    public void die() {
+        this.shouldDie = true;
+    }
+
+    public void run() {
+        long next = System.currentTimeMillis() + this.interval;
+
+        while (!this.shouldDie) {
+            long delay = next - System.currentTimeMillis();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+            }
+            next += this.interval;
+
+            try {
+                sample();
+            } catch (SigarException e) {
+                SigarLog.getLogger(CpuSampler.class.getName()).
+                    debug("sample failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private int indexOf(int n) {
+        int ix = this.head - n;
+        if (ix < 0) {
+            ix += this.times.length;
+        }
+        return ix;
+    }
+
+    /**
+     * @return Index of the newest sample at least <code>window</code>
+     * older than the current sample, or the oldest sample available.
+     * Samples within half an interval of the window count, so that
+     * jitter does not push the window back a whole interval.
+     */
+    private int findSample(long now, long window) {
+        long age = window - this.interval / 2;
+
+        for (int n=1; n<this.count; n++) {
+            int ix = indexOf(n);
+            if (now - this.times[ix] >= age) {
+                return ix;
+            }
+        }
+        return indexOf(this.count - 1);
+    }
+
+    private void sample() throws SigarException {
+        Cpu cpu = this.sigar.getCpu();
+        Cpu[] cpuList = this.sigar.getCpuList();
+        long now = System.currentTimeMillis();
+
+        this.head = (this.head + 1) % this.times.length;
+        this.times[this.head] = now;
+        this.cpus[this.head] = cpu;
+        this.cpuLists[this.head] = cpuList;
+        if (this.count < this.times.length) {
+            this.count++;
+        }
+
+        CpuPerc[] percs = new CpuPerc[this.windows.length];
+        CpuPerc[][] percLists = new CpuPerc[this.windows.length][];
+
+        for (int i=0; i<this.windows.length; i++) {
+            Cpu oldCpu;
+            Cpu[] oldCpuList;
+
+            if (this.count == 1) {
+                //since boot
+                oldCpu = new Cpu();
+                oldCpuList = new Cpu[cpuList.length];
+                for (int j=0; j<oldCpuList.length; j++) {
+                    oldCpuList[j] = oldCpu;
+                }
+            }
+            else {
+                int ix = findSample(now, this.windows[i]);
+                oldCpu = this.cpus[ix];
+                oldCpuList = this.cpuLists[ix];
+            }
+
+            percs[i] = CpuPerc.fetch(this.sigar, oldCpu, cpu);
+
+            int len = Math.min(oldCpuList.length, cpuList.length);
+            percLists[i] = new CpuPerc[len];
+            for (int j=0; j<len; j++) {
+                percLists[i][j] =
+                    CpuPerc.fetch(this.sigar, oldCpuList[j], cpuList[j]);
+            }
+        }
+
+        synchronized (this.lock) {
+            this.timestamp = now;
+            this.percs = percs;
+            this.percLists = percLists;
+        }
+    }
+
+    private int getWindowIndex(long window) {
+        for (int i=0; i<this.windows.length; i++) {
+            if (this.windows[i] == window) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("window " + window +
+                                           " is not sampled");
+    }
+
+    /**
+     * @return Time in milliseconds of the most recent sample.
+     */
+    public long getTimestamp() {
+        synchronized (this.lock) {
+            return this.timestamp;
+        }
+    }
+
+    /**
+     * Get system CPU info in percentage format over the given window.
+     * @param window One of the windows given to the constructor.
+     * @exception IllegalStateException If the sampler was never started.
+     */
+    public CpuPerc getCpuPerc(long window) {
+        int ix = getWindowIndex(window);
+        synchronized (this.lock) {
+            if (this.percs == null) {
+                throw new IllegalStateException("CpuSampler not started");
+            }
+            return this.percs[ix];
+        }
+    }
+
+    /**
+     * Get system per-CPU info in percentage format over the given window.
+     * @param window One of the windows given to the constructor.
+     * @exception IllegalStateException If the sampler was never started.
+     */
+    public CpuPerc[] getCpuPercList(long window) {
+        int ix = getWindowIndex(window);
+        synchronized (this.lock) {
+            if (this.percLists == null) {
+                throw new IllegalStateException("CpuSampler not started");
+            }
+            return (CpuPerc[])this.percLists[ix].clone();
+        }
+    }
+}
@@ -18,67 +18,40 @@
 
 package org.hyperic.sigar;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-
 /**
- * The Humidor provides access to a single Sigar instance.  Sigar has a
+ * The Humidor provides thread-safe access to Sigar.  Sigar has a
  * high-cost setup/teardown and has a high amount of caching, used to determine
  * things like the % of CPU used in-between calls.
  *
- * The Humidor also synchronizes access to all Sigar methods, so all
- * calls will be serialized.
+ * The shared instance returned by getInstance() is backed by a
+ * {@link SigarPool} with one Sigar per available processor, so calls
+ * from different threads run in parallel.  Calls which compare against
+ * the previous call, such as getCpuPerc(), always run on the same
+ * pooled instance.  A Humidor created with a
+ * given Sigar instance serializes all calls to that instance.
  */
 public class Humidor {
     private static final Humidor INSTANCE = new Humidor();
-    private Object LOCK = new Object();
-    private InvocationHandler _handler;
-    private SigarProxy _sigar;
-    private Sigar _impl;
+    private SigarPool _pool;
 
-    private Humidor() {}
+    private Humidor() {
+        _pool = new SigarPool();
+    }
 
     public Humidor(Sigar sigar) {
-        _impl = sigar;
+        _pool = new SigarPool(sigar);
     }
 
-    private static class MyHandler implements InvocationHandler {
-        private SigarProxy _sigar;
-        private Object _lock = new Object();
-
-        public MyHandler(SigarProxy sigar) {
-            _sigar = sigar;
-        }
+    public Humidor(SigarPool pool) {
+        _pool = pool;
+    }
 
-        public Object invoke(Object proxy, Method meth, Object[] args)
-            throws Throwable
-        {
-            try {
-                synchronized (_lock) {
-                    return meth.invoke(_sigar, args);
-                }
-            } catch(InvocationTargetException e) {
-                throw e.getTargetException();
-            }
-        }
+    public SigarPool getPool() {
+        return _pool;
     }
 
     public SigarProxy getSigar() {
-        synchronized(LOCK) {
-            if (_sigar == null) {
-                if (_impl == null) {
-                    _impl = new Sigar();
-                }
-                _handler = new MyHandler(_impl);
-                _sigar = (SigarProxy)
-                    Proxy.newProxyInstance(Humidor.class.getClassLoader(),
-                                           new Class[] { SigarProxy.class },
-                                           _handler);
-            }
-            return _sigar;
-        }
+        return _pool.getSigar();
     }
 
     public static Humidor getInstance() {
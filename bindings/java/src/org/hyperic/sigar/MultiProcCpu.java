@@ -25,43 +25,47 @@ import org.hyperic.sigar.ptql.ProcessFinder;
 
 /**
  * Provide multi process cpu metrics.
+ * State is kept per Sigar instance and query: each update counts only
+ * the cpu time used since the previous update by processes matched
+ * both times, so processes starting or exiting between updates do not
+ * skew the percentage.
  */
 public class MultiProcCpu extends ProcCpu {
 
     private long pid;
     private int nproc = 0;
-    private static Map ptable = new HashMap();
+    private int ncpu = 0;
+    //ProcIdentity -> Long total time of each process at the last call
+    private transient Map members = new HashMap();
 
-    static synchronized MultiProcCpu get(Sigar sigar, String query)
-        throws SigarException {
-
-        MultiProcCpu cpu;
-
-        cpu = (MultiProcCpu)ptable.get(query);
+    MultiProcCpu(String query) {
+        this.pid = query.hashCode(); //for equals()
+    }
 
-        if (cpu == null) {
-            cpu = new MultiProcCpu();
-            cpu.pid = query.hashCode(); //for equals()
-            ptable.put(query, cpu);
-        }
+    synchronized void update(Sigar sigar, String query)
+        throws SigarException {
 
         long timeNow = System.currentTimeMillis();
-        double diff = timeNow - cpu.lastTime;
+        double diff = timeNow - this.lastTime;
         if (diff == 0) {
-            return cpu; //we were just called within < 1 second ago.
+            return; //we were just called within < 1 second ago.
         }
 
-        cpu.lastTime = timeNow;
+        boolean first = (this.lastTime == 0);
+        this.lastTime = timeNow;
 
-        long otime = cpu.total;
-
-        cpu.total = 0;
-        cpu.user  = 0;
-        cpu.sys   = 0;
-        cpu.nproc = 0;
+        this.total = 0;
+        this.user  = 0;
+        this.sys   = 0;
+        this.nproc = 0;
 
         long[] pids = ProcessFinder.find(sigar, query);
-        cpu.nproc = pids.length;
+        this.nproc = pids.length;
+
+        //only time spent since the last call by processes seen then,
+        //exited and reused pids would otherwise skew the total
+        Map members = new HashMap();
+        long used = 0;
 
         for (int i=0; i<pids.length; i++) {
             ProcTime time;
@@ -71,30 +75,35 @@ public class MultiProcCpu extends ProcCpu {
                 //process may have gone away or EPERM
                 continue;
             }
-            cpu.total += time.total;
-            cpu.user  += time.user;
-            cpu.sys   += time.sys;
+            this.total += time.total;
+            this.user  += time.user;
+            this.sys   += time.sys;
+
+            ProcIdentity id = new ProcIdentity(pids[i], time.startTime);
+            Long prev = (Long)this.members.get(id);
+            if ((prev != null) && (time.total > prev.longValue())) {
+                used += time.total - prev.longValue();
+            }
+            members.put(id, new Long(time.total));
         }
 
-        if (otime == 0) {
+        this.members = members;
+
+        if (first) {
             //XXX could/should pause first time called.
-            return cpu;
+            return;
         }
 
-        cpu.percent = ((cpu.total - otime) / diff);
-        if (cpu.percent < 0.0) {
-            //counter wrapped
-            cpu.percent = (0.0 - cpu.percent);
-        }
-        if (cpu.percent >= 1.0) {
-            cpu.percent = 0.99;
+        if (this.ncpu == 0) {
+            //read once, getCpuList() allocates a Cpu per processor
+            this.ncpu = Math.max(sigar.getCpuList().length, 1);
         }
-
-        return cpu;
+        this.percent = used / diff / this.ncpu;
     }
 
     /**
-     * @return Processes CPU usage percentage.
+     * @return Processes CPU usage percentage of all cpus,
+     * where 1.0 is every cpu fully used.
      */
     public double getPercent() {
         return this.percent;
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.hyperic.sigar;
+
+/**
+ * A process start or exit event.
+ * @see Sigar#getProcEvents
+ * @see ProcEventMonitor
+ */
+public class ProcEvent {
+
+    public static final int FORK = 1;
+    public static final int EXEC = 2;
+    public static final int EXIT = 3;
+
+    private int type;
+    private long pid;
+    private long ppid;
+    private int exitCode;
+
+    ProcEvent(int type, long pid, long ppid, int exitCode) {
+        this.type = type;
+        this.pid = pid;
+        this.ppid = ppid;
+        this.exitCode = exitCode;
+    }
+
+    /**
+     * @return One of FORK, EXEC or EXIT.
+     */
+    public int getType() {
+        return this.type;
+    }
+
+    public long getPid() {
+        return this.pid;
+    }
+
+    /**
+     * @return Parent process id of FORK events, 0 otherwise.
+     */
+    public long getPpid() {
+        return this.ppid;
+    }
+
+    /**
+     * @return Exit status of EXIT events as reported by wait(),
+     * 0 otherwise or when not known.
+     */
+    public int getExitCode() {
+        return this.exitCode;
+    }
+
+    public String toString() {
+        String name;
+
+        switch (this.type) {
+          case FORK:
+            name = "fork";
+            break;
+          case EXEC:
+            name = "exec";
+            break;
+          case EXIT:
+            name = "exit";
+            break;
+          default:
+            name = "unknown";
+        }
+
+        return name + "[" + this.pid + "]";
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.hyperic.sigar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Delivers process exec and exit events to listeners from a
+ * background thread.  Events come from {@link Sigar#getProcEvents}
+ * where the kernel pushes them.  Otherwise, e.g. when not privileged,
+ * the process list is scanned each interval and new or missing pids
+ * are reported as exec and exit events, in which case processes that
+ * live less than an interval go unnoticed.
+ */
+public class ProcEventMonitor implements Runnable {
+
+    public static final long DEFAULT_INTERVAL = 1000;
+
+    private Thread thread = null;
+    private volatile boolean shouldDie = false;
+    private Sigar sigar;
+    private long interval;
+    private boolean isScanning;
+    private Set pids; //last scan, only touched by the monitor thread
+    private List listeners =
+        Collections.synchronizedList(new ArrayList());
+
+    public ProcEventMonitor() {
+        this(DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param interval Milliseconds to wait for events, or
+     * between scans of the process list.
+     */
+    public ProcEventMonitor(long interval) {
+        if ((interval <= 0) || (interval > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("interval=" + interval);
+        }
+        this.interval = interval;
+    }
+
+    public long getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * @return true if events are pushed by the kernel,
+     * false if the process list is scanned.
+     */
+    public boolean isEventDriven() {
+        return !this.isScanning;
+    }
+
+    public void add(ProcEventListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void remove(ProcEventListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Subscribe to process events, or take the first scan,
+     * and start the monitor thread.
+     * @exception SigarException If neither is possible.
+     */
+    public synchronized void doStart() throws SigarException {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.shouldDie = false;
+        this.sigar = new Sigar();
+        try {
+            this.sigar.getProcEvents(0);
+            this.isScanning = false;
+        } catch (SigarException e) {
+            try {
+                startScanning(e);
+            } catch (SigarException se) {
+                this.sigar.close();
+                this.sigar = null;
+                throw se;
+            }
+        }
+
+        this.thread = new Thread(this, "ProcEventMonitor");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public synchronized void doStop() {
+        if (this.thread == null) {
+            return;
+        }
+        die();
+        this.thread.interrupt();
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+        }
+        this.thread = null;
+        this.sigar.close();
+        this.sigar = null;
+        this.pids = null;
+    }
+
+    public void die() {
+        this.shouldDie = true;
+    }
+
+    public void run() {
+        while (!this.shouldDie) {
+            ProcEvent[] events;
+
+            try {
+                if (this.isScanning) {
+                    try {
+                        Thread.sleep(this.interval);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    events = scan();
+                }
+                else {
+                    try {
+                        events = this.sigar.getProcEvents((int)this.interval);
+                    } catch (SigarException e) {
+                        startScanning(e);
+                        continue;
+                    }
+                }
+            } catch (SigarException e) {
+                SigarLog.getLogger(ProcEventMonitor.class.getName()).
+                    debug("scan failed: " + e.getMessage());
+                continue;
+            }
+
+            dispatch(events);
+        }
+    }
+
+    private void startScanning(SigarException reason)
+        throws SigarException {
+
+        SigarLog.getLogger(ProcEventMonitor.class.getName()).
+            debug("process events unavailable (" + reason.getMessage() +
+                  "), scanning the process list");
+        this.isScanning = true;
+        this.pids = getPids();
+    }
+
+    private Set getPids() throws SigarException {
+        long[] list = this.sigar.getProcList();
+        Set set = new HashSet(list.length * 2);
+
+        for (int i=0; i<list.length; i++) {
+            set.add(new Long(list[i]));
+        }
+
+        return set;
+    }
+
+    private ProcEvent[] scan() throws SigarException {
+        Set current = getPids();
+        List events = new ArrayList();
+
+        for (Iterator it = current.iterator(); it.hasNext();) {
+            Long pid = (Long)it.next();
+            if (!this.pids.contains(pid)) {
+                events.add(new ProcEvent(ProcEvent.EXEC,
+                                         pid.longValue(), 0, 0));
+            }
+        }
+
+        for (Iterator it = this.pids.iterator(); it.hasNext();) {
+            Long pid = (Long)it.next();
+            if (!current.contains(pid)) {
+                events.add(new ProcEvent(ProcEvent.EXIT,
+                                         pid.longValue(), 0, 0));
+            }
+        }
+
+        this.pids = current;
+
+        return (ProcEvent[])events.toArray(new ProcEvent[events.size()]);
+    }
+
+    private void dispatch(ProcEvent[] events) {
+        synchronized (this.listeners) {
+            for (int i=0; i<events.length; i++) {
+                ProcEvent event = events[i];
+
+                for (Iterator it = this.listeners.iterator();
+                     it.hasNext();)
+                {
+                    ProcEventListener listener =
+                        (ProcEventListener)it.next();
+                    try {
+                        switch (event.getType()) {
+                          case ProcEvent.EXEC:
+                            listener.onExec(event);
+                            break;
+                          case ProcEvent.EXIT:
+                            listener.onExit(event);
+                            break;
+                        }
+                    } catch (RuntimeException e) {
+                        SigarLog.getLogger(ProcEventMonitor.class.getName()).
+                            error("Unexpected exception: " +
+                                  e.getMessage(), e);
+                    }
+                }
+            }
+        }
+    }
+}
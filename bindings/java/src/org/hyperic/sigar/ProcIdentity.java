@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar;
+
+/**
+ * Identifies a process by pid and start time.
+ * Pids are reused once a process exits, the start time
+ * tells a new process apart from an old one with the same pid.
+ */
+public class ProcIdentity {
+
+    /**
+     * Milliseconds a cached per-process value is trusted
+     * before the identity of its process is checked again.
+     */
+    public static final int CHECK_INTERVAL = 1000;
+
+    private long pid;
+    private long startTime;
+
+    public ProcIdentity(long pid, long startTime) {
+        this.pid = pid;
+        this.startTime = startTime;
+    }
+
+    /**
+     * @param sigar The Sigar instance used to look up the start time.
+     * @param pid The process id.
+     * @exception SigarException If the process does not exist.
+     */
+    public static ProcIdentity get(SigarProxy sigar, long pid)
+        throws SigarException {
+
+        return new ProcIdentity(pid, sigar.getProcTime(pid).getStartTime());
+    }
+
+    /**
+     * @return Start time of the process, or 0 if it cannot be determined.
+     */
+    static long getStartTime(Sigar sigar, long pid) {
+        try {
+            return sigar.getProcTime(pid).getStartTime();
+        } catch (SigarException e) {
+            return 0;
+        }
+    }
+
+    static long getStartTime(Sigar sigar, String pid) {
+        try {
+            return sigar.getProcTime(pid).getStartTime();
+        } catch (SigarException e) {
+            return 0;
+        }
+    }
+
+    public long getPid() {
+        return this.pid;
+    }
+
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    public int hashCode() {
+        return (int)(this.pid ^ this.startTime);
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof ProcIdentity)) {
+            return false;
+        }
+        ProcIdentity id = (ProcIdentity)o;
+        return
+            (this.pid == id.pid) &&
+            (this.startTime == id.startTime);
+    }
+
+    public String toString() {
+        return this.pid + "@" + this.startTime;
+    }
+}
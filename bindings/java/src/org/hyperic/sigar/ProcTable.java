@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar;
+
+/**
+ * Process metrics for a list of pids, gathered in a single native call.
+ * Values are stored in parallel arrays indexed by row, where row
+ * <code>i</code> describes the process <code>getPids()[i]</code>.
+ * Only the arrays for the requested fields are allocated,
+ * the others are null.
+ * If a field could not be gathered for a process (e.g. the process
+ * has exited or permission was denied), the corresponding bit is set
+ * in {@link #getFailed()} and numeric values are set to
+ * {@link Sigar#FIELD_NOTIMPL}.
+ */
+public class ProcTable implements java.io.Serializable {
+
+    private static final long serialVersionUID = -6156592384122028632L;
+
+    /**
+     * ProcState fields: name, state, ppid, priority, nice, threads.
+     */
+    public static final int FIELD_STATE     = 1 << 0;
+    /**
+     * ProcTime fields: startTime, user, sys, total.
+     */
+    public static final int FIELD_TIME      = 1 << 1;
+    /**
+     * ProcMem fields: size, resident, share, pageFaults.
+     */
+    public static final int FIELD_MEM       = 1 << 2;
+    /**
+     * ProcCred fields: uid, gid.
+     */
+    public static final int FIELD_CRED      = 1 << 3;
+    /**
+     * ProcCredName fields: user, group.
+     */
+    public static final int FIELD_CRED_NAME = 1 << 4;
+
+    public static final int FIELD_ALL =
+        FIELD_STATE | FIELD_TIME | FIELD_MEM |
+        FIELD_CRED | FIELD_CRED_NAME;
+
+    private int fields;
+    private long[] pids;
+    private int[] failed;
+
+    //FIELD_STATE
+    private String[] name;
+    private char[] state;
+    private long[] ppid;
+    private int[] priority;
+    private int[] nice;
+    private long[] threads;
+
+    //FIELD_TIME
+    private long[] startTime;
+    private long[] user;
+    private long[] sys;
+    private long[] total;
+
+    //FIELD_MEM
+    private long[] size;
+    private long[] resident;
+    private long[] share;
+    private long[] pageFaults;
+
+    //FIELD_CRED
+    private long[] uid;
+    private long[] gid;
+
+    //FIELD_CRED_NAME
+    private String[] userName;
+    private String[] groupName;
+
+    ProcTable() {}
+
+    native void gather(Sigar sigar) throws SigarException;
+
+    static ProcTable fetch(Sigar sigar, long[] pids, int fields)
+        throws SigarException {
+
+        ProcTable table = new ProcTable();
+        int len = pids.length;
+
+        table.fields = fields;
+        table.pids = pids;
+        table.failed = new int[len];
+
+        if ((fields & FIELD_STATE) != 0) {
+            table.name = new String[len];
+            table.state = new char[len];
+            table.ppid = new long[len];
+            table.priority = new int[len];
+            table.nice = new int[len];
+            table.threads = new long[len];
+        }
+        if ((fields & FIELD_TIME) != 0) {
+            table.startTime = new long[len];
+            table.user = new long[len];
+            table.sys = new long[len];
+            table.total = new long[len];
+        }
+        if ((fields & FIELD_MEM) != 0) {
+            table.size = new long[len];
+            table.resident = new long[len];
+            table.share = new long[len];
+            table.pageFaults = new long[len];
+        }
+        if ((fields & FIELD_CRED) != 0) {
+            table.uid = new long[len];
+            table.gid = new long[len];
+        }
+        if ((fields & FIELD_CRED_NAME) != 0) {
+            table.userName = new String[len];
+            table.groupName = new String[len];
+        }
+
+        table.gather(sigar);
+
+        return table;
+    }
+
+    /**
+     * @return The FIELD_* mask this table was gathered with.
+     */
+    public int getFields() {
+        return this.fields;
+    }
+
+    public int size() {
+        return this.pids.length;
+    }
+
+    public long[] getPids() {
+        return this.pids;
+    }
+
+    /**
+     * @return Per row mask of the FIELD_* values which
+     * could not be gathered.
+     */
+    public int[] getFailed() {
+        return this.failed;
+    }
+
+    /**
+     * @return true if all of the given fields were gathered
+     * for the process at row <code>i</code>.
+     */
+    public boolean isValid(int i, int fields) {
+        return (this.failed[i] & fields) == 0;
+    }
+
+    public String[] getName() {
+        return this.name;
+    }
+
+    public char[] getState() {
+        return this.state;
+    }
+
+    public long[] getPpid() {
+        return this.ppid;
+    }
+
+    public int[] getPriority() {
+        return this.priority;
+    }
+
+    public int[] getNice() {
+        return this.nice;
+    }
+
+    public long[] getThreads() {
+        return this.threads;
+    }
+
+    public long[] getStartTime() {
+        return this.startTime;
+    }
+
+    public long[] getUser() {
+        return this.user;
+    }
+
+    public long[] getSys() {
+        return this.sys;
+    }
+
+    public long[] getTotal() {
+        return this.total;
+    }
+
+    public long[] getSize() {
+        return this.size;
+    }
+
+    public long[] getResident() {
+        return this.resident;
+    }
+
+    public long[] getShare() {
+        return this.share;
+    }
+
+    public long[] getPageFaults() {
+        return this.pageFaults;
+    }
+
+    public long[] getUid() {
+        return this.uid;
+    }
+
+    public long[] getGid() {
+        return this.gid;
+    }
+
+    public String[] getUserName() {
+        return this.userName;
+    }
+
+    public String[] getGroupName() {
+        return this.groupName;
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A process and all of its descendants, with totals for each subtree.
+ * The tree is built from a single scan of the process table, using
+ * the ppid of every process; metrics are then gathered for members
+ * of the tree only.  Keep the ProcTree and call {@link #update()}
+ * on each tick: nodes are carried over by {@link ProcIdentity}, so
+ * cpu percent reflects the time used since the previous update.
+ */
+public class ProcTree {
+
+    private SigarProxy sigar;
+    private long rootPid;
+    private Node root;
+    private Map nodes = new HashMap(); //Long pid -> Node
+    private long lastTime = 0;
+
+    /**
+     * A process in the tree.  The getSubtree* values are totals
+     * for this process and all of its descendants.
+     */
+    public static class Node {
+        private long pid;
+        private long ppid;
+        private long startTime;
+        private String name;
+        private List children = new ArrayList();
+
+        private long size;
+        private long resident;
+        private long threads;
+        private long fds;
+        private long cpuTotal;
+        private double cpuPercent;
+
+        private int subtreeProcesses;
+        private long subtreeSize;
+        private long subtreeResident;
+        private long subtreeThreads;
+        private long subtreeFds;
+        private long subtreeCpuTotal;
+        private double subtreeCpuPercent;
+
+        Node(long pid, long startTime) {
+            this.pid = pid;
+            this.startTime = startTime;
+        }
+
+        public long getPid() {
+            return this.pid;
+        }
+
+        public long getPpid() {
+            return this.ppid;
+        }
+
+        public long getStartTime() {
+            return this.startTime;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return Child Nodes of this process.
+         */
+        public Node[] getChildren() {
+            return (Node[])this.children.toArray(new Node[0]);
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        public long getResident() {
+            return this.resident;
+        }
+
+        public long getThreads() {
+            return this.threads;
+        }
+
+        /**
+         * @return Open file descriptors, 0 if they could not be counted.
+         */
+        public long getFds() {
+            return this.fds;
+        }
+
+        /**
+         * @return Total cpu time in milliseconds.
+         */
+        public long getCpuTotal() {
+            return this.cpuTotal;
+        }
+
+        /**
+         * @return Cpu usage since the previous update,
+         * where 1.0 is one fully used cpu.
+         */
+        public double getCpuPercent() {
+            return this.cpuPercent;
+        }
+
+        /**
+         * @return Number of processes in this subtree, including this one.
+         */
+        public int getSubtreeProcesses() {
+            return this.subtreeProcesses;
+        }
+
+        public long getSubtreeSize() {
+            return this.subtreeSize;
+        }
+
+        public long getSubtreeResident() {
+            return this.subtreeResident;
+        }
+
+        public long getSubtreeThreads() {
+            return this.subtreeThreads;
+        }
+
+        public long getSubtreeFds() {
+            return this.subtreeFds;
+        }
+
+        public long getSubtreeCpuTotal() {
+            return this.subtreeCpuTotal;
+        }
+
+        public double getSubtreeCpuPercent() {
+            return this.subtreeCpuPercent;
+        }
+
+        public String toString() {
+            return this.pid + " " + this.name +
+                " processes=" + this.subtreeProcesses +
+                " resident=" + this.subtreeResident +
+                " cpu=" + CpuPerc.format(this.subtreeCpuPercent);
+        }
+    }
+
+    public ProcTree(SigarProxy sigar, long rootPid) {
+        this.sigar = sigar;
+        this.rootPid = rootPid;
+    }
+
+    public long getRootPid() {
+        return this.rootPid;
+    }
+
+    /**
+     * @return The root process, with totals for the whole tree,
+     * or null if update() has not been called.
+     */
+    public Node getRoot() {
+        return this.root;
+    }
+
+    /**
+     * @return The Node for a process in the tree, or null
+     * if pid is not the root or one of its descendants.
+     */
+    public Node getNode(long pid) {
+        return (Node)this.nodes.get(new Long(pid));
+    }
+
+    /**
+     * @return Pids of the root and all of its descendants,
+     * parents before their children.
+     */
+    public long[] getPids() {
+        List order = new ArrayList();
+        if (this.root != null) {
+            walk(this.root, order);
+        }
+        long[] pids = new long[order.size()];
+        for (int i=0; i<pids.length; i++) {
+            pids[i] = ((Node)order.get(i)).pid;
+        }
+        return pids;
+    }
+
+    private static void walk(Node node, List order) {
+        order.add(node);
+        for (int i=0; i<node.children.size(); i++) {
+            walk((Node)node.children.get(i), order);
+        }
+    }
+
+    /**
+     * Rescan the process table and refresh the tree and its totals.
+     * @exception SigarException If the root process does not exist.
+     */
+    public synchronized void update() throws SigarException {
+        long[] all = this.sigar.getProcList();
+        ProcTable states =
+            this.sigar.getProcTable(all, ProcTable.FIELD_STATE);
+        long[] ppids = states.getPpid();
+
+        //ppid -> rows of its children
+        Map children = new HashMap();
+        int rootRow = -1;
+        for (int i=0; i<all.length; i++) {
+            if (!states.isValid(i, ProcTable.FIELD_STATE)) {
+                continue;
+            }
+            if (all[i] == this.rootPid) {
+                rootRow = i;
+                continue;
+            }
+            Long ppid = new Long(ppids[i]);
+            List rows = (List)children.get(ppid);
+            if (rows == null) {
+                rows = new ArrayList();
+                children.put(ppid, rows);
+            }
+            rows.add(new Integer(i));
+        }
+
+        if (rootRow == -1) {
+            this.root = null;
+            this.nodes = new HashMap();
+            throw new SigarException("Process " + this.rootPid +
+                                     " does not exist");
+        }
+
+        //breadth first from the root, parents before children
+        List rows = new ArrayList();
+        rows.add(new Integer(rootRow));
+        for (int i=0; i<rows.size(); i++) {
+            int row = ((Integer)rows.get(i)).intValue();
+            List kids = (List)children.remove(new Long(all[row]));
+            if (kids != null) {
+                rows.addAll(kids);
+            }
+        }
+
+        long[] pids = new long[rows.size()];
+        for (int i=0; i<pids.length; i++) {
+            pids[i] = all[((Integer)rows.get(i)).intValue()];
+        }
+
+        ProcTable metrics =
+            this.sigar.getProcTable(pids,
+                                    ProcTable.FIELD_TIME |
+                                    ProcTable.FIELD_MEM);
+
+        long timeNow = System.currentTimeMillis();
+        double diff = (this.lastTime == 0) ? 0 : (timeNow - this.lastTime);
+        this.lastTime = timeNow;
+
+        Map nodes = new HashMap();
+        Node[] tree = new Node[pids.length];
+
+        for (int i=0; i<pids.length; i++) {
+            int row = ((Integer)rows.get(i)).intValue();
+            long startTime = metrics.getStartTime()[i];
+            Long key = new Long(pids[i]);
+            Node prev = (Node)this.nodes.get(key);
+            Node node = new Node(pids[i], startTime);
+
+            node.ppid = ppids[row];
+            node.name = states.getName()[row];
+            node.threads = states.getThreads()[row];
+
+            if (metrics.isValid(i, ProcTable.FIELD_MEM)) {
+                node.size = metrics.getSize()[i];
+                node.resident = metrics.getResident()[i];
+            }
+            if (metrics.isValid(i, ProcTable.FIELD_TIME)) {
+                node.cpuTotal = metrics.getTotal()[i];
+            }
+            try {
+                node.fds = this.sigar.getProcFd(pids[i]).getTotal();
+            } catch (SigarException e) {
+                //EPERM, or gone since the scan
+            }
+
+            //same process as last time, not a reused pid
+            if ((prev != null) && (prev.startTime == startTime) &&
+                (diff > 0) && (node.cpuTotal >= prev.cpuTotal))
+            {
+                node.cpuPercent = (node.cpuTotal - prev.cpuTotal) / diff;
+            }
+
+            tree[i] = node;
+            nodes.put(key, node);
+        }
+
+        //children come after their parents, roll totals up in reverse
+        for (int i=tree.length-1; i>=0; i--) {
+            Node node = tree[i];
+            node.subtreeProcesses += 1;
+            node.subtreeSize += node.size;
+            node.subtreeResident += node.resident;
+            node.subtreeThreads += node.threads;
+            node.subtreeFds += node.fds;
+            node.subtreeCpuTotal += node.cpuTotal;
+            node.subtreeCpuPercent += node.cpuPercent;
+
+            if (i == 0) {
+                break;
+            }
+
+            Node parent = (Node)nodes.get(new Long(node.ppid));
+            parent.children.add(0, node);
+            parent.subtreeProcesses += node.subtreeProcesses;
+            parent.subtreeSize += node.subtreeSize;
+            parent.subtreeResident += node.subtreeResident;
+            parent.subtreeThreads += node.subtreeThreads;
+            parent.subtreeFds += node.subtreeFds;
+            parent.subtreeCpuTotal += node.subtreeCpuTotal;
+            parent.subtreeCpuPercent += node.subtreeCpuPercent;
+        }
+
+        this.nodes = nodes;
+        this.root = tree[0];
+    }
+}
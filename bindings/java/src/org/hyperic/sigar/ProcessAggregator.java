@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar;
+
+/**
+ * Per group totals over every process, computed natively in a
+ * single scan of the process table.  Processes are grouped by
+ * one of the GROUP_* keys and values are stored in parallel
+ * arrays indexed by row, where row <code>i</code> holds the
+ * totals for <code>getKeys()[i]</code>.
+ * Processes whose key could not be read (e.g. the exe of a process
+ * owned by another user) are summed in a group with an empty key.
+ */
+public class ProcessAggregator implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1467356581529709270L;
+
+    /**
+     * Group by Cred.Uid.
+     */
+    public static final int GROUP_UID        = 1;
+    /**
+     * Group by State.Name.
+     */
+    public static final int GROUP_STATE_NAME = 2;
+    /**
+     * Group by Exe.Name.
+     */
+    public static final int GROUP_EXE_NAME   = 3;
+    /**
+     * Group by State.Ppid.
+     */
+    public static final int GROUP_PPID       = 4;
+    /**
+     * Group by cgroup path, linux only.
+     */
+    public static final int GROUP_CGROUP     = 5;
+
+    private int groupBy;
+    private String[] keys;
+    private long[] ids;
+    private long[] processes;
+    private long[] threads;
+    private long[] resident;
+    private long[] cpuTotal;
+    private long[] fds;
+
+    ProcessAggregator() {}
+
+    native void gather(Sigar sigar) throws SigarException;
+
+    static ProcessAggregator fetch(Sigar sigar, int groupBy)
+        throws SigarException {
+
+        if ((groupBy < GROUP_UID) || (groupBy > GROUP_CGROUP)) {
+            throw new IllegalArgumentException("Invalid groupBy: " +
+                                               groupBy);
+        }
+
+        ProcessAggregator aggregator = new ProcessAggregator();
+        aggregator.groupBy = groupBy;
+        aggregator.gather(sigar);
+
+        return aggregator;
+    }
+
+    /**
+     * @return The GROUP_* key the processes were grouped by.
+     */
+    public int getGroupBy() {
+        return this.groupBy;
+    }
+
+    public int size() {
+        return this.keys.length;
+    }
+
+    /**
+     * @return Row of the given key, or -1 if there is no such group.
+     */
+    public int indexOf(String key) {
+        for (int i=0; i<this.keys.length; i++) {
+            if (this.keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String[] getKeys() {
+        return this.keys;
+    }
+
+    /**
+     * @return The uid or ppid of each group,
+     * {@link Sigar#FIELD_NOTIMPL} for the other GROUP_* keys.
+     */
+    public long[] getIds() {
+        return this.ids;
+    }
+
+    public long[] getProcesses() {
+        return this.processes;
+    }
+
+    public long[] getThreads() {
+        return this.threads;
+    }
+
+    public long[] getResident() {
+        return this.resident;
+    }
+
+    /**
+     * @return Total cpu time in milliseconds.
+     */
+    public long[] getCpuTotal() {
+        return this.cpuTotal;
+    }
+
+    /**
+     * @return Open file descriptors, of the processes
+     * which could be counted.
+     */
+    public long[] getFds() {
+        return this.fds;
+    }
+}
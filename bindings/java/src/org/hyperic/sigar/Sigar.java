@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -37,6 +38,8 @@ import org.hyperic.sigar.ptql.ProcessFinder;
  * system information.  The Sigar object itself maintains internal
  * state specific to each platform.  It also implements the SigarProxy
  * interface which provides caching at the Java level.
+ * Methods taking an <code>into</code> argument fill in and return
+ * that object rather than allocating a new one on each call.
  */
 public class Sigar implements SigarProxy {
 
@@ -93,6 +96,9 @@ public class Sigar implements SigarProxy {
 
     private ProcessFinder processFinder = null;
 
+    //query -> MultiProcCpu, kept between calls to getMultiProcCpu
+    private Map multiProcCpu = new HashMap();
+
     static {
         String nativeVersion = "unknown";
         String nativeBuildDate = "unknown";
@@ -310,6 +316,15 @@ public class Sigar implements SigarProxy {
         return Mem.fetch(this);
     }
 
+    /**
+     * Get system memory info into an existing object.
+     * @exception SigarException on failure.
+     */
+    public Mem getMem(Mem into) throws SigarException {
+        into.gather(this);
+        return into;
+    }
+
     /**
      * Get system swap info.
      * @exception SigarException on failure.
@@ -318,6 +333,15 @@ public class Sigar implements SigarProxy {
         return Swap.fetch(this);
     }
 
+    /**
+     * Get system swap info into an existing object.
+     * @exception SigarException on failure.
+     */
+    public Swap getSwap(Swap into) throws SigarException {
+        into.gather(this);
+        return into;
+    }
+
     /**
      * Get system cpu info.
      * @exception SigarException on failure.
@@ -326,6 +350,15 @@ public class Sigar implements SigarProxy {
         return Cpu.fetch(this);
     }
 
+    /**
+     * Get system cpu info into an existing object.
+     * @exception SigarException on failure.
+     */
+    public Cpu getCpu(Cpu into) throws SigarException {
+        into.gather(this);
+        return into;
+    }
+
     static void pause(int millis) {
         try {
             Thread.sleep(millis);
@@ -338,7 +371,10 @@ public class Sigar implements SigarProxy {
 
     /**
      * Get system CPU info in percentage format. (i.e. fraction of 1)
+     * The first call blocks while a second sample is taken,
+     * see CpuSampler for non-blocking values.
      * @exception SigarException on failure.
+     * @see CpuSampler
      */
     public CpuPerc getCpuPerc() throws SigarException {
         Cpu oldCpu;
@@ -358,7 +394,10 @@ public class Sigar implements SigarProxy {
 
     /**
      * Get system per-CPU info in percentage format. (i.e. fraction of 1)
+     * The first call blocks while a second sample is taken,
+     * see CpuSampler for non-blocking values.
      * @exception SigarException on failure.
+     * @see CpuSampler
      */
     public CpuPerc[] getCpuPercList() throws SigarException {
         Cpu[] oldCpuList;
@@ -404,6 +443,15 @@ public class Sigar implements SigarProxy {
         return Uptime.fetch(this);
     }
 
+    /**
+     * Get system uptime info into an existing object.
+     * @exception SigarException on failure.
+     */
+    public Uptime getUptime(Uptime into) throws SigarException {
+        into.gather(this);
+        return into;
+    }
+
     /**
      * Get system load average.
      * @exception SigarException on failure.
@@ -418,6 +466,22 @@ public class Sigar implements SigarProxy {
      */
     public native long[] getProcList() throws SigarException;
 
+    /**
+     * Get process start and exit events pushed by the kernel.
+     * The first call subscribes this Sigar instance, events are
+     * queued from then on and returned by subsequent calls.
+     * Currently implemented using the Linux proc connector,
+     * which requires CAP_NET_ADMIN.
+     * @param timeout Milliseconds to wait for the first event.
+     * @exception SigarNotImplementedException If events are not
+     * available on this platform or in this namespace.
+     * @exception SigarException If subscribing failed.
+     * @return Events since the last call, empty on timeout.
+     * @see ProcEventMonitor
+     */
+    public native ProcEvent[] getProcEvents(int timeout)
+        throws SigarException;
+
     /**
      * Get system process stats.
      * @exception SigarException on failure.
@@ -426,6 +490,35 @@ public class Sigar implements SigarProxy {
         return ProcStat.fetch(this);
     }
 
+    /**
+     * Get system process stats into an existing object.
+     * @exception SigarException on failure.
+     */
+    public ProcStat getProcStat(ProcStat into) throws SigarException {
+        into.gather(this);
+        return into;
+    }
+
+    /**
+     * Get system process totals without reading the state of
+     * each process, as getProcStat() does.
+     * On Linux the running, idle (blocked) and thread counts come
+     * from /proc/stat and /proc/loadavg and count threads rather
+     * than processes; sleeping, stopped and zombie are not available.
+     * Other platforms return the same values as getProcStat().
+     * @exception SigarException on failure.
+     */
+    public native ProcStat getProcStatSummary() throws SigarException;
+
+    /**
+     * Get system memory, swap, cpu, load average, uptime and
+     * process stats in a single native call.
+     * @exception SigarException on failure.
+     */
+    public SystemSnapshot getSystemSnapshot() throws SigarException {
+        return SystemSnapshot.fetch(this);
+    }
+
     private long convertPid(String pid) throws SigarException {
         if (pid.equals("$$")) {
             return getPid();
@@ -442,6 +535,43 @@ public class Sigar implements SigarProxy {
         }
     }
 
+    /**
+     * Get process metrics for a list of processes in a single call.
+     * @param pids The process ids.
+     * @param fields Mask of ProcTable.FIELD_* values to gather.
+     * @exception SigarException on failure.
+     * @see ProcTable
+     */
+    public ProcTable getProcTable(long[] pids, int fields)
+        throws SigarException {
+        return ProcTable.fetch(this, pids, fields);
+    }
+
+    /**
+     * Get cpu, memory, thread and fd totals of all processes,
+     * grouped by one of the ProcessAggregator.GROUP_* keys.
+     * @param groupBy The key to group by.
+     * @exception SigarException on failure.
+     * @see ProcessAggregator
+     */
+    public ProcessAggregator getProcAggregate(int groupBy)
+        throws SigarException {
+        return ProcessAggregator.fetch(this, groupBy);
+    }
+
+    /**
+     * Get a process and all of its descendants, with subtree totals.
+     * Call {@link ProcTree#update()} on the result to refresh it.
+     * @param pid The process id of the root.
+     * @exception SigarException on failure.
+     * @see ProcTree
+     */
+    public ProcTree getProcTree(long pid) throws SigarException {
+        ProcTree tree = new ProcTree(this, pid);
+        tree.update();
+        return tree;
+    }
+
     /**
      * Get process memory info.
      * @param pid The process id.
@@ -451,6 +581,16 @@ public class Sigar implements SigarProxy {
         return ProcMem.fetch(this, pid);
     }
 
+    /**
+     * Get process memory info into an existing object.
+     * @param pid The process id.
+     * @exception SigarException on failure.
+     */
+    public ProcMem getProcMem(long pid, ProcMem into) throws SigarException {
+        into.gather(this, pid);
+        return into;
+    }
+
     public ProcMem getProcMem(String pid) throws SigarException {
         return getProcMem(convertPid(pid));
     }
@@ -468,6 +608,18 @@ public class Sigar implements SigarProxy {
         return ProcState.fetch(this, pid);
     }
 
+    /**
+     * Get process state info into an existing object.
+     * @param pid The process id.
+     * @exception SigarException on failure.
+     */
+    public ProcState getProcState(long pid, ProcState into)
+        throws SigarException {
+
+        into.gather(this, pid);
+        return into;
+    }
+
     public ProcState getProcState(String pid) throws SigarException {
         return getProcState(convertPid(pid));
     }
@@ -481,6 +633,16 @@ public class Sigar implements SigarProxy {
         return ProcTime.fetch(this, pid);
     }
 
+    /**
+     * Get process time info into an existing object.
+     * @param pid The process id.
+     * @exception SigarException on failure.
+     */
+    public ProcTime getProcTime(long pid, ProcTime into) throws SigarException {
+        into.gather(this, pid);
+        return into;
+    }
+
     public ProcTime getProcTime(String pid) throws SigarException {
         return getProcTime(convertPid(pid));
     }
@@ -494,12 +656,40 @@ public class Sigar implements SigarProxy {
         return ProcCpu.fetch(this, pid);
     }
 
+    /**
+     * Get process cpu info into an existing object.
+     * @param pid The process id.
+     * @exception SigarException on failure.
+     */
+    public ProcCpu getProcCpu(long pid, ProcCpu into) throws SigarException {
+        into.gather(this, pid);
+        return into;
+    }
+
     public ProcCpu getProcCpu(String pid) throws SigarException {
         return getProcCpu(convertPid(pid));
     }
 
+    /**
+     * Get cpu usage of all processes matched by a PTQL query,
+     * since the previous call with the same query.
+     * @param query The PTQL query.
+     * @exception SigarException on failure.
+     * @see MultiProcCpu
+     */
     public MultiProcCpu getMultiProcCpu(String query) throws SigarException {
-        return MultiProcCpu.get(this, query);
+        MultiProcCpu cpu;
+
+        synchronized (this.multiProcCpu) {
+            cpu = (MultiProcCpu)this.multiProcCpu.get(query);
+            if (cpu == null) {
+                cpu = new MultiProcCpu(query);
+                this.multiProcCpu.put(query, cpu);
+            }
+        }
+
+        cpu.update(this, query);
+        return cpu;
     }
 
     /**
@@ -511,6 +701,16 @@ public class Sigar implements SigarProxy {
         return ProcCred.fetch(this, pid);
     }
 
+    /**
+     * Get process credential info into an existing object.
+     * @param pid The process id.
+     * @exception SigarException on failure.
+     */
+    public ProcCred getProcCred(long pid, ProcCred into) throws SigarException {
+        into.gather(this, pid);
+        return into;
+    }
+
     public ProcCred getProcCred(String pid) throws SigarException {
         return getProcCred(convertPid(pid));
     }
@@ -537,6 +737,16 @@ public class Sigar implements SigarProxy {
         return ProcFd.fetch(this, pid);
     }
 
+    /**
+     * Get process file descriptor info into an existing object.
+     * @param pid The process id.
+     * @exception SigarException on failure.
+     */
+    public ProcFd getProcFd(long pid, ProcFd into) throws SigarException {
+        into.gather(this, pid);
+        return into;
+    }
+
     public ProcFd getProcFd(String pid) throws SigarException {
         return getProcFd(convertPid(pid));
     }
@@ -639,6 +849,19 @@ public class Sigar implements SigarProxy {
                            Integer.parseInt(port));
     }
 
+    /**
+     * Find the pids of the processes listening on the given ports.
+     * Connections and process descriptors are read once for all
+     * ports, rather than once per port as with getProcPort.
+     * @param protocol NetFlags.CONN_TCP or NetFlags.CONN_UDP.
+     * @param ports The port numbers.
+     * @return pids in the order of <code>ports</code>,
+     * 0 where no process was found.
+     * @exception SigarException on failure.
+     */
+    public native long[] getProcPorts(int protocol, long[] ports)
+        throws SigarException;
+
     /**
      * Get the cumulative cpu time for the calling thread.
      */
@@ -673,6 +896,21 @@ public class Sigar implements SigarProxy {
         return FileSystemUsage.fetch(this, name);
     }
 
+    /**
+     * Get file system usage into an existing object.
+     * @param name Name of the directory on which filesystem is mounted.
+     * @exception SigarException on failure.
+     */
+    public FileSystemUsage getFileSystemUsage(String name,
+                                              FileSystemUsage into)
+        throws SigarException {
+        if (name == null) {
+            throw new SigarException("name cannot be null");
+        }
+        into.gather(this, name);
+        return into;
+    }
+
     /**
      * Get disk usage.
      * @param name Name of disk
@@ -686,6 +924,20 @@ public class Sigar implements SigarProxy {
         return DiskUsage.fetch(this, name);
     }
 
+    /**
+     * Get disk usage into an existing object.
+     * @param name Name of disk
+     * @exception SigarException on failure.
+     */
+    public DiskUsage getDiskUsage(String name, DiskUsage into)
+        throws SigarException {
+        if (name == null) {
+            throw new SigarException("name cannot be null");
+        }
+        into.gather(this, name);
+        return into;
+    }
+
     /**
      * Get file system usage of a mounted directory.
      * This method checks that the given directory is mounted.
@@ -779,6 +1031,28 @@ public class Sigar implements SigarProxy {
     public native NetConnection[] getNetConnectionList(int flags)
         throws SigarException;
 
+    /**
+     * Find the processes owning network connections,
+     * similar to netstat -p.<p>
+     * Supported Platforms: Linux.
+     * @param connections From getNetConnectionList.
+     * @return pids in the order of <code>connections</code>,
+     * 0 where no process was found.
+     * @exception SigarException on failure.
+     */
+    public long[] getNetConnectionOwners(NetConnection[] connections)
+        throws SigarException {
+
+        long[] inodes = new long[connections.length];
+        for (int i=0; i<connections.length; i++) {
+            inodes[i] = connections[i].getInode();
+        }
+        return getNetConnectionOwnersNative(inodes);
+    }
+
+    private native long[] getNetConnectionOwnersNative(long[] inodes)
+        throws SigarException;
+
     /**
      * Get the TCP listen address for the given port.
      * If there is not a listener on the given port, null will be returned.
@@ -910,6 +1184,28 @@ public class Sigar implements SigarProxy {
         return NetInterfaceStat.fetch(this, name);
     }
 
+    /**
+     * Get network interface stats into an existing object.
+     * @exception SigarException on failure.
+     */
+    public NetInterfaceStat getNetInterfaceStat(String name,
+                                                NetInterfaceStat into)
+        throws SigarException {
+        into.gather(this, name);
+        return into;
+    }
+
+    /**
+     * Get network interface stats for every interface in one call,
+     * rather than calling getNetInterfaceStat once per name.
+     * On Linux the counters for all interfaces are gathered from
+     * a single read of /proc/net/dev.
+     * @return Map of interface name to NetInterfaceStat,
+     * in the order reported by the kernel.
+     * @exception SigarException on failure.
+     */
+    public native Map getNetInterfaceStatList() throws SigarException;
+
     /**
      * Get the list of configured network interface names.
      * @exception SigarException on failure.
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Cache entries keyed by an Object, such as a name or a {@link Key}.
+ * Entries which have expired are dropped when the map grows.
+ */
+class SigarCacheMap {
+
+    private static final int MIN_SWEEP = 64;
+
+    private Map map = new HashMap();
+    private int sweepAt = MIN_SWEEP;
+
+    /**
+     * Key for methods with two arguments, compared by value.
+     */
+    static class Key {
+        private long l1, l2;
+        private Object o1, o2;
+
+        Key(long l1, Object o1, long l2, Object o2) {
+            this.l1 = l1;
+            this.o1 = o1;
+            this.l2 = l2;
+            this.o2 = o2;
+        }
+
+        private static boolean equals(Object o1, Object o2) {
+            return (o1 == null) ? (o2 == null) : o1.equals(o2);
+        }
+
+        public int hashCode() {
+            int h = (int)(this.l1 ^ (this.l1 >>> 32));
+            h = 31 * h + (int)(this.l2 ^ (this.l2 >>> 32));
+            h = 31 * h + ((this.o1 == null) ? 0 : this.o1.hashCode());
+            h = 31 * h + ((this.o2 == null) ? 0 : this.o2.hashCode());
+            return h;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key)o;
+            return
+                (this.l1 == key.l1) &&
+                (this.l2 == key.l2) &&
+                equals(this.o1, key.o1) &&
+                equals(this.o2, key.o2);
+        }
+    }
+
+    /**
+     * @return The entry for key, created if it does not exist.
+     */
+    synchronized SigarCacheObject get(Object key, long timeNow, int expire) {
+        SigarCacheObject entry = (SigarCacheObject)this.map.get(key);
+        if (entry != null) {
+            return entry;
+        }
+
+        if (this.map.size() >= this.sweepAt) {
+            for (Iterator it = this.map.values().iterator(); it.hasNext();) {
+                if (!((SigarCacheObject)it.next()).isValid(timeNow, expire)) {
+                    it.remove();
+                }
+            }
+            this.sweepAt = Math.max(MIN_SWEEP, this.map.size() * 2);
+        }
+
+        entry = new SigarCacheObject();
+        this.map.put(key, entry);
+        return entry;
+    }
+
+    synchronized void clear() {
+        this.map.clear();
+        this.sweepAt = MIN_SWEEP;
+    }
+}
@@ -20,6 +20,69 @@ package org.hyperic.sigar;
 
 class SigarCacheObject {
 
-    long timestamp = 0;
-    Object value = null;
+    //read without locking on cache hits
+    volatile long timestamp = 0;
+    volatile Object value = null;
+    //primitive results, written before value
+    volatile long longValue = 0;
+    //start time of the process for per-process values, 0 if unknown
+    long startTime = 0;
+    volatile long checkTime = 0;
+    //guarded by this
+    boolean loading = false;
+
+    /**
+     * @return The cached value, or null if missing or expired.
+     */
+    Object get(long timeNow, int expire) {
+        //read timestamp before value, they are written in reverse order
+        long timestamp = this.timestamp;
+        Object value = this.value;
+        if ((timeNow - timestamp) <= expire) {
+            return value;
+        }
+        return null;
+    }
+
+    boolean isValid(long timeNow, int expire) {
+        return get(timeNow, expire) != null;
+    }
+
+    /**
+     * @return true if this is a per-process value whose process
+     * has not been checked for ProcIdentity.CHECK_INTERVAL.
+     */
+    boolean needsProcessCheck(long timeNow) {
+        return
+            (this.startTime != 0) &&
+            ((timeNow - this.checkTime) > ProcIdentity.CHECK_INTERVAL);
+    }
+
+    /**
+     * Compare against the current start time of the process.
+     * The value is dropped if the process has exited or its pid
+     * has been reused.
+     */
+    boolean isSameProcess(long startTime, long timeNow) {
+        if (startTime != this.startTime) {
+            set(null, 0);
+            return false;
+        }
+        this.checkTime = timeNow;
+        return true;
+    }
+
+    /**
+     * Record the start time of the process, before set().
+     * Per-process values with no start time are not cached.
+     */
+    void setProcess(long startTime, long timeNow) {
+        this.startTime = startTime;
+        this.checkTime = timeNow;
+    }
+
+    void set(Object value, long timeNow) {
+        this.value = value;
+        this.timestamp = timeNow;
+    }
 }
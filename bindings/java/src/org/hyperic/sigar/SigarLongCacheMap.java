@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar;
+
+/**
+ * Cache entries keyed by a primitive long, such as a pid.
+ * Entries which have expired are dropped when the table fills up.
+ */
+class SigarLongCacheMap {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private SigarCacheObject[] values;
+    private int size;
+
+    SigarLongCacheMap() {
+        clear();
+    }
+
+    private static int hash(long key) {
+        int h = (int)(key ^ (key >>> 32));
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return The entry for key, created if it does not exist.
+     */
+    synchronized SigarCacheObject get(long key, long timeNow, int expire) {
+        int mask = this.keys.length - 1;
+        int i = hash(key) & mask;
+
+        while (this.values[i] != null) {
+            if (this.keys[i] == key) {
+                return this.values[i];
+            }
+            i = (i + 1) & mask;
+        }
+
+        if (this.size >= (this.keys.length >> 1)) {
+            rehash(timeNow, expire);
+            return get(key, timeNow, expire);
+        }
+
+        SigarCacheObject entry = new SigarCacheObject();
+        this.keys[i] = key;
+        this.values[i] = entry;
+        this.size++;
+        return entry;
+    }
+
+    //drop expired entries, growing the table if still half full
+    private void rehash(long timeNow, int expire) {
+        long[] keys = this.keys;
+        SigarCacheObject[] values = this.values;
+
+        int live = 0;
+        for (int i=0; i<values.length; i++) {
+            if ((values[i] != null) && values[i].isValid(timeNow, expire)) {
+                live++;
+            }
+            else {
+                values[i] = null;
+            }
+        }
+
+        int capacity = MIN_CAPACITY;
+        while (capacity < (live * 4)) {
+            capacity <<= 1;
+        }
+
+        this.keys = new long[capacity];
+        this.values = new SigarCacheObject[capacity];
+        this.size = 0;
+
+        int mask = capacity - 1;
+        for (int i=0; i<values.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            int j = hash(keys[i]) & mask;
+            while (this.values[j] != null) {
+                j = (j + 1) & mask;
+            }
+            this.keys[j] = keys[i];
+            this.values[j] = values[i];
+            this.size++;
+        }
+    }
+
+    synchronized void clear() {
+        this.keys = new long[MIN_CAPACITY];
+        this.values = new SigarCacheObject[MIN_CAPACITY];
+        this.size = 0;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A pool of Sigar instances, each with its own native handle.
+ * <p>
+ * A Sigar instance must not be used by more than one thread at a time,
+ * the native handle keeps per-instance caches (process stats, pid list,
+ * process cpu times) and the JNI environment of the calling thread.
+ * Separate instances do not share any of this state and can be used
+ * concurrently.  The pool hands each caller an instance of its own,
+ * so up to <code>size</code> threads can call into Sigar in parallel.
+ * <p>
+ * Methods which compare against a previous call on the same instance,
+ * such as {@link Sigar#getCpuPerc()}, are always run by the proxy on
+ * the first instance the pool created, so their deltas are consistent
+ * from one call to the next.
+ */
+public class SigarPool {
+
+    private int size;
+    private int created = 0;
+    private boolean closed = false;
+    private List idle = new ArrayList();
+    private SigarProxy proxy;
+    //runs the STATEFUL methods
+    private Sigar primary = null;
+
+    //SigarProxy methods whose results depend on the previous call
+    //to the same instance
+    private static final Set STATEFUL = new HashSet();
+
+    static {
+        STATEFUL.add("getCpuPerc");
+        STATEFUL.add("getCpuPercList");
+        STATEFUL.add("getProcCpu");
+        STATEFUL.add("getMultiProcCpu");
+    }
+
+    /**
+     * Create a pool sized to the number of available processors.
+     */
+    public SigarPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param size Maximum number of Sigar instances to create.
+     * Instances are created on demand.
+     */
+    public SigarPool(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size=" + size);
+        }
+        this.size = size;
+    }
+
+    /**
+     * Create a pool containing only the given instance,
+     * all calls are serialized.
+     */
+    public SigarPool(Sigar sigar) {
+        this.size = 1;
+        this.created = 1;
+        this.primary = sigar;
+        this.idle.add(sigar);
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Take an instance for the exclusive use of the calling thread,
+     * waiting if all instances are in use.
+     * The instance must be given back using {@link #release(Sigar)}.
+     */
+    public synchronized Sigar borrow() {
+        while (this.idle.isEmpty()) {
+            if (this.closed) {
+                throw new IllegalStateException("SigarPool has been closed");
+            }
+            if (this.created < this.size) {
+                return create();
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted waiting for Sigar");
+            }
+        }
+        if (this.closed) {
+            throw new IllegalStateException("SigarPool has been closed");
+        }
+
+        return (Sigar)this.idle.remove(this.idle.size() - 1);
+    }
+
+    private Sigar create() {
+        Sigar sigar = new Sigar();
+        if (this.created++ == 0) {
+            this.primary = sigar;
+        }
+        return sigar;
+    }
+
+    /**
+     * Take the first instance the pool created, waiting until it is idle.
+     * Callers which need deltas between calls, e.g. CpuPerc,
+     * get them from the same instance every time.
+     * The instance must be given back using {@link #release(Sigar)}.
+     */
+    public synchronized Sigar borrowPrimary() {
+        while (true) {
+            if (this.closed) {
+                throw new IllegalStateException("SigarPool has been closed");
+            }
+            if (this.primary == null) {
+                return create();
+            }
+            if (this.idle.remove(this.primary)) {
+                return this.primary;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted waiting for Sigar");
+            }
+        }
+    }
+
+    public synchronized void release(Sigar sigar) {
+        if (this.closed) {
+            sigar.close();
+            return;
+        }
+        this.idle.add(sigar);
+        //waiters in borrowPrimary() may only take one instance
+        notifyAll();
+    }
+
+    private static class PoolHandler implements InvocationHandler {
+        private SigarPool pool;
+
+        PoolHandler(SigarPool pool) {
+            this.pool = pool;
+        }
+
+        public Object invoke(Object proxy, Method meth, Object[] args)
+            throws Throwable
+        {
+            Sigar sigar;
+            if (STATEFUL.contains(meth.getName())) {
+                sigar = this.pool.borrowPrimary();
+            }
+            else {
+                sigar = this.pool.borrow();
+            }
+            try {
+                return meth.invoke(sigar, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            } finally {
+                this.pool.release(sigar);
+            }
+        }
+    }
+
+    /**
+     * @return A SigarProxy which is safe to share between threads,
+     * each call runs on an instance borrowed from this pool.
+     */
+    public synchronized SigarProxy getSigar() {
+        if (this.proxy == null) {
+            this.proxy = (SigarProxy)
+                Proxy.newProxyInstance(SigarPool.class.getClassLoader(),
+                                       new Class[] { SigarProxy.class },
+                                       new PoolHandler(this));
+        }
+        return this.proxy;
+    }
+
+    /**
+     * Close all instances in the pool.
+     * Instances borrowed at the time of close are closed
+     * when they are released.
+     */
+    public synchronized void close() {
+        this.closed = true;
+        for (int i=0; i<this.idle.size(); i++) {
+            ((Sigar)this.idle.get(i)).close();
+        }
+        this.idle.clear();
+        notifyAll();
+    }
+}
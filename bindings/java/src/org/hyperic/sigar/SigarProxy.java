@@ -51,6 +51,13 @@ public interface SigarProxy {
 
     public ProcStat getProcStat() throws SigarException;
 
+    public ProcStat getProcStatSummary() throws SigarException;
+
+    public SystemSnapshot getSystemSnapshot() throws SigarException;
+
+    public ProcTable getProcTable(long[] pids, int fields)
+        throws SigarException;
+
     public ProcMem getProcMem(long pid) throws SigarException;
 
     public ProcMem getProcMem(String pid) throws SigarException;
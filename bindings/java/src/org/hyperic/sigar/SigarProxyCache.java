@@ -18,6 +18,8 @@
 
 package org.hyperic.sigar;
 
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import java.lang.reflect.Proxy;
@@ -25,23 +27,140 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 
-import org.hyperic.sigar.util.ReferenceMap;
-
 /**
  * This class implements a caching mechanism to avoid system calls
  * with heavy Sigar usage in a short period of time.  It is intended
  * for use in applications such as Top.
+ * <p>
+ * The cache may be shared between threads.  Cache hits do not
+ * contend on a global lock, calls into the underlying Sigar instance
+ * are serialized and concurrent misses for the same method and
+ * arguments result in a single call.
+ * @see CachingSigar
  */
 public class SigarProxyCache
     implements InvocationHandler {
 
     private Sigar sigar;
-    private Map cache = ReferenceMap.newInstance();
+    //calls into sigar are serialized on this lock
+    private Object sigarLock = new Object();
+    //Method -> MethodCache, replaced (not modified) on update
+    private volatile Map cache = new HashMap();
+    //method name or return type name -> Integer, guarded by this
+    private Map expires = new HashMap();
     public static final int EXPIRE_DEFAULT = 30 * 1000; //30 seconds
     private int expire;
     private static final boolean debugEnabled =
         "debug".equals(System.getProperty("sigar.log"));
 
+    private static final int SEGMENTS = 16;
+
+    /**
+     * Cached values of a single method.
+     * Entries for methods with arguments are spread over
+     * segments, each with its own lock.
+     */
+    private static class MethodCache {
+        volatile int expire;
+        //first argument is a pid
+        boolean isProc;
+        SigarCacheObject entry;
+        SigarCacheMap[] segments;
+
+        MethodCache(Method method, int expire) {
+            this.expire = expire;
+            this.isProc = isProcMethod(method);
+            if (method.getParameterTypes().length == 0) {
+                this.entry = new SigarCacheObject();
+            }
+            else {
+                this.segments = new SigarCacheMap[SEGMENTS];
+                for (int i=0; i<SEGMENTS; i++) {
+                    this.segments[i] = new SigarCacheMap();
+                }
+            }
+        }
+
+        SigarCacheObject getEntry(Object argKey, long timeNow) {
+            if (argKey == null) {
+                return this.entry;
+            }
+
+            SigarCacheMap segment =
+                this.segments[(argKey.hashCode() & 0x7fffffff) % SEGMENTS];
+
+            return segment.get(argKey, timeNow, this.expire);
+        }
+    }
+
+    private static boolean isProcMethod(Method method) {
+        String name = method.getName();
+        Class[] params = method.getParameterTypes();
+        return
+            name.startsWith("getProc") &&
+            !name.equals("getProcPort") &&
+            (params.length != 0) &&
+            ((params[0] == Long.TYPE) || (params[0] == String.class));
+    }
+
+    private long getStartTime(Object pid) {
+        synchronized (this.sigarLock) {
+            if (pid instanceof String) {
+                return ProcIdentity.getStartTime(this.sigar, (String)pid);
+            }
+            else {
+                return ProcIdentity.getStartTime(this.sigar,
+                                                 ((Long)pid).longValue());
+            }
+        }
+    }
+
+    /**
+     * Key for methods with more than one argument.
+     */
+    private static class ArgKey {
+        private Object[] args;
+        private int hashCode = 0;
+
+        ArgKey(Object[] args) {
+            this.args = args;
+            for (int i=0; i<args.length; i++) {
+                this.hashCode = 31 * this.hashCode + args[i].hashCode();
+            }
+        }
+
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof ArgKey)) {
+                return false;
+            }
+            Object[] oargs = ((ArgKey)o).args;
+            if (oargs.length != this.args.length) {
+                return false;
+            }
+            for (int i=0; i<this.args.length; i++) {
+                if (!this.args[i].equals(oargs[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public String toString() {
+            StringBuffer sb = new StringBuffer();
+            for (int i=0; i<this.args.length; i++) {
+                if (i != 0) {
+                    sb.append(',');
+                }
+                sb.append(this.args[i]);
+            }
+            return sb.toString();
+        }
+    }
+
     public SigarProxyCache(Sigar sigar, int expire) {
         this.sigar = sigar;
         this.expire = expire;
@@ -73,13 +192,63 @@ public class SigarProxyCache
         SigarLog.getLogger("SigarProxyCache").debug(msg);
     }
 
+    //arrays are named by their element type, e.g. "Cpu" or "long",
+    //the same names CachingSigar uses
+    private static String getTypeName(Method method) {
+        Class type = method.getReturnType();
+        if (type.isArray()) {
+            type = type.getComponentType();
+        }
+        String name = type.getName();
+        int ix = name.lastIndexOf('.');
+        if (ix != -1) {
+            name = name.substring(ix+1);
+        }
+        return name;
+    }
+
+    //caller must hold lock on this
+    private int getExpire(Method method) {
+        Integer value = (Integer)this.expires.get(method.getName());
+        if (value == null) {
+            value = (Integer)this.expires.get(getTypeName(method));
+        }
+        return value == null ? this.expire : value.intValue();
+    }
+
     /**
-     * @deprecated
+     * Set the cache expiration for a method or type.
+     * @param proxy A proxy returned by newInstance.
+     * @param type Method name (e.g. "getProcMem") or
+     * return type name (e.g. "ProcMem"), arrays are named by their
+     * element type (e.g. "Cpu" or "long").  A method name takes
+     * precedence over the type name of the method.
+     * @param expire Milliseconds values of this type are cached.
      */
     public static void setExpire(SigarProxy proxy,
                                  String type,
                                  int expire)
         throws SigarException {
+
+        if (proxy instanceof CachingSigar) {
+            ((CachingSigar)proxy).setExpire(type, expire);
+        }
+        else {
+            getHandler(proxy).setExpire(type, expire);
+        }
+    }
+
+    public synchronized void setExpire(String type, int expire) {
+        this.expires.put(type, new Integer(expire));
+
+        for (Iterator it = this.cache.entrySet().iterator();
+             it.hasNext();)
+        {
+            Map.Entry entry = (Map.Entry)it.next();
+            Method method = (Method)entry.getKey();
+            MethodCache mcache = (MethodCache)entry.getValue();
+            mcache.expire = getExpire(method);
+        }
     }
 
     private static SigarProxyCache getHandler(Object proxy) {
@@ -87,18 +256,48 @@ public class SigarProxyCache
     }
 
     public static void clear(Object proxy) {
-        getHandler(proxy).cache.clear();
+        if (proxy instanceof CachingSigar) {
+            ((CachingSigar)proxy).clear();
+        }
+        else {
+            getHandler(proxy).clear();
+        }
+    }
+
+    public synchronized void clear() {
+        this.cache = new HashMap();
     }
 
     public static Sigar getSigar(Object proxy) {
         if (proxy.getClass() == Sigar.class) {
             return (Sigar)proxy;
         }
+        else if (proxy instanceof CachingSigar) {
+            return ((CachingSigar)proxy).getSigar();
+        }
         else {
             return getHandler(proxy).sigar;
         }
     }
 
+    private MethodCache getMethodCache(Method method) {
+        MethodCache mcache = (MethodCache)this.cache.get(method);
+        if (mcache != null) {
+            return mcache;
+        }
+
+        synchronized (this) {
+            mcache = (MethodCache)this.cache.get(method);
+            if (mcache == null) {
+                Map cache = new HashMap(this.cache);
+                mcache = new MethodCache(method, getExpire(method));
+                cache.put(method, mcache);
+                this.cache = cache;
+            }
+            return mcache;
+        }
+    }
+
     private String getDebugArgs(Object[] args, Object argKey) {
 
         if (args.length == 0) {
@@ -119,132 +318,150 @@ public class SigarProxyCache
         return dargs.toString();
     }
 
+    private Object load(Method method, Object[] args, Object argKey)
+        throws SigarException, SigarNotImplementedException {
+
+        try {
+            synchronized (this.sigarLock) {
+                return method.invoke(this.sigar, args);
+            }
+        } catch (InvocationTargetException e) {
+            Throwable t =
+                ((InvocationTargetException)e).
+                getTargetException();
+
+            String msg;
+
+            if (t instanceof SigarException) {
+                msg = "";
+            }
+            else {
+                msg = t.getClass().getName() + ": ";
+            }
+
+            msg += t.getMessage();
+
+            if (argKey != null) {
+                msg += ": " + getDebugArgs(args, argKey);
+            }
+
+            if (t instanceof SigarNotImplementedException) {
+                throw new SigarNotImplementedException(msg);
+            }
+            else if (t instanceof SigarPermissionDeniedException) {
+                throw new SigarPermissionDeniedException(msg);
+            }
+            throw new SigarException(msg);
+        } catch (Exception e) {
+            String msg =
+                e.getClass().getName() + ": " +
+                e.getMessage();
+
+            if (argKey != null) {
+                msg += ": " + getDebugArgs(args, argKey);
+            }
+
+            throw new SigarException(msg);
+        }
+    }
+
     /**
      * The java.lang.reflect.InvocationHandler used by the Proxy.
      * This method handles caching of all Sigar type objects.
      */
-    public synchronized Object invoke(Object proxy, Method method, Object[] args)
+    public Object invoke(Object proxy, Method method, Object[] args)
         throws SigarException, SigarNotImplementedException {
 
-        SigarCacheObject cacheVal = null;
-        Object retval;
         Object argKey = null;
-        Map argMap = null;
         long timeNow = System.currentTimeMillis();
 
-        if (args != null) {
+        if ((args != null) && (args.length != 0)) {
             if (args.length == 1) {
                 argKey = args[0];
             }
             else {
-                int hashCode = 0;
-                for (int i=0; i<args.length; i++) {
-                    hashCode ^= args[i].hashCode();
-                }
-                argKey = new Integer(hashCode);
-            }
-            argMap = (Map)this.cache.get(method);
-            if (argMap == null) {
-                argMap = ReferenceMap.newInstance();
-            }
-            else {
-                //XXX what todo when pids are stale?
-                cacheVal = (SigarCacheObject)argMap.get(argKey);
+                argKey = new ArgKey(args);
             }
         }
-        else {
-            cacheVal = (SigarCacheObject)this.cache.get(method);
-        }
 
-        if (cacheVal == null) {
-            cacheVal = new SigarCacheObject();
-        }
+        MethodCache mcache = getMethodCache(method);
+        SigarCacheObject cacheVal = mcache.getEntry(argKey, timeNow);
+        int expire = mcache.expire;
 
         String argDebug = "";
         if (debugEnabled) {
-            if ((args != null) && (args.length != 0)) {
+            if (argKey != null) {
                 argDebug = " with args=" +
                     getDebugArgs(args, argKey);
             }
         }
 
-        if (cacheVal.value != null) {
-            if (debugEnabled) {
-                debug("found " + method.getName() +
-                      " in cache" + argDebug);
-            }
-
-            if ((timeNow - cacheVal.timestamp) > this.expire) {
+        Object value = cacheVal.get(timeNow, expire);
+        if ((value != null) && cacheVal.needsProcessCheck(timeNow)) {
+            //pid may have been reused since the value was cached
+            if (!cacheVal.isSameProcess(getStartTime(args[0]), timeNow)) {
                 if (debugEnabled) {
-                    debug("expiring " + method.getName() +
-                          " from cache" + argDebug);
+                    debug("pid of " + method.getName() +
+                          " is stale" + argDebug);
                 }
-
-                cacheVal.value = null;
+                value = null;
             }
         }
-        else {
+
+        if (value != null) {
             if (debugEnabled) {
-                debug(method.getName() +
-                      " NOT in cache" + argDebug);
+                debug("found " + method.getName() +
+                      " in cache" + argDebug);
             }
+            return value;
         }
 
-        if (cacheVal.value == null) {
-            try {
-                retval = method.invoke(this.sigar, args);
-            } catch (InvocationTargetException e) {
-                Throwable t =
-                    ((InvocationTargetException)e).
-                    getTargetException();
-
-                String msg;
-
-                if (t instanceof SigarException) {
-                    msg = "";
-                }
-                else {
-                    msg = t.getClass().getName() + ": ";
-                }
-
-                msg += t.getMessage();
-
-                if (argKey != null) {
-                    msg += ": " + getDebugArgs(args, argKey);
+        synchronized (cacheVal) {
+            //another thread may be loading the same value
+            while (cacheVal.loading) {
+                try {
+                    cacheVal.wait();
+                } catch (InterruptedException e) {
+                    throw new SigarException("interrupted: " +
+                                             method.getName());
                 }
-
-                if (t instanceof SigarNotImplementedException) {
-                    throw new SigarNotImplementedException(msg);
-                }
-                else if (t instanceof SigarPermissionDeniedException) {
-                    throw new SigarPermissionDeniedException(msg);
-                }
-                throw new SigarException(msg);
-            } catch (Exception e) {
-                String msg =
-                    e.getClass().getName() + ": " +
-                    e.getMessage();
-
-                if (argKey != null) {
-                    msg += ": " + getDebugArgs(args, argKey);
-                }
-
-                throw new SigarException(msg);
             }
+            value = cacheVal.get(timeNow, expire);
+            if (value != null) {
+                return value;
+            }
+            cacheVal.loading = true;
+        }
 
-            cacheVal.value = retval;
-            cacheVal.timestamp = timeNow;
-
-            if (args == null) {
-                this.cache.put(method, cacheVal);
+        if (debugEnabled) {
+            if (cacheVal.value != null) {
+                debug("expiring " + method.getName() +
+                      " from cache" + argDebug);
             }
             else {
-                argMap.put(argKey, cacheVal);
-                this.cache.put(method, argMap);
+                debug(method.getName() +
+                      " NOT in cache" + argDebug);
             }
         }
-        else {
-            retval = cacheVal.value;
+
+        Object retval = null;
+        long startTime = 0;
+        try {
+            retval = load(method, args, argKey);
+            if (mcache.isProc) {
+                startTime = getStartTime(args[0]);
+            }
+        } finally {
+            synchronized (cacheVal) {
+                //without a start time pid reuse could not be detected,
+                //the process has exited or is unreadable
+                if ((retval != null) && !(mcache.isProc && (startTime == 0))) {
+                    cacheVal.setProcess(startTime, timeNow);
+                    cacheVal.set(retval, timeNow);
+                }
+                cacheVal.loading = false;
+                cacheVal.notifyAll();
+            }
         }
 
         return retval;
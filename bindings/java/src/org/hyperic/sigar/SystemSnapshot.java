@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar;
+
+/**
+ * System wide metrics gathered together in a single native call.
+ * All values share the same timestamp, which makes snapshots
+ * suitable for computing rates between two collections.
+ * Any metric which is not implemented on the current platform
+ * is left as null.
+ */
+public class SystemSnapshot implements java.io.Serializable {
+
+    private static final long serialVersionUID = 5029360348217876667L;
+
+    private long timestamp;
+    private Mem mem;
+    private Swap swap;
+    private Cpu cpu;
+    private Cpu[] cpuList;
+    private double[] loadAverage;
+    private Uptime uptime;
+    private ProcStat procStat;
+
+    SystemSnapshot() {}
+
+    native void gather(Sigar sigar) throws SigarException;
+
+    static SystemSnapshot fetch(Sigar sigar) throws SigarException {
+        SystemSnapshot snapshot = new SystemSnapshot();
+        snapshot.gather(sigar);
+        return snapshot;
+    }
+
+    /**
+     * Time the snapshot was taken, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    public Mem getMem() {
+        return this.mem;
+    }
+
+    public Swap getSwap() {
+        return this.swap;
+    }
+
+    public Cpu getCpu() {
+        return this.cpu;
+    }
+
+    public Cpu[] getCpuList() {
+        return this.cpuList;
+    }
+
+    /**
+     * @return The system load averages for the past 1, 5, and 15 minutes.
+     */
+    public double[] getLoadAverage() {
+        return this.loadAverage;
+    }
+
+    public Uptime getUptime() {
+        return this.uptime;
+    }
+
+    public ProcStat getProcStat() {
+        return this.procStat;
+    }
+
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("timestamp=").append(this.timestamp);
+        sb.append(", mem={").append(this.mem).append("}");
+        sb.append(", swap={").append(this.swap).append("}");
+        sb.append(", cpu={").append(this.cpu).append("}");
+        if (this.loadAverage != null) {
+            sb.append(", loadAverage=").
+                append(this.loadAverage[0]).append(" ").
+                append(this.loadAverage[1]).append(" ").
+                append(this.loadAverage[2]);
+        }
+        sb.append(", uptime={").append(this.uptime).append("}");
+        sb.append(", procStat={").append(this.procStat).append("}");
+        return sb.toString();
+    }
+}
@@ -23,6 +23,7 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 
 import org.hyperic.sigar.SigarException;
+import org.hyperic.sigar.SigarNotImplementedException;
 import org.hyperic.sigar.NetConnection;
 import org.hyperic.sigar.NetFlags;
 import org.hyperic.sigar.Tcp;
@@ -185,6 +186,24 @@ public class Netstat extends SigarCommandBase {
         }
     }
 
+    private long getOwner(long[] owners, int i, NetConnection conn) {
+        if (owners != null) {
+            return owners[i];
+        }
+
+        //XXX only works w/ listen ports
+        if (conn.getState() != NetFlags.TCP_LISTEN) {
+            return 0;
+        }
+
+        try {
+            return this.sigar.getProcPort(conn.getType(),
+                                          conn.getLocalPort());
+        } catch (SigarException e) {
+            return 0;
+        }
+    }
+
     //XXX currently weak sauce.  should end up like netstat command.
     public void output(String[] args) throws SigarException {
         //default
@@ -199,6 +218,15 @@ public class Netstat extends SigarCommandBase {
         }
 
         NetConnection[] connections = this.sigar.getNetConnectionList(flags);
+        long[] owners = null;
+
+        if (wantPid) {
+            try {
+                owners = this.sigar.getNetConnectionOwners(connections);
+            } catch (SigarNotImplementedException e) {
+            }
+        }
+
         printf(HEADER);
 
         for (int i=0; i<connections.length; i++) {
@@ -226,20 +254,15 @@ public class Netstat extends SigarCommandBase {
             items.add(state);
 
             String process = null;
-            if (wantPid &&
-                //XXX only works w/ listen ports
-                (conn.getState() == NetFlags.TCP_LISTEN))
-            {
-                try {
-                    long pid =
-                        this.sigar.getProcPort(conn.getType(),
-                                               conn.getLocalPort());
-                    if (pid != 0) { //XXX another bug
+            if (wantPid) {
+                long pid = getOwner(owners, i, conn);
+                if (pid != 0) {
+                    try {
                         String name =
                             this.sigar.getProcState(pid).getName();
                         process = pid + "/" + name;
+                    } catch (SigarException e) {
                     }
-                } catch (SigarException e) {
                 }
             }
 
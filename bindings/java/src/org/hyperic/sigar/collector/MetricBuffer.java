@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.collector;
+
+/**
+ * Fixed size history of a metric, stored in primitive arrays.
+ * Once full, each new sample replaces the oldest.
+ * Index 0 is the most recent sample.
+ */
+public class MetricBuffer {
+
+    private String name;
+    private long interval;
+    private long[] times;
+    private double[] values;
+    private int head = -1;
+    private int count = 0;
+
+    MetricBuffer(String name, long interval, int capacity) {
+        this.name = name;
+        this.interval = interval;
+        this.times = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    synchronized void add(long time, double value) {
+        this.head = (this.head + 1) % this.times.length;
+        this.times[this.head] = time;
+        this.values[this.head] = value;
+        if (this.count < this.times.length) {
+            this.count++;
+        }
+    }
+
+    private int indexOf(int n) {
+        if ((n < 0) || (n >= this.count)) {
+            throw new IndexOutOfBoundsException(n + " >= " + this.count);
+        }
+        int ix = this.head - n;
+        if (ix < 0) {
+            ix += this.times.length;
+        }
+        return ix;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return Milliseconds between samples.
+     */
+    public long getInterval() {
+        return this.interval;
+    }
+
+    public int getCapacity() {
+        return this.times.length;
+    }
+
+    /**
+     * @return Number of samples stored.
+     */
+    public synchronized int size() {
+        return this.count;
+    }
+
+    /**
+     * @param n 0 for the most recent sample, 1 for the one before...
+     * @return Time of the sample in milliseconds, a multiple of
+     * the interval.
+     */
+    public synchronized long getTime(int n) {
+        return this.times[indexOf(n)];
+    }
+
+    /**
+     * @param n 0 for the most recent sample, 1 for the one before...
+     */
+    public synchronized double getValue(int n) {
+        return this.values[indexOf(n)];
+    }
+
+    /**
+     * @return The most recent value, NaN if there are none yet.
+     */
+    public synchronized double getLast() {
+        if (this.count == 0) {
+            return Double.NaN;
+        }
+        return this.values[this.head];
+    }
+
+    /**
+     * Copy the stored samples, oldest first, without allocating.
+     * @param times Receives the times, may be null.
+     * @param values Receives the values, may be null.
+     * @return Number of samples copied, at most the length of
+     * the given arrays.
+     */
+    public synchronized int copy(long[] times, double[] values) {
+        int len = this.count;
+        if ((times != null) && (times.length < len)) {
+            len = times.length;
+        }
+        if ((values != null) && (values.length < len)) {
+            len = values.length;
+        }
+
+        for (int i=0; i<len; i++) {
+            int ix = indexOf(len - 1 - i);
+            if (times != null) {
+                times[i] = this.times[ix];
+            }
+            if (values != null) {
+                values[i] = this.values[ix];
+            }
+        }
+
+        return len;
+    }
+
+    public String toString() {
+        return this.name + "=" + getLast();
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.collector;
+
+import org.hyperic.sigar.Sigar;
+import org.hyperic.sigar.SigarException;
+import org.hyperic.sigar.SigarLog;
+import org.hyperic.sigar.SigarProxy;
+
+/**
+ * Samples registered metrics from a single background thread.
+ * Each metric has its own interval and is sampled on multiples of it
+ * in wall clock time, e.g. every 10 seconds at :00, :10, :20 ...,
+ * regardless of when it was registered or how long sampling takes.
+ * If the collector falls behind, the ticks it missed are dropped
+ * rather than sampled in a burst.  If the wall clock is set back,
+ * metrics are re-aligned to it rather than waiting for the old tick.
+ * Values are stored in a {@link MetricBuffer} per metric and passed
+ * to any {@link MetricListener}s.
+ */
+public class MetricCollector implements Runnable {
+
+    public static final int DEFAULT_CAPACITY = 60;
+
+    private Thread thread = null;
+    private volatile boolean shouldDie = false;
+    private SigarProxy sigar;
+    private boolean ownSigar;
+
+    //guards entries and listeners, which are replaced rather than
+    //modified so the collector thread can use them without copying
+    private Object lock = new Object();
+    private Entry[] entries = new Entry[0];
+    private MetricListener[] listeners = new MetricListener[0];
+
+    private static class Entry {
+        private Metric metric;
+        private MetricBuffer buffer;
+        private long next; //only touched by the collector thread
+    }
+
+    /**
+     * Sample using a Sigar opened by {@link #doStart()}
+     * and closed by {@link #doStop()}.
+     */
+    public MetricCollector() {
+        this(null);
+    }
+
+    /**
+     * @param sigar Passed to each Metric, must be safe to use
+     * from the collector thread.
+     */
+    public MetricCollector(SigarProxy sigar) {
+        this.sigar = sigar;
+        this.ownSigar = (sigar == null);
+    }
+
+    /**
+     * @return The first multiple of interval after time.
+     */
+    static long align(long time, long interval) {
+        return (time / interval + 1) * interval;
+    }
+
+    private int indexOf(String name) {
+        for (int i=0; i<this.entries.length; i++) {
+            if (this.entries[i].buffer.getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public MetricBuffer register(String name, Metric metric, long interval) {
+        return register(name, metric, interval, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Start sampling a metric, at the next multiple of interval.
+     * @param name Unique name of the metric.
+     * @param metric The metric to sample.
+     * @param interval Milliseconds between samples.
+     * @param capacity Number of samples to keep.
+     * @return The buffer samples are stored in.
+     */
+    public MetricBuffer register(String name, Metric metric,
+                                 long interval, int capacity) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval=" + interval);
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity=" + capacity);
+        }
+
+        Entry entry = new Entry();
+        entry.metric = metric;
+        entry.buffer = new MetricBuffer(name, interval, capacity);
+        entry.next = align(System.currentTimeMillis(), interval);
+
+        synchronized (this.lock) {
+            if (indexOf(name) != -1) {
+                throw new IllegalArgumentException(name +
+                                                   " already registered");
+            }
+
+            Entry[] entries = new Entry[this.entries.length + 1];
+            System.arraycopy(this.entries, 0, entries, 0,
+                             this.entries.length);
+            entries[this.entries.length] = entry;
+            this.entries = entries;
+            this.lock.notifyAll();
+        }
+
+        return entry.buffer;
+    }
+
+    /**
+     * Stop sampling a metric.
+     * @return false if no metric was registered with the name.
+     */
+    public boolean unregister(String name) {
+        synchronized (this.lock) {
+            int ix = indexOf(name);
+            if (ix == -1) {
+                return false;
+            }
+
+            Entry[] entries = new Entry[this.entries.length - 1];
+            System.arraycopy(this.entries, 0, entries, 0, ix);
+            System.arraycopy(this.entries, ix + 1, entries, ix,
+                             entries.length - ix);
+            this.entries = entries;
+            return true;
+        }
+    }
+
+    /**
+     * @return The buffer of a registered metric, null if there is none.
+     */
+    public MetricBuffer getBuffer(String name) {
+        synchronized (this.lock) {
+            int ix = indexOf(name);
+            return (ix == -1) ? null : this.entries[ix].buffer;
+        }
+    }
+
+    /**
+     * @return Names of the registered metrics.
+     */
+    public String[] getNames() {
+        synchronized (this.lock) {
+            String[] names = new String[this.entries.length];
+            for (int i=0; i<names.length; i++) {
+                names[i] = this.entries[i].buffer.getName();
+            }
+            return names;
+        }
+    }
+
+    public void addListener(MetricListener listener) {
+        synchronized (this.lock) {
+            MetricListener[] listeners =
+                new MetricListener[this.listeners.length + 1];
+            System.arraycopy(this.listeners, 0, listeners, 0,
+                             this.listeners.length);
+            listeners[this.listeners.length] = listener;
+            this.listeners = listeners;
+        }
+    }
+
+    public void removeListener(MetricListener listener) {
+        synchronized (this.lock) {
+            for (int i=0; i<this.listeners.length; i++) {
+                if (this.listeners[i] != listener) {
+                    continue;
+                }
+                MetricListener[] listeners =
+                    new MetricListener[this.listeners.length - 1];
+                System.arraycopy(this.listeners, 0, listeners, 0, i);
+                System.arraycopy(this.listeners, i + 1, listeners, i,
+                                 listeners.length - i);
+                this.listeners = listeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Start the collector thread.
+     */
+    public synchronized void doStart() {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.shouldDie = false;
+        if (this.ownSigar) {
+            this.sigar = new Sigar();
+        }
+
+        this.thread = new Thread(this, "MetricCollector");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public synchronized void doStop() {
+        if (this.thread == null) {
+            return;
+        }
+        die();
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+        }
+        this.thread = null;
+        if (this.ownSigar) {
+            ((Sigar)this.sigar).close();
+            this.sigar = null;
+        }
+    }
+
+    public void die() {
+        synchronized (this.lock) {
+            this.shouldDie = true;
+            this.lock.notifyAll();
+        }
+    }
+
+    public void run() {
+        while (!this.shouldDie) {
+            Entry[] entries;
+            MetricListener[] listeners;
+            long now;
+
+            synchronized (this.lock) {
+                entries = this.entries;
+                listeners = this.listeners;
+
+                now = System.currentTimeMillis();
+
+                long next = Long.MAX_VALUE;
+                for (int i=0; i<entries.length; i++) {
+                    Entry entry = entries[i];
+                    long interval = entry.buffer.getInterval();
+                    if (entry.next - now > interval) {
+                        //wall clock was set back, do not wait it out
+                        entry.next = align(now, interval);
+                    }
+                    if (entry.next < next) {
+                        next = entry.next;
+                    }
+                }
+
+                if (next > now) {
+                    //woken early by register() or die()
+                    try {
+                        this.lock.wait((next == Long.MAX_VALUE) ?
+                                       0 : next - now);
+                    } catch (InterruptedException e) {
+                    }
+                    continue;
+                }
+            }
+
+            collect(entries, listeners, now);
+        }
+    }
+
+    private void collect(Entry[] entries, MetricListener[] listeners,
+                         long now) {
+        for (int i=0; i<entries.length; i++) {
+            Entry entry = entries[i];
+            long tick = entry.next;
+
+            if (tick > now) {
+                continue;
+            }
+
+            long interval = entry.buffer.getInterval();
+            entry.next = tick + interval;
+            if (entry.next <= now) {
+                entry.next = align(now, interval);
+            }
+
+            double value;
+            try {
+                value = entry.metric.sample(this.sigar);
+            } catch (SigarException e) {
+                SigarLog.getLogger(MetricCollector.class.getName()).
+                    debug(entry.buffer.getName() + " sample failed: " +
+                          e.getMessage());
+                continue;
+            } catch (RuntimeException e) {
+                SigarLog.getLogger(MetricCollector.class.getName()).
+                    error(entry.buffer.getName() + " sample failed", e);
+                continue;
+            }
+
+            entry.buffer.add(tick, value);
+
+            for (int j=0; j<listeners.length; j++) {
+                try {
+                    listeners[j].sampled(entry.buffer, tick, value);
+                } catch (RuntimeException e) {
+                    SigarLog.getLogger(MetricCollector.class.getName()).
+                        error("Unexpected exception: " +
+                              e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
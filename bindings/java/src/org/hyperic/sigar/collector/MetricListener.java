@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.collector;
+
+/**
+ * Receives samples from a {@link MetricCollector}.
+ * Listeners are called on the collector thread and should
+ * return quickly, a slow listener delays all metrics.
+ */
+public interface MetricListener {
+
+    /**
+     * A value was stored.
+     * @param buffer The buffer the value was stored in.
+     * @param time The tick, in milliseconds.
+     * @param value The sampled value.
+     */
+    public void sampled(MetricBuffer buffer, long time, double value);
+}
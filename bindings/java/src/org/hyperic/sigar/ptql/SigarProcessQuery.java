@@ -43,6 +43,28 @@ public class SigarProcessQuery implements ProcessQuery {
     public native long[] find(Sigar sigar)
         throws SigarException;
 
+    /**
+     * Find processes as {@link #find(Sigar)} does, also returning
+     * the value of the query's sort key for each pid.
+     * Queries may end with ';' separated options:
+     * <code>sort=Entry.Attr</code> (any numeric attribute, e.g.
+     * Mem.Resident or Cpu.Percent), <code>asc</code>, <code>desc</code>
+     * and <code>limit=N</code>.  Sorting and limiting happen in the
+     * native scan, which keeps only the best N matches.
+     * @exception SigarException on failure.
+     */
+    public native SortedProcessList findSorted(Sigar sigar)
+        throws SigarException;
+
+    /**
+     * Describe the order the query branches are evaluated in.
+     * Branches are reordered by estimated per-process cost so the
+     * cheap ones (e.g. State) can rule a process out before any
+     * expensive lookups (e.g. Args, Env, Modules) are made.
+     * @return One "N. branch (cost=C)" line per branch.
+     */
+    public native String explain();
+
     static boolean re(String haystack, String needle) {
         if (haystack == null) {
             return false;
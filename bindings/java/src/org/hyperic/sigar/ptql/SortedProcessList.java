@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.ptql;
+
+/**
+ * Result of a PTQL query with sort and limit options, e.g.
+ * <code>State.Name.eq=java;sort=Mem.Resident;desc;limit=20</code>.
+ * Pids are in sorted order, each with the value of the sort key.
+ * @see SigarProcessQuery#findSorted
+ */
+public class SortedProcessList {
+    private long[] pids;
+    private double[] values;
+
+    SortedProcessList(long[] pids, double[] values) {
+        this.pids = pids;
+        this.values = values;
+    }
+
+    public int size() {
+        return this.pids.length;
+    }
+
+    public long[] getPids() {
+        return this.pids;
+    }
+
+    /**
+     * @return Value of the sort key for each pid,
+     * or all 0 if the query has no sort option.
+     */
+    public double[] getValues() {
+        return this.values;
+    }
+
+    public String toString() {
+        StringBuffer buf = new StringBuffer();
+        for (int i=0; i<this.pids.length; i++) {
+            if (i != 0) {
+                buf.append(", ");
+            }
+            buf.append(this.pids[i]).append('=').append(this.values[i]);
+        }
+        return buf.toString();
+    }
+}
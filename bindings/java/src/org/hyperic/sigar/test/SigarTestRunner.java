@@ -48,6 +48,8 @@ public class SigarTestRunner extends SigarCommandBase {
         TestPTQL.class,
         TestCpu.class,
         TestCpuInfo.class,
+        TestCpuSampler.class,
+        TestMetricCollector.class,
         TestFileInfo.class,
         TestFileSystem.class,
         TestFQDN.class,
@@ -65,6 +67,7 @@ public class SigarTestRunner extends SigarCommandBase {
         TestNfsServerV3.class,
         TestProcArgs.class,
         TestProcEnv.class,
+        TestProcEvent.class,
         TestProcExe.class,
         TestProcModules.class,
         TestProcFd.class,
@@ -72,10 +75,15 @@ public class SigarTestRunner extends SigarCommandBase {
         TestProcMem.class,
         TestProcState.class,
         TestProcStat.class,
+        TestProcTable.class,
+        TestProcTree.class,
+        TestProcessAggregator.class,
         TestProcTime.class,
+        TestProxyCache.class,
         TestResourceLimit.class,
         TestSignal.class,
         TestSwap.class,
+        TestSystemSnapshot.class,
         TestThreadCpu.class,
         TestUptime.class,
         TestVMware.class,
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.test;
+
+import org.hyperic.sigar.CpuPerc;
+import org.hyperic.sigar.CpuSampler;
+
+public class TestCpuSampler extends SigarTestCase {
+
+    public TestCpuSampler(String name) {
+        super(name);
+    }
+
+    private void checkPerc(CpuPerc perc) {
+        traceln(perc.toString());
+        assertTrue(perc.getCombined() >= 0);
+        assertTrue(perc.getCombined() <= 1.01);
+    }
+
+    public void testCreate() throws Exception {
+        CpuSampler sampler =
+            new CpuSampler(100, new long[] { 100, 500 });
+
+        try {
+            sampler.getCpuPerc(100);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+
+        sampler.doStart();
+        try {
+            //available without waiting for a second sample
+            checkPerc(sampler.getCpuPerc(100));
+            long first = sampler.getTimestamp();
+
+            Thread.sleep(700);
+
+            assertTrue(sampler.getTimestamp() > first);
+            checkPerc(sampler.getCpuPerc(100));
+            checkPerc(sampler.getCpuPerc(500));
+
+            CpuPerc[] percs = sampler.getCpuPercList(500);
+            assertTrue(percs.length > 0);
+            for (int i=0; i<percs.length; i++) {
+                checkPerc(percs[i]);
+            }
+
+            try {
+                sampler.getCpuPerc(1000);
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+            }
+        } finally {
+            sampler.doStop();
+        }
+    }
+}
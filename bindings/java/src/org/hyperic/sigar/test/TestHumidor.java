@@ -24,6 +24,7 @@ import org.hyperic.sigar.CpuPerc;
 import org.hyperic.sigar.Humidor;
 import org.hyperic.sigar.Sigar;
 import org.hyperic.sigar.SigarException;
+import org.hyperic.sigar.SigarPool;
 import org.hyperic.sigar.SigarProxy;
 
 public class TestHumidor extends SigarTestCase {
@@ -87,6 +88,38 @@ public class TestHumidor extends SigarTestCase {
         sigar.close();
     }
 
+    public void testPool() throws Exception {
+        SigarPool pool = new SigarPool(2);
+        runTests(new Humidor(pool).getSigar());
+
+        Sigar s1 = pool.borrow();
+        Sigar s2 = pool.borrow();
+        assertTrue(s1 != s2);
+        pool.release(s1);
+        assertTrue(pool.borrow() == s1);
+        pool.release(s1);
+        pool.release(s2);
+
+        //the first instance created runs the stateful calls
+        Sigar primary = pool.borrowPrimary();
+        Sigar other = pool.borrow();
+        assertTrue(primary != other);
+        pool.release(primary);
+        pool.release(other);
+        assertTrue(pool.borrowPrimary() == primary);
+        pool.release(primary);
+
+        CpuPerc perc = pool.getSigar().getCpuPerc();
+        assertTrue(perc.getCombined() >= 0);
+
+        pool.close();
+        try {
+            pool.borrow();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+    }
+
     //uncomment to see if this test will indeed cause a segfault
     //without the protection of the Humidor
     //public void testUnwrapped() throws Exception {
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.test;
+
+import org.hyperic.sigar.SigarException;
+import org.hyperic.sigar.SigarProxy;
+import org.hyperic.sigar.collector.Metric;
+import org.hyperic.sigar.collector.MetricBuffer;
+import org.hyperic.sigar.collector.MetricCollector;
+import org.hyperic.sigar.collector.MetricListener;
+
+public class TestMetricCollector extends SigarTestCase {
+
+    private static final long INTERVAL = 50;
+
+    public TestMetricCollector(String name) {
+        super(name);
+    }
+
+    private static class Counter implements Metric {
+        private int n = 0;
+
+        public double sample(SigarProxy sigar) throws SigarException {
+            return ++this.n;
+        }
+    }
+
+    private static class CountingListener implements MetricListener {
+        private int samples = 0;
+
+        public synchronized void sampled(MetricBuffer buffer,
+                                         long time, double value) {
+            this.samples++;
+        }
+    }
+
+    //poll rather than sleep a fixed time, a loaded machine may lag
+    private void waitForSize(MetricBuffer buffer, int size)
+        throws InterruptedException {
+
+        long timeout = System.currentTimeMillis() + INTERVAL * 200;
+        while ((buffer.size() < size) &&
+               (System.currentTimeMillis() < timeout))
+        {
+            Thread.sleep(INTERVAL / 5);
+        }
+    }
+
+    public void testCollect() throws Exception {
+        MetricCollector collector = new MetricCollector(getSigar());
+        CountingListener listener = new CountingListener();
+
+        MetricBuffer counter =
+            collector.register("counter", new Counter(), INTERVAL, 4);
+        MetricBuffer free =
+            collector.register("free", new Metric() {
+                public double sample(SigarProxy sigar)
+                    throws SigarException {
+                    return sigar.getMem().getActualFree();
+                }
+            }, INTERVAL);
+
+        try {
+            collector.register("counter", new Counter(), INTERVAL);
+            fail("registered the same name twice");
+        } catch (IllegalArgumentException e) {
+        }
+
+        assertEquals(0, counter.size());
+        assertTrue(Double.isNaN(counter.getLast()));
+
+        collector.addListener(listener);
+        collector.doStart();
+        try {
+            waitForSize(counter, counter.getCapacity());
+        } finally {
+            collector.doStop();
+        }
+
+        assertEquals(4, counter.getCapacity());
+        assertEquals(4, counter.size());
+        assertTrue(free.size() > 0);
+        assertTrue(free.getLast() > 0);
+        assertTrue(listener.samples >= counter.size() + free.size());
+
+        long[] times = new long[counter.size()];
+        double[] values = new double[counter.size()];
+        assertEquals(times.length, counter.copy(times, values));
+
+        for (int i=0; i<times.length; i++) {
+            traceln(times[i] + "=" + values[i]);
+            assertEquals(0, times[i] % INTERVAL);
+            if (i > 0) {
+                assertTrue(times[i] > times[i-1]);
+                assertTrue(values[i] > values[i-1]);
+            }
+        }
+        assertEquals(times[times.length-1], counter.getTime(0));
+        assertEquals(values[values.length-1], counter.getValue(0), 0);
+
+        assertTrue(collector.unregister("counter"));
+        assertFalse(collector.unregister("counter"));
+        assertNull(collector.getBuffer("counter"));
+        assertEquals(1, collector.getNames().length);
+    }
+
+    public void testListenerException() throws Exception {
+        MetricCollector collector = new MetricCollector(getSigar());
+        CountingListener listener = new CountingListener();
+
+        MetricBuffer counter =
+            collector.register("counter", new Counter(), INTERVAL);
+
+        collector.addListener(new MetricListener() {
+            public void sampled(MetricBuffer buffer,
+                                long time, double value) {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+        collector.addListener(listener);
+        collector.doStart();
+        try {
+            waitForSize(counter, 2);
+        } finally {
+            collector.doStop();
+        }
+
+        //the collector thread survives and later listeners still run
+        assertTrue(counter.size() > 1);
+        assertEquals(counter.size(), listener.samples);
+    }
+}
@@ -20,6 +20,8 @@ package org.hyperic.sigar.test;
 
 import java.net.InetAddress;
 import java.net.Inet6Address;
+import java.util.Iterator;
+import java.util.Map;
 
 import org.hyperic.sigar.Sigar;
 import org.hyperic.sigar.SigarException;
@@ -112,4 +114,31 @@ public class TestNetIf extends SigarTestCase {
 
         getGarbage(sigar);
     }
+
+    public void testStatList() throws Exception {
+        Sigar sigar = getSigar();
+        Map stats;
+
+        try {
+            stats = sigar.getNetInterfaceStatList();
+        } catch (SigarNotImplementedException e) {
+            return;
+        }
+
+        for (Iterator it=stats.entrySet().iterator(); it.hasNext();) {
+            Map.Entry entry = (Map.Entry)it.next();
+            String name = (String)entry.getKey();
+            NetInterfaceStat ifstat = (NetInterfaceStat)entry.getValue();
+
+            traceln("name=" + name);
+            assertGtEqZeroTrace("RxPackets", ifstat.getRxPackets());
+            assertGtEqZeroTrace("TxPackets", ifstat.getTxPackets());
+            traceln("Speed=" + ifstat.getSpeed());
+
+            //single interface lookup must agree with the bulk pass
+            NetInterfaceStat single = sigar.getNetInterfaceStat(name);
+            assertTrue(single.getRxPackets() >= ifstat.getRxPackets());
+            assertEquals(ifstat.getSpeed(), single.getSpeed());
+        }
+    }
 }
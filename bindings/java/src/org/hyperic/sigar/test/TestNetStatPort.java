@@ -19,6 +19,7 @@
 package org.hyperic.sigar.test;
 
 import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.util.ArrayList;
 
 import org.hyperic.sigar.NetConnection;
@@ -78,4 +79,49 @@ public class TestNetStatPort extends SigarTestCase {
             netstat(sigar, addr, 22);
         }
     }
+
+    public void testProcPorts() throws Exception {
+        Sigar sigar = getSigar();
+        ServerSocket server = new ServerSocket(0);
+        long port = server.getLocalPort();
+
+        try {
+            long[] pids;
+            try {
+                pids = sigar.getProcPorts(NetFlags.CONN_TCP,
+                                          new long[] { port, 0 });
+            } catch (SigarNotImplementedException e) {
+                return;
+            }
+
+            assertEquals(2, pids.length);
+            traceln("port " + port + " pid=" + pids[0]);
+            //the socket belongs to this jvm
+            assertEquals(sigar.getPid(), pids[0]);
+            assertEquals(sigar.getProcPort(NetFlags.CONN_TCP, port), pids[0]);
+            assertEquals(0, pids[1]);
+
+            NetConnection[] conns =
+                sigar.getNetConnectionList(NetFlags.CONN_SERVER |
+                                           NetFlags.CONN_TCP);
+            long[] owners;
+            try {
+                owners = sigar.getNetConnectionOwners(conns);
+            } catch (SigarNotImplementedException e) {
+                return;
+            }
+
+            assertEquals(conns.length, owners.length);
+            boolean found = false;
+            for (int i=0; i<conns.length; i++) {
+                if (conns[i].getLocalPort() == port) {
+                    assertEquals(pids[0], owners[i]);
+                    found = true;
+                }
+            }
+            assertTrue(found);
+        } finally {
+            server.close();
+        }
+    }
 }
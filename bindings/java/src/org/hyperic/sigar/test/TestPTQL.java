@@ -25,6 +25,8 @@ import org.hyperic.sigar.SigarNotImplementedException;
 import org.hyperic.sigar.ptql.ProcessQuery;
 import org.hyperic.sigar.ptql.ProcessQueryFactory;
 import org.hyperic.sigar.ptql.MalformedQueryException;
+import org.hyperic.sigar.ptql.SigarProcessQuery;
+import org.hyperic.sigar.ptql.SortedProcessList;
 
 public class TestPTQL extends SigarTestCase {
 
@@ -110,6 +112,10 @@ public class TestPTQL extends SigarTestCase {
         "Port.tcp.eq=http",
         "Cpu.Sys.ew=lots",
         "Service.Invalid.ew=.exe",
+        "State.Name.ne=foo;sort=State.Name",
+        "State.Name.ne=foo;sort=Mem.Resident;limit=x",
+        "State.Name.ne=foo;limit=0",
+        "State.Name.ne=foo;desc;bogus",
         "",
         null,
     };
@@ -186,6 +192,214 @@ public class TestPTQL extends SigarTestCase {
         this.qf.clear();
     }
 
+    public void testRegexMatch() throws Exception {
+        Sigar sigar = getSigar();
+        long pid = sigar.getPid();
+        String name = sigar.getProcState(pid).getName();
+        String prefix = THIS_PROCESS + ",State.Name.re=";
+
+        String[] match = {
+            "^" + name + "$",
+            "\\w",
+            "^[^0-9]",
+            "(?i)^" + name.toUpperCase() + "$", //java.util.regex only
+            "^\\<?" + name, //literal '<', not a glibc word anchor
+        };
+        String[] nomatch = {
+            "^\\d+$",
+            "^\\s",
+            name + "x$",
+            "\\<" + name,
+            name + "\\'", //literal '\'', not a glibc end of buffer
+        };
+
+        for (int i=0; i<match.length; i++) {
+            ProcessQuery query = this.qf.getQuery(prefix + match[i]);
+            assertTrue(match[i], query.match(sigar, pid));
+        }
+        for (int i=0; i<nomatch.length; i++) {
+            ProcessQuery query = this.qf.getQuery(prefix + nomatch[i]);
+            assertFalse(nomatch[i], query.match(sigar, pid));
+        }
+        this.qf.clear();
+    }
+
+    public void testExplain() throws Exception {
+        SigarProcessQuery query = (SigarProcessQuery)
+            this.qf.getQuery("Args.*.ct=foo,Env.FOO.eq=bar,State.Name.eq=java");
+        String plan = query.explain();
+        traceln(plan);
+        //cheapest branch first, as written otherwise
+        assertTrue(plan, plan.startsWith("1. State.Name.eq=java "));
+        assertTrue(plan, plan.indexOf("2. Args.*.ct=foo ") != -1);
+        assertTrue(plan, plan.indexOf("3. Env.FOO.eq=bar ") != -1);
+
+        //$N references pin the order
+        query = (SigarProcessQuery)
+            this.qf.getQuery("Args.0.ct=java,State.Name.Pne=$1");
+        plan = query.explain();
+        traceln(plan);
+        assertTrue(plan, plan.startsWith("1. Args.0.ct=java "));
+        assertTrue(plan, plan.indexOf("2. State.Name.Pne=$1 ") != -1);
+        this.qf.clear();
+    }
+
+    public void testMemoizedFind() throws Exception {
+        Sigar sigar = getSigar();
+        long pid = sigar.getPid();
+        String exe;
+        try {
+            exe = sigar.getProcExe(pid).getName();
+        } catch (SigarNotImplementedException e) {
+            return;
+        }
+        String qs = "Exe.Name.eq=" + exe + ",Mem.Size.gt=0";
+        SigarProcessQuery query =
+            (SigarProcessQuery)this.qf.getQuery(qs);
+        traceln(query.explain());
+
+        //later scans reuse the Exe result, must find the same
+        for (int i=0; i<3; i++) {
+            long[] pids = query.find(sigar);
+            boolean found = false;
+            for (int j=0; j<pids.length; j++) {
+                if (pids[j] == pid) {
+                    found = true;
+                }
+            }
+            assertTrue(qs, found);
+            assertTrue(qs, query.match(sigar, pid));
+        }
+        this.qf.clear();
+    }
+
+    private long waitForName(Sigar sigar, String qs, long pid, String name)
+        throws Exception {
+
+        for (int i=0; i<50; i++) {
+            try {
+                if (pid == 0) {
+                    long[] pids = this.qf.getQuery(qs).find(sigar);
+                    if (pids.length == 1) {
+                        return pids[0];
+                    }
+                }
+                else if (sigar.getProcState(pid).getName().equals(name)) {
+                    return pid;
+                }
+            } catch (SigarException e) {
+            }
+            Thread.sleep(100);
+        }
+        fail(name + " did not start");
+        return 0;
+    }
+
+    //the memo must be dropped when a process exec()s
+    public void testMemoInvalidated() throws Exception {
+        if (!new java.io.File("/bin/sh").exists()) {
+            return;
+        }
+        Sigar sigar = getSigar();
+        long pid = sigar.getPid();
+        String qs = "Exe.Name.ew=/sleep,State.Ppid.eq=" + pid;
+        SigarProcessQuery query =
+            (SigarProcessQuery)this.qf.getQuery(qs);
+        traceln(query.explain());
+        if (query.explain().indexOf("memoized") == -1) {
+            return;
+        }
+
+        Process proc = Runtime.getRuntime().exec(new String[] {
+            "/bin/sh", "-c", "read x; exec sleep 30"
+        });
+        try {
+            long child =
+                waitForName(sigar,
+                            "State.Name.eq=sh,State.Ppid.eq=" + pid,
+                            0, "sh");
+
+            try {
+                //the shell does not match, remembered as such
+                assertEquals(qs, 0, query.find(sigar).length);
+            } catch (SigarNotImplementedException e) {
+                return;
+            }
+
+            proc.getOutputStream().write('\n');
+            proc.getOutputStream().flush();
+            waitForName(sigar, null, child, "sleep");
+
+            long[] pids = query.find(sigar);
+            assertEquals(qs, 1, pids.length);
+            assertEquals(qs, child, pids[0]);
+            assertTrue(qs, query.match(sigar, child));
+        } finally {
+            proc.destroy();
+            this.qf.clear();
+        }
+    }
+
+    //a query shared by sigar instances keeps a memo per instance
+    public void testMemoPerSigar() throws Exception {
+        Sigar sigar = getSigar();
+        Sigar other = new Sigar();
+        String qs = JAVA_PROCESS + ",Exe.Name.ew=java," + THIS_PROCESS;
+        try {
+            SigarProcessQuery query =
+                (SigarProcessQuery)this.qf.getQuery(qs);
+            long[] pids = query.find(sigar);
+            long[] others = query.find(other);
+            assertEquals(qs, pids.length, others.length);
+            for (int i=0; i<pids.length; i++) {
+                assertEquals(qs, pids[i], others[i]);
+            }
+        } catch (SigarNotImplementedException e) {
+        } finally {
+            other.close();
+            this.qf.clear();
+        }
+    }
+
+    public void testSortLimit() throws Exception {
+        Sigar sigar = getSigar();
+        String qs = "State.Name.ne=;sort=Mem.Resident;desc;limit=5";
+        SigarProcessQuery query = (SigarProcessQuery)this.qf.getQuery(qs);
+        traceln(query.explain());
+
+        SortedProcessList top = query.findSorted(sigar);
+        traceln(top.toString());
+        long[] pids = top.getPids();
+        double[] values = top.getValues();
+
+        assertTrue(top.size() > 0);
+        assertTrue(top.size() <= 5);
+        for (int i=1; i<values.length; i++) {
+            assertTrue(values[i-1] >= values[i]);
+        }
+        assertEquals(pids.length, query.find(sigar).length);
+
+        //nothing left out should have been bigger than the last kept
+        long[] all = sigar.getProcList();
+        int bigger = 0;
+        for (int i=0; i<all.length; i++) {
+            try {
+                if (sigar.getProcMem(all[i]).getResident() >
+                    values[values.length-1])
+                {
+                    bigger++;
+                }
+            } catch (SigarException e) {
+            }
+        }
+        assertTrue(bigger < pids.length + 2); //allow for processes growing
+
+        //limit without sort keeps the first N matches
+        query = (SigarProcessQuery)this.qf.getQuery("State.Name.ne=;limit=2");
+        assertTrue(query.find(sigar).length <= 2);
+        this.qf.clear();
+    }
+
     public void testMalformedQueries() throws Exception {
         for (int i=0; i<MALFORMED_QUERIES.length; i++) {
             String qs = MALFORMED_QUERIES[i];
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+
+package org.hyperic.sigar.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hyperic.sigar.ProcEvent;
+import org.hyperic.sigar.ProcEventListener;
+import org.hyperic.sigar.ProcEventMonitor;
+import org.hyperic.sigar.Sigar;
+import org.hyperic.sigar.SigarException;
+import org.hyperic.sigar.SigarLoader;
+
+public class TestProcEvent extends SigarTestCase {
+
+    public TestProcEvent(String name) {
+        super(name);
+    }
+
+    private static ProcEvent find(List events, int type, long pid) {
+        for (int i=0; i<events.size(); i++) {
+            ProcEvent event = (ProcEvent)events.get(i);
+            if ((event.getType() == type) && (event.getPid() == pid)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    public void testGetProcEvents() throws Exception {
+        if (SigarLoader.IS_WIN32) {
+            return;
+        }
+
+        Sigar sigar = new Sigar();
+
+        try {
+            try {
+                sigar.getProcEvents(0); //subscribe
+            } catch (SigarException e) {
+                traceln("proc events unavailable: " + e.getMessage());
+                return;
+            }
+
+            Process proc =
+                Runtime.getRuntime().exec(new String[] {
+                    "sh", "-c", "exit 3"
+                });
+            assertEquals(3, proc.waitFor());
+
+            List events = new ArrayList();
+            long child = -1;
+
+            for (int i=0; i<30; i++) {
+                ProcEvent[] batch = sigar.getProcEvents(100);
+                for (int j=0; j<batch.length; j++) {
+                    events.add(batch[j]);
+                    if ((batch[j].getType() == ProcEvent.FORK) &&
+                        (batch[j].getPpid() == sigar.getPid()))
+                    {
+                        child = batch[j].getPid();
+                    }
+                }
+                if ((child != -1) &&
+                    (find(events, ProcEvent.EXIT, child) != null))
+                {
+                    break;
+                }
+            }
+
+            traceln("child=" + child + ", events=" + events.size());
+            assertTrue(child != -1);
+            assertNotNull(find(events, ProcEvent.EXEC, child));
+            ProcEvent exit = find(events, ProcEvent.EXIT, child);
+            assertNotNull(exit);
+            assertTrue(exit.getExitCode() != 0);
+        } finally {
+            sigar.close();
+        }
+    }
+
+    public void testMonitor() throws Exception {
+        if (SigarLoader.IS_WIN32) {
+            return;
+        }
+
+        final List execs = new ArrayList();
+        final List exits = new ArrayList();
+
+        ProcEventMonitor monitor = new ProcEventMonitor(100);
+        monitor.add(new ProcEventListener() {
+            public void onExec(ProcEvent event) {
+                synchronized (execs) {
+                    execs.add(event);
+                }
+            }
+
+            public void onExit(ProcEvent event) {
+                synchronized (exits) {
+                    exits.add(event);
+                }
+            }
+        });
+
+        monitor.doStart();
+        traceln("eventDriven=" + monitor.isEventDriven());
+
+        try {
+            //outlives a scan interval so it is seen either way
+            Process proc =
+                Runtime.getRuntime().exec(new String[] { "sleep", "1" });
+            proc.waitFor();
+
+            for (int i=0; i<30; i++) {
+                synchronized (exits) {
+                    if (exits.size() != 0) {
+                        break;
+                    }
+                }
+                Thread.sleep(100);
+            }
+        } finally {
+            monitor.doStop();
+        }
+
+        traceln("execs=" + execs + ", exits=" + exits);
+        assertTrue(execs.size() != 0);
+        assertTrue(exits.size() != 0);
+    }
+}
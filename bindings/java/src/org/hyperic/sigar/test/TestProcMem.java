@@ -18,6 +18,9 @@
 
 package org.hyperic.sigar.test;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import org.hyperic.sigar.Sigar;
 import org.hyperic.sigar.SigarException;
 import org.hyperic.sigar.ProcMem;
@@ -62,4 +65,34 @@ public class TestProcMem extends SigarTestCase {
             traceMem(sigar, pids[i]);
         }
     }
+
+    public void testReuse() throws Exception {
+        Sigar sigar = getSigar();
+        long pid = sigar.getPid();
+
+        ProcMem procMem = new ProcMem();
+        assertTrue(sigar.getProcMem(pid, procMem) == procMem);
+        assertTrue(procMem.getSize() > 0);
+
+        ByteBuffer buffer =
+            ByteBuffer.allocateDirect(ProcMem.DIRECT_SIZE * 2);
+        buffer.order(ByteOrder.nativeOrder());
+
+        procMem.gather(sigar, pid, buffer, ProcMem.DIRECT_SIZE);
+        assertEquals(0, buffer.getLong(ProcMem.OFFSET_SIZE));
+        assertTrue(buffer.getLong(ProcMem.DIRECT_SIZE +
+                                  ProcMem.OFFSET_SIZE) > 0);
+
+        try {
+            procMem.gather(sigar, pid, buffer, ProcMem.DIRECT_SIZE + 1);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+        }
+
+        try {
+            procMem.gather(sigar, pid, ByteBuffer.allocate(64), 0);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
 }
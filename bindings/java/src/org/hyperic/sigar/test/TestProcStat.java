@@ -18,6 +18,8 @@
 
 package org.hyperic.sigar.test;
 
+import java.io.File;
+
 import org.hyperic.sigar.CurrentProcessSummary;
 import org.hyperic.sigar.Sigar;
 import org.hyperic.sigar.SigarProxy;
@@ -42,4 +44,43 @@ public class TestProcStat extends SigarTestCase {
         SigarProxy proxy = SigarProxyCache.newInstance(getSigar());
         traceln(CurrentProcessSummary.get(proxy).toString());
     }
+
+    public void testSummary() throws Exception {
+        Sigar sigar = getSigar();
+
+        ProcStat stat = sigar.getProcStat();
+        ProcStat summary = sigar.getProcStatSummary();
+        traceln(summary.toString());
+
+        assertTrue(summary.getTotal() > 1);
+        //process count may change between the two calls
+        long slack = Math.max(stat.getTotal() / 20, 5);
+        assertTrue(stat.getTotal() + "~" + summary.getTotal(),
+                   Math.abs(stat.getTotal() - summary.getTotal()) <= slack);
+
+        long threads = summary.getThreads();
+        if (threads != Sigar.FIELD_NOTIMPL) {
+            assertTrue(threads >= summary.getTotal() - slack);
+        }
+        else {
+            threads = Long.MAX_VALUE;
+        }
+        //procs_running counts the thread reading /proc/stat
+        if (summary.getRunning() != Sigar.FIELD_NOTIMPL) {
+            assertTrue("Running", summary.getRunning() >= 1);
+            assertTrue("Running", summary.getRunning() <= threads);
+        }
+        //procs_blocked
+        if (summary.getIdle() != Sigar.FIELD_NOTIMPL) {
+            assertTrue("Idle", summary.getIdle() >= 0);
+            assertTrue("Idle", summary.getIdle() <= threads);
+        }
+        //linux fills running/idle from /proc/stat and skips the scan
+        //that the per-state counts would need
+        if (new File("/proc/stat").exists()) {
+            assertTrue(summary.getRunning() != Sigar.FIELD_NOTIMPL);
+            assertEquals(Sigar.FIELD_NOTIMPL, summary.getSleeping());
+            assertEquals(Sigar.FIELD_NOTIMPL, summary.getZombie());
+        }
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.test;
+
+import org.hyperic.sigar.ProcMem;
+import org.hyperic.sigar.ProcState;
+import org.hyperic.sigar.ProcTable;
+import org.hyperic.sigar.Sigar;
+
+public class TestProcTable extends SigarTestCase {
+
+    public TestProcTable(String name) {
+        super(name);
+    }
+
+    public void testCreate() throws Exception {
+        Sigar sigar = getSigar();
+        long[] pids = sigar.getProcList();
+
+        ProcTable table = sigar.getProcTable(pids, ProcTable.FIELD_ALL);
+
+        assertEquals(pids.length, table.size());
+
+        int valid = 0;
+        for (int i=0; i<table.size(); i++) {
+            if (table.isValid(i, ProcTable.FIELD_STATE)) {
+                assertTrue(table.getName()[i].length() > 0);
+                valid++;
+            }
+        }
+        traceln("valid=" + valid + "/" + table.size());
+        assertTrue(valid > 0);
+    }
+
+    public void testSelf() throws Exception {
+        Sigar sigar = getSigar();
+        long pid = sigar.getPid();
+
+        ProcTable table =
+            sigar.getProcTable(new long[] { pid, getInvalidPid() },
+                               ProcTable.FIELD_STATE | ProcTable.FIELD_MEM);
+
+        assertNull(table.getStartTime());
+        assertNull(table.getUserName());
+
+        assertTrue(table.isValid(0, ProcTable.FIELD_STATE));
+        assertTrue(table.isValid(0, ProcTable.FIELD_MEM));
+
+        ProcState state = sigar.getProcState(pid);
+        assertEquals(state.getName(), table.getName()[0]);
+        assertEquals(state.getPpid(), table.getPpid()[0]);
+
+        ProcMem mem = sigar.getProcMem(pid);
+        assertEquals(mem.getSize() > 0, table.getSize()[0] > 0);
+
+        assertFalse(table.isValid(1, ProcTable.FIELD_STATE));
+        assertEquals(Sigar.FIELD_NOTIMPL, table.getResident()[1]);
+    }
+}
@@ -20,6 +20,7 @@ package org.hyperic.sigar.test;
 
 import java.util.Date;
 
+import org.hyperic.sigar.MultiProcCpu;
 import org.hyperic.sigar.Sigar;
 import org.hyperic.sigar.SigarException;
 import org.hyperic.sigar.ProcCpu;
@@ -56,4 +57,33 @@ public class TestProcTime extends SigarTestCase {
         assertTrue(value >= 0.0);
         assertTrue(value <= 100.0);
     }
+
+    public void testMultiProcCpu() throws Exception {
+        Sigar sigar = getSigar();
+        String query = "Pid.Pid.eq=" + sigar.getPid();
+
+        MultiProcCpu cpu = sigar.getMultiProcCpu(query);
+        assertEquals(1, cpu.getProcesses());
+        assertGtEqZeroTrace("Total", cpu.getTotal());
+
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < 200) {
+            Math.sqrt(start);
+        }
+
+        cpu = sigar.getMultiProcCpu(query);
+        double percent = cpu.getPercent();
+        traceln("Percent=" + percent);
+        assertTrue(percent >= 0.0);
+        //not clamped, allow for clock tick granularity
+        assertTrue(percent <= 1.1);
+
+        //state is per Sigar instance
+        Sigar other = new Sigar();
+        try {
+            assertEquals(0.0, other.getMultiProcCpu(query).getPercent(), 0);
+        } finally {
+            other.close();
+        }
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.test;
+
+import org.hyperic.sigar.ProcTree;
+import org.hyperic.sigar.Sigar;
+import org.hyperic.sigar.SigarException;
+
+public class TestProcTree extends SigarTestCase {
+
+    public TestProcTree(String name) {
+        super(name);
+    }
+
+    public void testCreate() throws Exception {
+        Sigar sigar = getSigar();
+        long pid = sigar.getPid();
+        long ppid = sigar.getProcState(pid).getPpid();
+
+        ProcTree tree = sigar.getProcTree(ppid);
+        ProcTree.Node root = tree.getRoot();
+        assertEquals(ppid, root.getPid());
+
+        ProcTree.Node self = tree.getNode(pid);
+        assertTrue(self != null);
+        assertEquals(ppid, self.getPpid());
+        assertTrue(self.getResident() > 0);
+
+        long[] pids = tree.getPids();
+        assertEquals(ppid, pids[0]);
+        assertEquals(root.getSubtreeProcesses(), pids.length);
+        assertTrue(root.getSubtreeProcesses() >= 2);
+        assertTrue(root.getSubtreeResident() >=
+                   root.getResident() + self.getResident());
+        assertTrue(root.getSubtreeCpuTotal() >= self.getCpuTotal());
+        traceln(root.toString());
+
+        for (int i=0; i<100000; i++) {
+            Math.sqrt(i);
+        }
+        tree.update();
+        self = tree.getNode(pid);
+        assertTrue(self.getCpuPercent() >= 0);
+        assertTrue(tree.getRoot().getSubtreeCpuPercent() >=
+                   self.getCpuPercent());
+        traceln(tree.getRoot().toString());
+
+        assertNull(tree.getNode(getInvalidPid()));
+    }
+
+    public void testInvalid() throws Exception {
+        try {
+            getSigar().getProcTree(getInvalidPid());
+            fail("no exception for invalid pid");
+        } catch (SigarException e) {
+            traceln(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.test;
+
+import org.hyperic.sigar.ProcessAggregator;
+import org.hyperic.sigar.Sigar;
+import org.hyperic.sigar.SigarNotImplementedException;
+
+public class TestProcessAggregator extends SigarTestCase {
+
+    public TestProcessAggregator(String name) {
+        super(name);
+    }
+
+    private ProcessAggregator check(int groupBy) throws Exception {
+        Sigar sigar = getSigar();
+        ProcessAggregator agg = sigar.getProcAggregate(groupBy);
+        long total = 0;
+
+        assertTrue(agg.size() > 0);
+        assertEquals(agg.size(), agg.getIds().length);
+        assertEquals(agg.size(), agg.getFds().length);
+
+        for (int i=0; i<agg.size(); i++) {
+            assertTrue(agg.getProcesses()[i] > 0);
+            assertTrue(agg.getThreads()[i] >= 0);
+            assertTrue(agg.getResident()[i] >= 0);
+            assertTrue(agg.getCpuTotal()[i] >= 0);
+            total += agg.getProcesses()[i];
+            traceln(agg.getKeys()[i] +
+                    " processes=" + agg.getProcesses()[i] +
+                    " resident=" + agg.getResident()[i]);
+        }
+
+        assertTrue(total > 0);
+
+        return agg;
+    }
+
+    public void testGroupByUid() throws Exception {
+        ProcessAggregator agg = check(ProcessAggregator.GROUP_UID);
+        long uid = getSigar().getProcCred(getSigar().getPid()).getUid();
+        int row = agg.indexOf(String.valueOf(uid));
+
+        assertTrue(row >= 0);
+        assertEquals(uid, agg.getIds()[row]);
+        assertTrue(agg.getResident()[row] > 0);
+    }
+
+    public void testGroupByStateName() throws Exception {
+        ProcessAggregator agg = check(ProcessAggregator.GROUP_STATE_NAME);
+        String name =
+            getSigar().getProcState(getSigar().getPid()).getName();
+
+        assertTrue(agg.indexOf(name) >= 0);
+        assertEquals(Sigar.FIELD_NOTIMPL, agg.getIds()[0]);
+    }
+
+    public void testGroupByExeName() throws Exception {
+        ProcessAggregator agg = check(ProcessAggregator.GROUP_EXE_NAME);
+        String exe =
+            getSigar().getProcExe(getSigar().getPid()).getName();
+
+        assertTrue(agg.indexOf(exe) >= 0);
+    }
+
+    public void testGroupByPpid() throws Exception {
+        ProcessAggregator agg = check(ProcessAggregator.GROUP_PPID);
+        long ppid =
+            getSigar().getProcState(getSigar().getPid()).getPpid();
+
+        assertTrue(agg.indexOf(String.valueOf(ppid)) >= 0);
+    }
+
+    public void testGroupByCgroup() throws Exception {
+        try {
+            check(ProcessAggregator.GROUP_CGROUP);
+        } catch (SigarNotImplementedException e) {
+            traceln("cgroups not supported");
+        }
+    }
+
+    public void testInvalid() throws Exception {
+        try {
+            getSigar().getProcAggregate(0);
+            fail("no exception for invalid groupBy");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
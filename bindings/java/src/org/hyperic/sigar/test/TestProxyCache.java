@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) [2004-2009], Hyperic, Inc.
+ * This file is part of SIGAR.
+ * 
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.test;
+
+import java.util.ArrayList;
+
+import org.hyperic.sigar.CachingSigar;
+import org.hyperic.sigar.Mem;
+import org.hyperic.sigar.NetFlags;
+import org.hyperic.sigar.ProcIdentity;
+import org.hyperic.sigar.ProcMem;
+import org.hyperic.sigar.ProcState;
+import org.hyperic.sigar.Sigar;
+import org.hyperic.sigar.SigarException;
+import org.hyperic.sigar.SigarNotImplementedException;
+import org.hyperic.sigar.SigarProxy;
+import org.hyperic.sigar.SigarProxyCache;
+
+public class TestProxyCache extends SigarTestCase {
+
+    public TestProxyCache(String name) {
+        super(name);
+    }
+
+    public void testExpire() throws Exception {
+        Sigar sigar = new Sigar();
+        SigarProxy proxy = SigarProxyCache.newInstance(sigar, 60 * 1000);
+
+        try {
+            Mem mem = proxy.getMem();
+            assertTrue(mem == proxy.getMem());
+
+            SigarProxyCache.setExpire(proxy, "Mem", 0);
+            Thread.sleep(5);
+            assertTrue(mem != proxy.getMem());
+
+            long pid = sigar.getPid();
+            ProcMem procMem = proxy.getProcMem(pid);
+            assertTrue(procMem == proxy.getProcMem(pid));
+
+            //method name takes precedence over type name
+            SigarProxyCache.setExpire(proxy, "ProcMem", 60 * 1000);
+            SigarProxyCache.setExpire(proxy, "getProcMem", 0);
+            Thread.sleep(5);
+            assertTrue(procMem != proxy.getProcMem(pid));
+
+            SigarProxyCache.clear(proxy);
+            mem = proxy.getMem();
+            Thread.sleep(5);
+            assertTrue(mem != proxy.getMem());
+        } finally {
+            sigar.close();
+        }
+    }
+
+    //both caches name array types by their element type
+    private void checkArrayTypeName(SigarProxy proxy) throws Exception {
+        double[] load = proxy.getLoadAverage();
+        assertTrue(load == proxy.getLoadAverage());
+        SigarProxyCache.setExpire(proxy, "double", 0);
+        Thread.sleep(5);
+        assertTrue(load != proxy.getLoadAverage());
+    }
+
+    public void testArrayTypeName() throws Exception {
+        Sigar sigar = new Sigar();
+
+        try {
+            checkArrayTypeName(SigarProxyCache.newInstance(sigar, 60 * 1000));
+            checkArrayTypeName(new CachingSigar(sigar, 60 * 1000));
+        } catch (SigarNotImplementedException e) {
+            //no load average on this platform
+        } finally {
+            sigar.close();
+        }
+    }
+
+    public void testArgs() throws Exception {
+        Sigar sigar = new Sigar();
+        SigarProxy proxy = SigarProxyCache.newInstance(sigar, 60 * 1000);
+
+        try {
+            //argument lists which must not share a cache entry
+            long[][] args = {
+                { NetFlags.CONN_TCP, 22 },
+                { NetFlags.CONN_UDP, 22 ^ NetFlags.CONN_TCP ^ NetFlags.CONN_UDP },
+                { NetFlags.CONN_TCP, 80 },
+                { NetFlags.CONN_UDP, 80 },
+            };
+            for (int i=0; i<args.length; i++) {
+                int protocol = (int)args[i][0];
+                long port = args[i][1];
+                String expect = sigar.getNetServicesName(protocol, port);
+                for (int j=0; j<2; j++) {
+                    assertEquals(expect,
+                                 proxy.getNetServicesName(protocol, port));
+                }
+            }
+        } finally {
+            sigar.close();
+        }
+    }
+
+    public void testCachingSigar() throws Exception {
+        Sigar sigar = new Sigar();
+        CachingSigar proxy = new CachingSigar(sigar, 60 * 1000);
+
+        try {
+            assertTrue(sigar == SigarProxyCache.getSigar(proxy));
+
+            Mem mem = proxy.getMem();
+            assertTrue(mem == proxy.getMem());
+            SigarProxyCache.clear(proxy);
+            assertTrue(mem != proxy.getMem());
+
+            long pid = sigar.getPid();
+            assertEquals(pid, proxy.getPid());
+            assertEquals(pid, proxy.getPid());
+
+            ProcMem procMem = proxy.getProcMem(pid);
+            assertTrue(procMem == proxy.getProcMem(pid));
+            proxy.setExpire("getProcMem", 0);
+            Thread.sleep(5);
+            assertTrue(procMem != proxy.getProcMem(pid));
+
+            String name = proxy.getNetServicesName(NetFlags.CONN_TCP, 22);
+            assertEquals(sigar.getNetServicesName(NetFlags.CONN_TCP, 22),
+                         name);
+            assertEquals(sigar.getNetServicesName(NetFlags.CONN_UDP, 22),
+                         proxy.getNetServicesName(NetFlags.CONN_UDP, 22));
+
+            //enough pids to sweep and grow the table
+            for (int i=0; i<1000; i++) {
+                try {
+                    proxy.getProcState(i);
+                } catch (SigarException e) {
+                }
+            }
+            assertEquals(sigar.getProcState(pid).getName(),
+                         proxy.getProcState(pid).getName());
+        } finally {
+            sigar.close();
+        }
+    }
+
+    public void testProcIdentity() throws Exception {
+        Sigar sigar = new Sigar();
+        SigarProxy proxy = SigarProxyCache.newInstance(sigar, 60 * 1000);
+
+        try {
+            long pid = sigar.getPid();
+            ProcIdentity id = ProcIdentity.get(sigar, pid);
+            assertEquals(id, new ProcIdentity(pid, id.getStartTime()));
+            assertFalse(id.equals(new ProcIdentity(pid,
+                                                   id.getStartTime() + 1)));
+
+            //same process, cached value is kept after the identity check
+            ProcState state = proxy.getProcState(pid);
+            Thread.sleep(ProcIdentity.CHECK_INTERVAL + 100);
+            assertTrue(state == proxy.getProcState(pid));
+        } finally {
+            sigar.close();
+        }
+    }
+
+    private static class CacheThread extends Thread {
+        private SigarProxy proxy;
+        private Object value;
+        private Exception ex;
+
+        private CacheThread(SigarProxy proxy) {
+            this.proxy = proxy;
+        }
+
+        public void run() {
+            try {
+                for (int i=0; i<100; i++) {
+                    this.value = this.proxy.getMem();
+                }
+            } catch (Exception e) {
+                this.ex = e;
+            }
+        }
+    }
+
+    public void testThreads() throws Exception {
+        Sigar sigar = new Sigar();
+        SigarProxy proxy = SigarProxyCache.newInstance(sigar, 60 * 1000);
+
+        try {
+            ArrayList threads = new ArrayList();
+            for (int i=0; i<4; i++) {
+                Thread t = new CacheThread(proxy);
+                threads.add(t);
+                t.start();
+            }
+            Object value = null;
+            for (int i=0; i<threads.size(); i++) {
+                CacheThread t = (CacheThread)threads.get(i);
+                t.join();
+                if (t.ex != null) {
+                    throw t.ex;
+                }
+                //single-flight: every thread sees the same cached object
+                if (value == null) {
+                    value = t.value;
+                }
+                assertTrue(value == t.value);
+            }
+        } finally {
+            sigar.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of SIGAR.
+ *
+ * SIGAR is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.sigar.test;
+
+import org.hyperic.sigar.Sigar;
+import org.hyperic.sigar.SystemSnapshot;
+
+public class TestSystemSnapshot extends SigarTestCase {
+
+    public TestSystemSnapshot(String name) {
+        super(name);
+    }
+
+    public void testCreate() throws Exception {
+        Sigar sigar = getSigar();
+
+        long start = System.currentTimeMillis();
+        SystemSnapshot snapshot = sigar.getSystemSnapshot();
+        long end = System.currentTimeMillis();
+
+        traceln(snapshot.toString());
+
+        assertTrue(snapshot.getTimestamp() >= start - 1000);
+        assertTrue(snapshot.getTimestamp() <= end + 1000);
+
+        assertTrue(snapshot.getMem().getTotal() > 0);
+        assertGtEqZeroTrace("Swap.Total", snapshot.getSwap().getTotal());
+        assertGtEqZeroTrace("Cpu.Total", snapshot.getCpu().getTotal());
+
+        assertTrue(snapshot.getCpuList().length > 0);
+        assertEquals(sigar.getCpuList().length,
+                     snapshot.getCpuList().length);
+
+        if (snapshot.getLoadAverage() != null) {
+            assertTrue(snapshot.getLoadAverage().length == 3);
+        }
+
+        assertTrue(snapshot.getUptime().getUptime() > 0);
+        assertTrue(snapshot.getProcStat().getTotal() > 0);
+    }
+}
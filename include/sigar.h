@@ -119,6 +119,13 @@ typedef gid_t sigar_gid_t;
 
 typedef struct sigar_t sigar_t;
 
+/*
+ * a sigar_t handle is not thread-safe, it holds caches and
+ * buffers (pid list, proc cpu times, last proc stat, errbuf, etc)
+ * which are modified by the *_get functions.
+ * a handle must only be used by one thread at a time,
+ * separate handles do not share state and may be used concurrently.
+ */
 SIGAR_DECLARE(int) sigar_open(sigar_t **sigar);
 
 SIGAR_DECLARE(int) sigar_close(sigar_t *sigar);
@@ -262,6 +269,35 @@ SIGAR_DECLARE(int) sigar_proc_list_get(sigar_t *sigar,
 SIGAR_DECLARE(int) sigar_proc_list_destroy(sigar_t *sigar,
                                            sigar_proc_list_t *proclist);
 
+#define SIGAR_PROC_EVENT_FORK 1
+#define SIGAR_PROC_EVENT_EXEC 2
+#define SIGAR_PROC_EVENT_EXIT 3
+
+typedef struct {
+    int type;
+    sigar_pid_t pid;
+    sigar_pid_t ppid; /* FORK only */
+    int exit_code;    /* EXIT only */
+} sigar_proc_event_t;
+
+typedef struct {
+    unsigned long number;
+    unsigned long size;
+    sigar_proc_event_t *data;
+} sigar_proc_event_list_t;
+
+/*
+ * process start and exit notifications pushed by the os,
+ * waits up to timeout millis for the first event.
+ * SIGAR_ENOTIMPL where not supported, currently linux only.
+ */
+SIGAR_DECLARE(int) sigar_proc_event_list_get(sigar_t *sigar,
+                                             sigar_proc_event_list_t *events,
+                                             int timeout);
+
+SIGAR_DECLARE(int) sigar_proc_event_list_destroy(sigar_t *sigar,
+                                                 sigar_proc_event_list_t *events);
+
 typedef struct {
     sigar_uint64_t total;
     sigar_uint64_t sleeping;
@@ -275,6 +311,49 @@ typedef struct {
 SIGAR_DECLARE(int) sigar_proc_stat_get(sigar_t *sigar,
                                        sigar_proc_stat_t *procstat);
 
+/*
+ * totals from counters the kernel already keeps, without reading
+ * the state of each process.  fields with no such counter are
+ * SIGAR_FIELD_NOTIMPL; use sigar_proc_stat_get for the breakdown.
+ */
+SIGAR_DECLARE(int) sigar_proc_stat_summary_get(sigar_t *sigar,
+                                               sigar_proc_stat_t *procstat);
+
+#define SIGAR_PROC_GROUP_UID        1
+#define SIGAR_PROC_GROUP_STATE_NAME 2
+#define SIGAR_PROC_GROUP_EXE_NAME   3
+#define SIGAR_PROC_GROUP_PPID       4
+#define SIGAR_PROC_GROUP_CGROUP     5
+
+typedef struct {
+    char *key;
+    sigar_uint64_t id; /* uid or ppid, else SIGAR_FIELD_NOTIMPL */
+    sigar_uint64_t processes;
+    sigar_uint64_t threads;
+    sigar_uint64_t resident;
+    sigar_uint64_t cpu_total;
+    sigar_uint64_t fds;
+} sigar_proc_group_t;
+
+typedef struct {
+    unsigned long number;
+    unsigned long size;
+    sigar_proc_group_t *data;
+} sigar_proc_group_list_t;
+
+/*
+ * sums over every process in a single scan, grouped by one of
+ * SIGAR_PROC_GROUP_*.  processes whose key cannot be read
+ * (e.g. EACCES for another user's exe) are summed under "".
+ * cgroup is the unified (v2) path, or the first hierarchy listed;
+ * SIGAR_ENOTIMPL where there are no cgroups.
+ */
+SIGAR_DECLARE(int) sigar_proc_group_list_get(sigar_t *sigar, int by,
+                                             sigar_proc_group_list_t *groups);
+
+SIGAR_DECLARE(int) sigar_proc_group_list_destroy(sigar_t *sigar,
+                                                 sigar_proc_group_list_t *groups);
+
 typedef struct {
     sigar_uint64_t
         size,
@@ -668,6 +747,29 @@ SIGAR_DECLARE(int)
 sigar_net_interface_list_destroy(sigar_t *sigar,
                                  sigar_net_interface_list_t *iflist);
 
+typedef struct {
+    char name[16];
+    sigar_net_interface_stat_t stat;
+} sigar_net_interface_stat_entry_t;
+
+typedef struct {
+    unsigned long number;
+    unsigned long size;
+    sigar_net_interface_stat_entry_t *data;
+} sigar_net_interface_stat_list_t;
+
+/*
+ * stats for every interface the kernel keeps counters for,
+ * gathered in a single pass where the platform allows.
+ */
+SIGAR_DECLARE(int)
+sigar_net_interface_stat_list_get(sigar_t *sigar,
+                                  sigar_net_interface_stat_list_t *statlist);
+
+SIGAR_DECLARE(int)
+sigar_net_interface_stat_list_destroy(sigar_t *sigar,
+                                      sigar_net_interface_stat_list_t *statlist);
+
 #define SIGAR_NETCONN_CLIENT 0x01
 #define SIGAR_NETCONN_SERVER 0x02
 
@@ -676,6 +778,14 @@ sigar_net_interface_list_destroy(sigar_t *sigar,
 #define SIGAR_NETCONN_RAW  0x40
 #define SIGAR_NETCONN_UNIX 0x80
 
+/*
+ * sigar_net_connection_walk hints, each using the walker field
+ * of the same name.  connections outside the hint may still be
+ * reported, walkers must check for themselves.
+ */
+#define SIGAR_NETCONN_PORT   0x100 /* local or remote port == port */
+#define SIGAR_NETCONN_STATES 0x200 /* (1 << state) & states */
+
 enum {
     SIGAR_TCP_ESTABLISHED = 1,
     SIGAR_TCP_SYN_SENT,
@@ -730,6 +840,8 @@ struct sigar_net_connection_walker_t {
     void *data; /* user data */
     int (*add_connection)(sigar_net_connection_walker_t *walker,
                           sigar_net_connection_t *connection);
+    unsigned long port; /* SIGAR_NETCONN_PORT */
+    int states;         /* SIGAR_NETCONN_STATES */
 };
 
 SIGAR_DECLARE(int)
@@ -889,6 +1001,19 @@ SIGAR_DECLARE(int) sigar_proc_port_get(sigar_t *sigar,
                                        int protocol, unsigned long port,
                                        sigar_pid_t *pid);
 
+/* pids[i] is the process listening on ports[i], or 0 */
+SIGAR_DECLARE(int) sigar_proc_port_list_get(sigar_t *sigar,
+                                            int protocol,
+                                            unsigned long *ports,
+                                            unsigned long number,
+                                            sigar_pid_t *pids);
+
+/* pids[i] is the process owning connlist->data[i], or 0 */
+SIGAR_DECLARE(int)
+sigar_net_connection_owners_get(sigar_t *sigar,
+                                sigar_net_connection_list_t *connlist,
+                                sigar_pid_t *pids);
+
 typedef struct {
     const char *build_date;
     const char *scm_revision;
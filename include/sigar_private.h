@@ -66,9 +66,11 @@
    sigar_proc_list_t *pids; \
    sigar_cache_t *fsdev; \
    sigar_cache_t *proc_cpu; \
+   sigar_uint64_t proc_cpu_sweep; \
    sigar_cache_t *net_listen; \
    sigar_cache_t *net_services_tcp; \
-   sigar_cache_t *net_services_udp
+   sigar_cache_t *net_services_udp; \
+   sigar_cache_t *ptql_memo
 
 #if defined(WIN32)
 #   define SIGAR_INLINE __inline
@@ -160,8 +162,12 @@
 
 #define SIGAR_PROC_LIST_MAX 256
 
+#define SIGAR_PROC_EVENT_LIST_MAX 64
+
 #define SIGAR_PROC_ARGS_MAX 12
 
+#define SIGAR_PROC_GROUP_LIST_MAX 16
+
 #define SIGAR_NET_ROUTE_LIST_MAX 6
 
 #define SIGAR_NET_IFLIST_MAX 20
@@ -200,6 +206,19 @@ int sigar_proc_list_grow(sigar_proc_list_t *proclist);
         sigar_proc_list_grow(proclist); \
     }
 
+int sigar_proc_event_list_create(sigar_proc_event_list_t *events);
+
+int sigar_proc_event_list_grow(sigar_proc_event_list_t *events);
+
+#define SIGAR_PROC_EVENT_LIST_GROW(events) \
+    if (events->number >= events->size) { \
+        sigar_proc_event_list_grow(events); \
+    }
+
+int sigar_os_proc_event_list_get(sigar_t *sigar,
+                                 sigar_proc_event_list_t *events,
+                                 int timeout);
+
 int sigar_proc_args_create(sigar_proc_args_t *proclist);
 
 int sigar_proc_args_grow(sigar_proc_args_t *procargs);
@@ -212,6 +231,20 @@ int sigar_proc_args_grow(sigar_proc_args_t *procargs);
 int sigar_os_proc_args_get(sigar_t *sigar, sigar_pid_t pid,
                            sigar_proc_args_t *procargs);
 
+int sigar_proc_group_list_create(sigar_proc_group_list_t *groups);
+
+int sigar_proc_group_list_grow(sigar_proc_group_list_t *groups);
+
+#define SIGAR_PROC_GROUP_LIST_GROW(groups) \
+    if (groups->number >= groups->size) { \
+        sigar_proc_group_list_grow(groups); \
+    }
+
+#ifdef __linux__
+int sigar_os_proc_cgroup_get(sigar_t *sigar, sigar_pid_t pid,
+                             char *buf, int buflen);
+#endif
+
 int sigar_file_system_list_create(sigar_file_system_list_t *fslist);
 
 int sigar_file_system_list_grow(sigar_file_system_list_t *fslist);
@@ -266,6 +299,15 @@ int sigar_net_interface_list_grow(sigar_net_interface_list_t *iflist);
         sigar_net_interface_list_grow(iflist); \
     }
 
+int sigar_net_interface_stat_list_create(sigar_net_interface_stat_list_t *statlist);
+
+int sigar_net_interface_stat_list_grow(sigar_net_interface_stat_list_t *statlist);
+
+#define SIGAR_NET_IFSTAT_LIST_GROW(statlist) \
+    if (statlist->number >= statlist->size) { \
+        sigar_net_interface_stat_list_grow(statlist); \
+    }
+
 int sigar_net_connection_list_create(sigar_net_connection_list_t *connlist);
 
 int sigar_net_connection_list_grow(sigar_net_connection_list_t *connlist);
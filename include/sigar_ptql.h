@@ -44,6 +44,15 @@ SIGAR_DECLARE(int) sigar_ptql_query_match(sigar_t *sigar,
 
 SIGAR_DECLARE(int) sigar_ptql_query_destroy(sigar_ptql_query_t *query);
 
+/*
+ * describe the order in which branches are evaluated,
+ * one "N. branch (cost=C)" line per branch.  branches noted
+ * as memoized are evaluated once per process image and their
+ * result reused by later matches of the same query.
+ */
+SIGAR_DECLARE(int) sigar_ptql_query_explain(sigar_ptql_query_t *query,
+                                            char *buffer, int buflen);
+
 SIGAR_DECLARE(int) sigar_ptql_query_find_process(sigar_t *sigar,
                                                  sigar_ptql_query_t *query,
                                                  sigar_pid_t *pid);
@@ -52,4 +61,14 @@ SIGAR_DECLARE(int) sigar_ptql_query_find(sigar_t *sigar,
                                          sigar_ptql_query_t *query,
                                          sigar_proc_list_t *proclist);
 
+/*
+ * as sigar_ptql_query_find, also returning the value of the
+ * query's sort= key for each pid (0 if the query has none).
+ * values is allocated with malloc and must be freed by the caller.
+ */
+SIGAR_DECLARE(int) sigar_ptql_query_find_sorted(sigar_t *sigar,
+                                                sigar_ptql_query_t *query,
+                                                sigar_proc_list_t *proclist,
+                                                double **values);
+
 #endif /*SIGAR_PTQL_H*/
@@ -168,17 +168,30 @@ int sigar_dlinfo_modules(sigar_t *sigar, sigar_proc_modules_t *procmods);
 typedef struct sigar_cache_entry_t sigar_cache_entry_t;
 
 struct sigar_cache_entry_t {
-    sigar_cache_entry_t *next;
+    sigar_cache_entry_t *next; /* free list */
     sigar_uint64_t id;
     void *value;
 };
 
+typedef struct sigar_cache_slab_t sigar_cache_slab_t;
+
+/*
+ * open addressing hash table of entry pointers,
+ * entries are allocated from slabs so their address does not
+ * change when the table is resized.
+ */
 typedef struct {
     sigar_cache_entry_t **entries;
     unsigned int count, size;
     void (*free_value)(void *ptr);
+    unsigned int used; /* count + deleted slots */
+    sigar_cache_slab_t *slabs;
+    sigar_cache_entry_t *free_list;
 } sigar_cache_t;
 
+/* return non-zero to delete the entry */
+typedef int (*sigar_cache_sweep_t)(void *data, sigar_cache_entry_t *entry);
+
 sigar_cache_t *sigar_cache_new(int size);
 
 sigar_cache_entry_t *sigar_cache_get(sigar_cache_t *table,
@@ -187,6 +200,12 @@ sigar_cache_entry_t *sigar_cache_get(sigar_cache_t *table,
 sigar_cache_entry_t *sigar_cache_find(sigar_cache_t *table,
                                       sigar_uint64_t key);
 
+int sigar_cache_delete(sigar_cache_t *table,
+                       sigar_uint64_t key);
+
+void sigar_cache_sweep(sigar_cache_t *table,
+                       sigar_cache_sweep_t sweep, void *data);
+
 void sigar_cache_destroy(sigar_cache_t *table);
 
 #endif /* SIGAR_UTIL_H */
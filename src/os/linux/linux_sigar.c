@@ -20,8 +20,10 @@
 #include <stdio.h>
 #include <stdlib.h>
 #include <errno.h>
+#include <fcntl.h>
 #include <sys/param.h>
 #include <sys/stat.h>
+#include <sys/syscall.h>
 #include <sys/times.h>
 #include <sys/utsname.h>
 
@@ -39,6 +41,8 @@
 #define PROC_UPTIME  PROC_FS_ROOT "uptime"
 #define PROC_LOADAVG PROC_FS_ROOT "loadavg"
 
+#define PROC_NET_DEV PROC_FS_ROOT "net/dev"
+
 #define PROC_PSTAT   "/stat"
 #define PROC_PSTATUS "/status"
 
@@ -152,6 +156,170 @@ static int sigar_boot_time_get(sigar_t *sigar)
     return SIGAR_OK;
 }
 
+static const char *proc_fd_files[] = {
+    PROC_MEMINFO,
+    PROC_STAT,
+    PROC_UPTIME,
+    PROC_LOADAVG,
+    PROC_NET_DEV
+};
+
+/*
+ * read one of the proc_fd_files into sigar->proc_buf.
+ * the descriptor stays open for the life of the sigar_t,
+ * procfs regenerates the contents on each read from offset 0.
+ * the buffer is only valid until the next call.
+ */
+static int sigar_proc_fd_read(sigar_t *sigar, linux_proc_fd_e ix,
+                              char **buffer)
+{
+    int *fd = &sigar->proc_fd[ix];
+    ssize_t len;
+
+    if (*fd < 0) {
+        if ((*fd = open(proc_fd_files[ix], O_RDONLY)) < 0) {
+            return errno;
+        }
+        fcntl(*fd, F_SETFD, FD_CLOEXEC);
+    }
+
+    if (!sigar->proc_buf) {
+        sigar->proc_buflen = BUFSIZ;
+        sigar->proc_buf = malloc(sigar->proc_buflen);
+    }
+
+    while (1) {
+        len = pread(*fd, sigar->proc_buf, sigar->proc_buflen - 1, 0);
+
+        if (len < 0) {
+            int status = errno;
+            if (status == EINTR) {
+                continue;
+            }
+            close(*fd);
+            *fd = -1;
+            return status;
+        }
+
+        if (len < sigar->proc_buflen - 1) {
+            break;
+        }
+
+        /* file did not fit, grow and read it again from the start */
+        sigar->proc_buflen *= 2;
+        sigar->proc_buf = realloc(sigar->proc_buf, sigar->proc_buflen);
+    }
+
+    sigar->proc_buf[len] = '\0';
+    *buffer = sigar->proc_buf;
+
+    return SIGAR_OK;
+}
+
+/* unlike sigar_skip_line, stops at the end of the buffer */
+static char *proc_next_line(char *ptr)
+{
+    char *nl = strchr(ptr, '\n');
+    return nl ? nl + 1 : ptr + strlen(ptr);
+}
+
+/*
+ * per-process files are opened relative to a cached /proc
+ * descriptor, which spares the kernel a lookup of "/proc"
+ * for every file of every process in a scan.
+ */
+static int proc_dirfd_get(sigar_t *sigar)
+{
+    if (sigar->proc_dirfd < 0) {
+        sigar->proc_dirfd = open(PROCP_FS_ROOT, O_RDONLY);
+        if (sigar->proc_dirfd >= 0) {
+            fcntl(sigar->proc_dirfd, F_SETFD, FD_CLOEXEC);
+        }
+    }
+    return sigar->proc_dirfd;
+}
+
+#ifdef AT_FDCWD
+/* "<pid><fname>", relative to proc_dirfd */
+static char *proc_relname(char *buffer, int buflen,
+                          sigar_pid_t pid, const char *fname)
+{
+    int len = 0, fname_len = strlen(fname);
+    char pid_buf[UITOA_BUFFER_SIZE];
+    char *pid_str = sigar_uitoa(pid_buf, (unsigned int)pid, &len);
+
+    memcpy(buffer, pid_str, len);
+    memcpy(buffer + len, fname, fname_len + 1);
+
+    return buffer;
+}
+#endif
+
+static int proc_open(sigar_t *sigar, sigar_pid_t pid,
+                     const char *fname)
+{
+    char name[BUFSIZ];
+#ifdef AT_FDCWD
+    int dirfd = proc_dirfd_get(sigar);
+
+    if (dirfd >= 0) {
+        return openat(dirfd,
+                      proc_relname(name, sizeof(name), pid, fname),
+                      O_RDONLY);
+    }
+#endif
+    return open(sigar_proc_filename(name, sizeof(name), pid,
+                                    fname, strlen(fname)),
+                O_RDONLY);
+}
+
+static int proc_readlink(sigar_t *sigar, sigar_pid_t pid,
+                         const char *fname, char *buf, int buflen)
+{
+    char name[BUFSIZ];
+#ifdef AT_FDCWD
+    int dirfd = proc_dirfd_get(sigar);
+
+    if (dirfd >= 0) {
+        return readlinkat(dirfd,
+                          proc_relname(name, sizeof(name), pid, fname),
+                          buf, buflen);
+    }
+#endif
+    return readlink(sigar_proc_filename(name, sizeof(name), pid,
+                                        fname, strlen(fname)),
+                    buf, buflen);
+}
+
+/* same contract as sigar_proc_file2str, via proc_open */
+static int proc_file2str(sigar_t *sigar, char *buffer, int buflen,
+                         sigar_pid_t pid, const char *fname)
+{
+    int fd, len;
+
+    if ((fd = proc_open(sigar, pid, fname)) < 0) {
+        return (errno == ENOENT) ? ESRCH : errno;
+    }
+
+    do {
+        len = read(fd, buffer, buflen - 1);
+    } while ((len < 0) && (errno == EINTR));
+
+    if (len < 0) {
+        int status = errno;
+        close(fd);
+        return status;
+    }
+
+    buffer[len] = '\0';
+    close(fd);
+
+    return SIGAR_OK;
+}
+
+#define PROC_FILE2STR(buffer, pid, fname) \
+    proc_file2str(sigar, buffer, sizeof(buffer), pid, fname)
+
 int sigar_os_open(sigar_t **sigar)
 {
     int i, status;
@@ -178,10 +346,32 @@ int sigar_os_open(sigar_t **sigar)
 
     (*sigar)->proc_signal_offset = -1;
 
-    (*sigar)->last_proc_stat.pid = -1;
+    (*sigar)->proc_stat = NULL;
+    (*sigar)->proc_stat_gen = 0;
+    (*sigar)->proc_stat_sweep = 0;
 
     (*sigar)->lcpu = -1;
 
+    for (i=0; i<PROC_FD_MAX; i++) {
+        (*sigar)->proc_fd[i] = -1;
+    }
+    (*sigar)->proc_buf = NULL;
+    (*sigar)->proc_buflen = 0;
+    (*sigar)->proc_dirfd = -1;
+
+    (*sigar)->proc_cn_fd = -1;
+    (*sigar)->proc_cn_list = getenv("SIGAR_PROC_CONNECTOR") ? 1 : 0;
+    (*sigar)->proc_cn_state =
+        (*sigar)->proc_cn_list ? PROC_CN_WANTED : PROC_CN_OFF;
+    (*sigar)->proc_cn_error = SIGAR_OK;
+    (*sigar)->proc_cn_pids = NULL;
+    (*sigar)->proc_cn_events = NULL;
+
+    (*sigar)->socket_inodes = NULL;
+    (*sigar)->socket_inodes_time = 0;
+
+    (*sigar)->net_diag_fd = -1;
+
     if (stat(PROC_DISKSTATS, &sb) == 0) {
         (*sigar)->iostat = IOSTAT_DISKSTATS;
     }
@@ -213,8 +403,40 @@ int sigar_os_open(sigar_t **sigar)
     return SIGAR_OK;
 }
 
+static int proc_cn_close(sigar_t *sigar, int status);
+
 int sigar_os_close(sigar_t *sigar)
 {
+    int i;
+
+    for (i=0; i<PROC_FD_MAX; i++) {
+        if (sigar->proc_fd[i] >= 0) {
+            close(sigar->proc_fd[i]);
+        }
+    }
+    if (sigar->proc_buf) {
+        free(sigar->proc_buf);
+    }
+    if (sigar->proc_dirfd >= 0) {
+        close(sigar->proc_dirfd);
+    }
+    proc_cn_close(sigar, SIGAR_OK);
+    if (sigar->proc_cn_pids) {
+        sigar_cache_destroy(sigar->proc_cn_pids);
+    }
+    if (sigar->socket_inodes) {
+        sigar_cache_destroy(sigar->socket_inodes);
+    }
+    if (sigar->net_diag_fd >= 0) {
+        close(sigar->net_diag_fd);
+    }
+    if (sigar->proc_cn_events) {
+        sigar_proc_event_list_destroy(sigar, sigar->proc_cn_events);
+        free(sigar->proc_cn_events);
+    }
+    if (sigar->proc_stat) {
+        sigar_cache_destroy(sigar->proc_stat);
+    }
     free(sigar);
     return SIGAR_OK;
 }
@@ -323,10 +545,9 @@ static SIGAR_INLINE sigar_uint64_t sigar_meminfo(char *buffer,
 int sigar_mem_get(sigar_t *sigar, sigar_mem_t *mem)
 {
     sigar_uint64_t buffers, cached, kern;
-    char buffer[BUFSIZ];
+    char *buffer;
 
-    int status = sigar_file2str(PROC_MEMINFO,
-                                buffer, sizeof(buffer));
+    int status = sigar_proc_fd_read(sigar, PROC_FD_MEMINFO, &buffer);
 
     if (status != SIGAR_OK) {
         return status;
@@ -357,15 +578,14 @@ int sigar_swap_get(sigar_t *sigar, sigar_swap_t *swap)
     char buffer[BUFSIZ], *ptr;
 
     /* XXX: we open/parse the same file here as sigar_mem_get */
-    int status = sigar_file2str(PROC_MEMINFO,
-                                buffer, sizeof(buffer));
+    int status = sigar_proc_fd_read(sigar, PROC_FD_MEMINFO, &ptr);
 
     if (status != SIGAR_OK) {
         return status;
     }
 
-    swap->total  = sigar_meminfo(buffer, MEMINFO_PARAM("SwapTotal"));
-    swap->free   = sigar_meminfo(buffer, MEMINFO_PARAM("SwapFree"));
+    swap->total  = sigar_meminfo(ptr, MEMINFO_PARAM("SwapTotal"));
+    swap->free   = sigar_meminfo(ptr, MEMINFO_PARAM("SwapFree"));
     swap->used   = swap->total - swap->free;
 
     swap->page_in = swap->page_out = -1;
@@ -384,13 +604,12 @@ int sigar_swap_get(sigar_t *sigar, sigar_swap_t *swap)
     }
     else {
         /* 2.2, 2.4 kernels */
-        status = sigar_file2str(PROC_STAT,
-                                buffer, sizeof(buffer));
+        status = sigar_proc_fd_read(sigar, PROC_FD_STAT, &ptr);
         if (status != SIGAR_OK) {
             return status;
         }
 
-        if ((ptr = strstr(buffer, "\nswap"))) {
+        if ((ptr = strstr(ptr, "\nswap"))) {
             ptr = sigar_skip_token(ptr);
             swap->page_in = sigar_strtoull(ptr);
             swap->page_out = sigar_strtoull(ptr);
@@ -425,8 +644,8 @@ static void get_cpu_metrics(sigar_t *sigar, sigar_cpu_t *cpu, char *line)
 
 int sigar_cpu_get(sigar_t *sigar, sigar_cpu_t *cpu)
 {
-    char buffer[BUFSIZ];
-    int status = sigar_file2str(PROC_STAT, buffer, sizeof(buffer));
+    char *buffer;
+    int status = sigar_proc_fd_read(sigar, PROC_FD_STAT, &buffer);
 
     if (status != SIGAR_OK) {
         return status;
@@ -440,22 +659,22 @@ int sigar_cpu_get(sigar_t *sigar, sigar_cpu_t *cpu)
 
 int sigar_cpu_list_get(sigar_t *sigar, sigar_cpu_list_t *cpulist)
 {
-    FILE *fp;
-    char buffer[BUFSIZ], cpu_total[BUFSIZ], *ptr;
+    char *cpu_total, *ptr;
     int core_rollup = sigar_cpu_core_rollup(sigar), i=0;
     sigar_cpu_t *cpu;
+    int status = sigar_proc_fd_read(sigar, PROC_FD_STAT, &cpu_total);
 
-    if (!(fp = fopen(PROC_STAT, "r"))) {
-        return errno;
+    if (status != SIGAR_OK) {
+        return status;
     }
 
     /* skip first line */
-    (void)fgets(cpu_total, sizeof(cpu_total), fp);
+    ptr = proc_next_line(cpu_total);
 
     sigar_cpu_list_create(cpulist);
 
     /* XXX: merge times of logical processors if hyperthreading */
-    while ((ptr = fgets(buffer, sizeof(buffer), fp))) {
+    for (; *ptr; ptr = proc_next_line(ptr)) {
         if (!strnEQ(ptr, "cpu", 3)) {
             break;
         }
@@ -475,8 +694,6 @@ int sigar_cpu_list_get(sigar_t *sigar, sigar_cpu_list_t *cpulist)
         i++;
     }
 
-    fclose(fp);
-
     if (cpulist->number == 0) {
         /* likely older kernel where cpu\d is not present */
         cpu = &cpulist->data[cpulist->number++];
@@ -490,8 +707,8 @@ int sigar_cpu_list_get(sigar_t *sigar, sigar_cpu_list_t *cpulist)
 int sigar_uptime_get(sigar_t *sigar,
                      sigar_uptime_t *uptime)
 {
-    char buffer[BUFSIZ], *ptr = buffer;
-    int status = sigar_file2str(PROC_UPTIME, buffer, sizeof(buffer));
+    char *buffer, *ptr;
+    int status = sigar_proc_fd_read(sigar, PROC_FD_UPTIME, &buffer);
 
     if (status != SIGAR_OK) {
         return status;
@@ -505,8 +722,8 @@ int sigar_uptime_get(sigar_t *sigar,
 int sigar_loadavg_get(sigar_t *sigar,
                       sigar_loadavg_t *loadavg)
 {
-    char buffer[BUFSIZ], *ptr = buffer;
-    int status = sigar_file2str(PROC_LOADAVG, buffer, sizeof(buffer));
+    char *buffer, *ptr;
+    int status = sigar_proc_fd_read(sigar, PROC_FD_LOADAVG, &buffer);
 
     if (status != SIGAR_OK) {
         return status;
@@ -599,14 +816,141 @@ static SIGAR_INLINE int proc_isthread(sigar_t *sigar, char *pidstr, int len)
     return 1;
 }
 
-int sigar_os_proc_list_get(sigar_t *sigar,
-                           sigar_proc_list_t *proclist)
+typedef struct {
+    time_t timenow;
+    unsigned int generation;
+} proc_stat_sweep_t;
+
+static int proc_stat_stale(void *data, sigar_cache_entry_t *entry)
+{
+    proc_stat_sweep_t *sweep = (proc_stat_sweep_t *)data;
+    linux_proc_stat_t *pstat = (linux_proc_stat_t *)entry->value;
+
+    return
+        !pstat ||
+        ((pstat->generation + 1) < sweep->generation) ||
+        ((sweep->timenow - pstat->mtime) >= SIGAR_LAST_PROC_EXPIRE);
+}
+
+/* drop entries not used in this or the previous collection cycle */
+static void proc_stat_sweep(sigar_t *sigar, time_t timenow)
+{
+    proc_stat_sweep_t sweep;
+
+    sweep.timenow = timenow;
+    sweep.generation = sigar->proc_stat_gen;
+    sigar_cache_sweep(sigar->proc_stat, proc_stat_stale, &sweep);
+
+    sigar->proc_stat_sweep = sigar->proc_stat->count * 2;
+    if (sigar->proc_stat_sweep < 256) {
+        sigar->proc_stat_sweep = 256;
+    }
+}
+
+static void proc_stat_generation(sigar_t *sigar)
+{
+    sigar->proc_stat_gen++;
+    if (sigar->proc_stat) {
+        proc_stat_sweep(sigar, time(NULL));
+    }
+}
+
+#ifdef SYS_getdents64
+/* glibc does not export this one */
+struct linux_dirent64 {
+    sigar_uint64_t d_ino;
+    sigar_int64_t d_off;
+    unsigned short d_reclen;
+    unsigned char d_type;
+    char d_name[1];
+};
+
+#define PROC_DENTS_SIZE (64 * 1024)
+
+/*
+ * read /proc with large getdents64() batches on the cached
+ * proc_dirfd rather than opendir/readdir per listing.
+ * pids are parsed in place, non-numeric entries skipped.
+ */
+static int proc_list_getdents(sigar_t *sigar,
+                              sigar_proc_list_t *proclist)
+{
+    int dirfd = proc_dirfd_get(sigar);
+    char *buf;
+    long nread;
+    int status = SIGAR_OK;
+
+    if (dirfd < 0) {
+        return errno;
+    }
+
+    if (lseek(dirfd, 0, SEEK_SET) < 0) {
+        return errno;
+    }
+
+    if (!(buf = malloc(PROC_DENTS_SIZE))) {
+        return ENOMEM;
+    }
+
+    while ((nread = syscall(SYS_getdents64, dirfd,
+                            buf, PROC_DENTS_SIZE)) != 0)
+    {
+        long pos = 0;
+
+        if (nread < 0) {
+            if (errno == EINTR) {
+                continue;
+            }
+            status = errno;
+            break;
+        }
+
+        while (pos < nread) {
+            struct linux_dirent64 *ent =
+                (struct linux_dirent64 *)(buf + pos);
+            char *name = ent->d_name;
+            sigar_pid_t pid = 0;
+
+            pos += ent->d_reclen;
+
+            if (!sigar_isdigit(*name)) {
+                continue;
+            }
+
+            while (sigar_isdigit(*name)) {
+                pid = (pid * 10) + (*name++ - '0');
+            }
+
+            SIGAR_PROC_LIST_GROW(proclist);
+
+            proclist->data[proclist->number++] = pid;
+        }
+    }
+
+    free(buf);
+
+    return status;
+}
+#endif
+
+/* full scan of /proc */
+static int proc_list_scan(sigar_t *sigar,
+                          sigar_proc_list_t *proclist)
 {
-    DIR *dirp = opendir(PROCP_FS_ROOT);
+    DIR *dirp;
     struct dirent *ent, dbuf;
     register const int threadbadhack = !sigar->has_nptl;
 
-    if (!dirp) {
+#ifdef SYS_getdents64
+    if (!threadbadhack) {
+        if (proc_list_getdents(sigar, proclist) == SIGAR_OK) {
+            return SIGAR_OK;
+        }
+        proclist->number = 0; /* start over with readdir */
+    }
+#endif
+
+    if (!(dirp = opendir(PROCP_FS_ROOT))) {
         return errno;
     }
 
@@ -642,31 +986,434 @@ int sigar_os_proc_list_get(sigar_t *sigar,
     return SIGAR_OK;
 }
 
-static int proc_stat_read(sigar_t *sigar, sigar_pid_t pid)
+/*
+ * optional event driven process list, enabled per sigar_t by
+ * sigar_proc_event_list_get() or for process listing by setting
+ * SIGAR_PROC_CONNECTOR in the environment.  the kernel proc
+ * connector pushes fork/exec/exit events, so the pid set is kept
+ * current at the cost of the changes rather than a /proc scan.
+ * subscribing requires CAP_NET_ADMIN in the initial namespaces,
+ * otherwise process listing keeps scanning /proc.
+ * note that exited processes drop out of the set right away,
+ * where a scan still lists them until they are reaped, so zombies
+ * are not counted.  only SIGAR_PROC_CONNECTOR makes listing use
+ * the set, subscribing to events alone keeps scanning /proc.
+ */
+#include <poll.h>
+#include <sys/socket.h>
+#include <linux/netlink.h>
+#include <linux/connector.h>
+#include <linux/cn_proc.h>
+
+#define PROC_CN_BUFSIZE 8192
+
+/* wait this long for the kernel to ack a subscription */
+#define PROC_CN_ACK_TIMEOUT 250
+
+/* pending events kept for sigar_proc_event_list_get */
+#define PROC_CN_EVENTS_MAX (64 * 1024)
+
+static int proc_cn_recvmsg(int fd, long *buf, int timeout)
+{
+    struct sockaddr_nl from;
+    socklen_t fromlen;
+    int len;
+
+    if (timeout) {
+        struct pollfd pfd;
+
+        pfd.fd = fd;
+        pfd.events = POLLIN;
+
+        while ((len = poll(&pfd, 1, timeout)) < 0) {
+            if (errno != EINTR) {
+                return -1;
+            }
+        }
+        if (len == 0) {
+            errno = EAGAIN;
+            return -1;
+        }
+    }
+
+    do {
+        fromlen = sizeof(from);
+        len = recvfrom(fd, buf, PROC_CN_BUFSIZE, MSG_DONTWAIT,
+                       (struct sockaddr *)&from, &fromlen);
+    } while ((len < 0) && (errno == EINTR));
+
+    if ((len > 0) && (from.nl_pid != 0)) {
+        len = 0; /* not from the kernel, ignore */
+    }
+
+    return len;
+}
+
+/* the proc_event of a connector message, NULL if not one */
+static struct proc_event *proc_cn_msg_event(struct nlmsghdr *nlh)
+{
+    struct cn_msg *msg;
+
+    if ((nlh->nlmsg_type == NLMSG_NOOP) ||
+        (nlh->nlmsg_type == NLMSG_ERROR))
+    {
+        return NULL;
+    }
+
+    msg = (struct cn_msg *)NLMSG_DATA(nlh);
+
+    if ((msg->id.idx != CN_IDX_PROC) ||
+        (msg->id.val != CN_VAL_PROC))
+    {
+        return NULL;
+    }
+
+    return (struct proc_event *)msg->data;
+}
+
+static int proc_cn_mcast(int fd, enum proc_cn_mcast_op op)
+{
+    long buf[NLMSG_SPACE(sizeof(struct cn_msg) + sizeof(op)) /
+             sizeof(long) + 1];
+    struct nlmsghdr *nlh = (struct nlmsghdr *)buf;
+    struct cn_msg *msg = (struct cn_msg *)NLMSG_DATA(nlh);
+
+    memset(buf, 0, NLMSG_SPACE(sizeof(*msg) + sizeof(op)));
+    nlh->nlmsg_len = NLMSG_LENGTH(sizeof(*msg) + sizeof(op));
+    nlh->nlmsg_type = NLMSG_DONE;
+    nlh->nlmsg_pid = getpid();
+    msg->id.idx = CN_IDX_PROC;
+    msg->id.val = CN_VAL_PROC;
+    msg->len = sizeof(op);
+    memcpy(msg->data, &op, sizeof(op));
+
+    if (send(fd, nlh, nlh->nlmsg_len, 0) < 0) {
+        return errno;
+    }
+
+    return SIGAR_OK;
+}
+
+static int proc_cn_listen(int fd)
+{
+    long buf[PROC_CN_BUFSIZE / sizeof(long)];
+    struct nlmsghdr *nlh;
+    int len, status;
+
+    if ((status = proc_cn_mcast(fd, PROC_CN_MCAST_LISTEN)) != SIGAR_OK) {
+        return status;
+    }
+
+    /*
+     * the kernel ignores requests from outside the initial pid and
+     * user namespaces without an ack, events would never arrive.
+     */
+    while ((len = proc_cn_recvmsg(fd, buf, PROC_CN_ACK_TIMEOUT)) >= 0) {
+        for (nlh = (struct nlmsghdr *)buf;
+             NLMSG_OK(nlh, len);
+             nlh = NLMSG_NEXT(nlh, len))
+        {
+            struct proc_event *ev = proc_cn_msg_event(nlh);
+
+            if (ev && (ev->what == PROC_EVENT_NONE)) {
+                return ev->event_data.ack.err;
+            }
+        }
+    }
+
+    return (errno == EAGAIN) ? SIGAR_ENOTIMPL : errno;
+}
+
+/* sweep callback deleting every entry */
+static int proc_cache_clear(void *data, sigar_cache_entry_t *entry)
+{
+    return 1;
+}
+
+static int proc_cn_add(void *data, sigar_cache_entry_t *entry)
+{
+    sigar_proc_list_t *proclist = (sigar_proc_list_t *)data;
+
+    SIGAR_PROC_LIST_GROW(proclist);
+
+    proclist->data[proclist->number++] = (sigar_pid_t)entry->id;
+
+    return 0;
+}
+
+/* seed the pid set, or start over after the socket overran */
+static int proc_cn_rescan(sigar_t *sigar)
+{
+    sigar_proc_list_t pids;
+    unsigned long i;
+    int status;
+
+    sigar_proc_list_create(&pids);
+
+    status = proc_list_scan(sigar, &pids);
+
+    if (status == SIGAR_OK) {
+        sigar_cache_sweep(sigar->proc_cn_pids, proc_cache_clear, NULL);
+
+        for (i=0; i<pids.number; i++) {
+            sigar_cache_get(sigar->proc_cn_pids, pids.data[i]);
+        }
+    }
+
+    sigar_proc_list_destroy(sigar, &pids);
+
+    return status;
+}
+
+static int proc_cn_close(sigar_t *sigar, int status)
+{
+    if (sigar->proc_cn_fd >= 0) {
+        if (sigar->proc_cn_state == PROC_CN_ACTIVE) {
+            /*
+             * before 6.6 the kernel counts listeners globally and
+             * does not decrement the count when the socket is closed,
+             * events would be generated for every process forever.
+             */
+            proc_cn_mcast(sigar->proc_cn_fd, PROC_CN_MCAST_IGNORE);
+        }
+        close(sigar->proc_cn_fd);
+        sigar->proc_cn_fd = -1;
+    }
+
+    sigar->proc_cn_state = PROC_CN_FAILED;
+    sigar->proc_cn_error = status;
+
+    return status;
+}
+
+static int proc_cn_open(sigar_t *sigar)
+{
+    struct sockaddr_nl addr;
+    int status;
+
+    sigar->proc_cn_fd = socket(PF_NETLINK, SOCK_DGRAM, NETLINK_CONNECTOR);
+
+    if (sigar->proc_cn_fd < 0) {
+        return proc_cn_close(sigar, errno);
+    }
+
+    fcntl(sigar->proc_cn_fd, F_SETFD, FD_CLOEXEC);
+
+    memset(&addr, 0, sizeof(addr));
+    addr.nl_family = AF_NETLINK;
+    addr.nl_groups = CN_IDX_PROC;
+
+    if (bind(sigar->proc_cn_fd,
+             (struct sockaddr *)&addr, sizeof(addr)) < 0)
+    {
+        return proc_cn_close(sigar, errno);
+    }
+
+    if ((status = proc_cn_listen(sigar->proc_cn_fd)) != SIGAR_OK) {
+        return proc_cn_close(sigar, status);
+    }
+
+    /* subscribed, proc_cn_close unsubscribes from here on */
+    sigar->proc_cn_state = PROC_CN_ACTIVE;
+
+    if (!sigar->proc_cn_pids) {
+        sigar->proc_cn_pids = sigar_cache_new(1024);
+    }
+
+    /* subscribed before the scan, so no event falls in between */
+    if ((status = proc_cn_rescan(sigar)) != SIGAR_OK) {
+        return proc_cn_close(sigar, status);
+    }
+
+    return SIGAR_OK;
+}
+
+static void proc_cn_event(sigar_t *sigar, struct proc_event *ev)
+{
+    sigar_proc_event_t event;
+    sigar_proc_event_list_t *events = sigar->proc_cn_events;
+
+    event.ppid = 0;
+    event.exit_code = 0;
+
+    switch (ev->what) {
+      case PROC_EVENT_FORK:
+        if (ev->event_data.fork.child_pid !=
+            ev->event_data.fork.child_tgid)
+        {
+            return; /* new thread */
+        }
+        event.type = SIGAR_PROC_EVENT_FORK;
+        event.pid = ev->event_data.fork.child_tgid;
+        event.ppid = ev->event_data.fork.parent_tgid;
+        sigar_cache_get(sigar->proc_cn_pids, event.pid);
+        break;
+      case PROC_EVENT_EXEC:
+        event.type = SIGAR_PROC_EVENT_EXEC;
+        event.pid = ev->event_data.exec.process_tgid;
+        sigar_cache_get(sigar->proc_cn_pids, event.pid);
+        break;
+      case PROC_EVENT_EXIT:
+        if (ev->event_data.exit.process_pid !=
+            ev->event_data.exit.process_tgid)
+        {
+            return; /* thread exit */
+        }
+        event.type = SIGAR_PROC_EVENT_EXIT;
+        event.pid = ev->event_data.exit.process_tgid;
+        event.exit_code = ev->event_data.exit.exit_code;
+        sigar_cache_delete(sigar->proc_cn_pids, event.pid);
+        if (sigar->proc_stat) {
+            sigar_cache_delete(sigar->proc_stat, event.pid);
+        }
+        break;
+      default:
+        return;
+    }
+
+    if (events && (events->number < PROC_CN_EVENTS_MAX)) {
+        SIGAR_PROC_EVENT_LIST_GROW(events);
+        events->data[events->number++] = event;
+    }
+}
+
+/* apply pending events, waiting up to timeout millis for the first */
+static int proc_cn_recv(sigar_t *sigar, int timeout)
+{
+    long buf[PROC_CN_BUFSIZE / sizeof(long)];
+    int len, status;
+
+    while (1) {
+        struct nlmsghdr *nlh = (struct nlmsghdr *)buf;
+
+        len = proc_cn_recvmsg(sigar->proc_cn_fd, buf, timeout);
+        timeout = 0;
+
+        if (len < 0) {
+            if (errno == EAGAIN) {
+                return SIGAR_OK;
+            }
+            if (errno != ENOBUFS) {
+                return errno;
+            }
+            /* socket overran, events were dropped */
+            if ((status = proc_cn_rescan(sigar)) != SIGAR_OK) {
+                return status;
+            }
+            continue;
+        }
+
+        for (; NLMSG_OK(nlh, len); nlh = NLMSG_NEXT(nlh, len)) {
+            struct proc_event *ev = proc_cn_msg_event(nlh);
+
+            if (ev) {
+                proc_cn_event(sigar, ev);
+            }
+        }
+    }
+}
+
+int sigar_os_proc_event_list_get(sigar_t *sigar,
+                                 sigar_proc_event_list_t *events,
+                                 int timeout)
+{
+    sigar_proc_event_list_t pending;
+    int status;
+
+    if (sigar->proc_cn_state == PROC_CN_FAILED) {
+        return sigar->proc_cn_error;
+    }
+
+    if (sigar->proc_cn_state != PROC_CN_ACTIVE) {
+        if ((status = proc_cn_open(sigar)) != SIGAR_OK) {
+            return status;
+        }
+    }
+
+    if (!sigar->proc_cn_events) {
+        sigar->proc_cn_events = malloc(sizeof(*sigar->proc_cn_events));
+        sigar_proc_event_list_create(sigar->proc_cn_events);
+    }
+
+    status = proc_cn_recv(sigar,
+                          sigar->proc_cn_events->number ? 0 : timeout);
+
+    if (status != SIGAR_OK) {
+        return proc_cn_close(sigar, status);
+    }
+
+    /* hand over the pending events, keep the empty list */
+    pending = *sigar->proc_cn_events;
+    *sigar->proc_cn_events = *events;
+    *events = pending;
+
+    return SIGAR_OK;
+}
+
+int sigar_os_proc_list_get(sigar_t *sigar,
+                           sigar_proc_list_t *proclist)
+{
+    /* listing processes starts a new collection cycle */
+    proc_stat_generation(sigar);
+
+    if (sigar->proc_cn_state == PROC_CN_WANTED) {
+        proc_cn_open(sigar);
+    }
+
+    if (sigar->proc_cn_list && (sigar->proc_cn_state == PROC_CN_ACTIVE)) {
+        int status = proc_cn_recv(sigar, 0);
+
+        if (status == SIGAR_OK) {
+            sigar_cache_sweep(sigar->proc_cn_pids, proc_cn_add, proclist);
+            return SIGAR_OK;
+        }
+
+        proc_cn_close(sigar, status);
+    }
+
+    return proc_list_scan(sigar, proclist);
+}
+
+/*
+ * short-lived cache read/parse of /proc/pid/stat
+ * as this info is spread out across a few functions.
+ * each file is read at most once per collection cycle,
+ * which starts when the process list is read, and
+ * at most every SIGAR_LAST_PROC_EXPIRE seconds.
+ */
+static int proc_stat_read(sigar_t *sigar, sigar_pid_t pid,
+                          linux_proc_stat_t **pstat_ptr)
 {
     char buffer[BUFSIZ], *ptr=buffer, *tmp;
     unsigned int len;
-    linux_proc_stat_t *pstat = &sigar->last_proc_stat;
+    sigar_cache_entry_t *entry;
+    linux_proc_stat_t *pstat;
     int status;
 
     time_t timenow = time(NULL);
 
-    /* 
-     * short-lived cache read/parse of last /proc/pid/stat
-     * as this info is spread out across a few functions.
-     */
-    if (pstat->pid == pid) {
-        if ((timenow - pstat->mtime) < SIGAR_LAST_PROC_EXPIRE) {
+    if (!sigar->proc_stat) {
+        sigar->proc_stat = sigar_cache_new(256);
+        sigar->proc_stat_sweep = 256;
+    }
+
+    entry = sigar_cache_find(sigar->proc_stat, pid);
+    if (entry) {
+        pstat = (linux_proc_stat_t *)entry->value;
+        if ((pstat->generation == sigar->proc_stat_gen) &&
+            ((timenow - pstat->mtime) < SIGAR_LAST_PROC_EXPIRE))
+        {
+            *pstat_ptr = pstat;
             return SIGAR_OK;
         }
     }
 
-    pstat->pid = pid;
-    pstat->mtime = timenow;
-
-    status = SIGAR_PROC_FILE2STR(buffer, pid, PROC_PSTAT);
+    status = PROC_FILE2STR(buffer, pid, PROC_PSTAT);
 
     if (status != SIGAR_OK) {
+        if (entry) {
+            sigar_cache_delete(sigar->proc_stat, pid);
+        }
         return status;
     }
 
@@ -676,6 +1423,21 @@ static int proc_stat_read(sigar_t *sigar, sigar_pid_t pid)
     if (!(tmp = strrchr(++ptr, ')'))) {
         return EINVAL;
     }
+
+    if (!entry) {
+        if (sigar->proc_stat->count >= sigar->proc_stat_sweep) {
+            proc_stat_sweep(sigar, timenow);
+        }
+        entry = sigar_cache_get(sigar->proc_stat, pid);
+        entry->value = malloc(sizeof(*pstat));
+    }
+
+    pstat = (linux_proc_stat_t *)entry->value;
+    pstat->pid = pid;
+    pstat->mtime = timenow;
+    pstat->generation = sigar->proc_stat_gen;
+    *pstat_ptr = pstat;
+
     len = tmp-ptr;
 
     if (len >= sizeof(pstat->name)) {
@@ -712,7 +1474,7 @@ static int proc_stat_read(sigar_t *sigar, sigar_pid_t pid)
     pstat->priority = sigar_strtoul(ptr); /* (18) */
     pstat->nice     = sigar_strtoul(ptr); /* (19) */
 
-    ptr = sigar_skip_token(ptr); /* (20) timeout */
+    pstat->threads  = sigar_strtoul(ptr); /* (20) 2.6+, 0 on 2.4 */
     ptr = sigar_skip_token(ptr); /* (21) it_real_value */
 
     pstat->start_time  = sigar_strtoul(ptr); /* (22) */
@@ -747,15 +1509,19 @@ int sigar_proc_mem_get(sigar_t *sigar, sigar_pid_t pid,
                        sigar_proc_mem_t *procmem)
 {
     char buffer[BUFSIZ], *ptr=buffer;
-    int status = proc_stat_read(sigar, pid);
-    linux_proc_stat_t *pstat = &sigar->last_proc_stat;
+    linux_proc_stat_t *pstat;
+    int status = proc_stat_read(sigar, pid, &pstat);
+
+    if (status != SIGAR_OK) {
+        return status;
+    }
 
     procmem->minor_faults = pstat->minor_faults;
     procmem->major_faults = pstat->major_faults;
     procmem->page_faults =
         procmem->minor_faults + procmem->major_faults;
     
-    status = SIGAR_PROC_FILE2STR(buffer, pid, "/statm");
+    status = PROC_FILE2STR(buffer, pid, "/statm");
 
     if (status != SIGAR_OK) {
         return status;
@@ -774,7 +1540,7 @@ int sigar_proc_cred_get(sigar_t *sigar, sigar_pid_t pid,
                         sigar_proc_cred_t *proccred)
 {
     char buffer[BUFSIZ], *ptr;
-    int status = SIGAR_PROC_FILE2STR(buffer, pid, PROC_PSTATUS);
+    int status = PROC_FILE2STR(buffer, pid, PROC_PSTATUS);
 
     if (status != SIGAR_OK) {
         return status;
@@ -810,8 +1576,8 @@ int sigar_proc_cred_get(sigar_t *sigar, sigar_pid_t pid,
 int sigar_proc_time_get(sigar_t *sigar, sigar_pid_t pid,
                         sigar_proc_time_t *proctime)
 {
-    int status = proc_stat_read(sigar, pid);
-    linux_proc_stat_t *pstat = &sigar->last_proc_stat;
+    linux_proc_stat_t *pstat;
+    int status = proc_stat_read(sigar, pid, &pstat);
 
     if (status != SIGAR_OK) {
         return status;
@@ -829,7 +1595,7 @@ static int proc_status_get(sigar_t *sigar, sigar_pid_t pid,
                            sigar_proc_state_t *procstate)
 {
     char buffer[BUFSIZ], *ptr;
-    int status = SIGAR_PROC_FILE2STR(buffer, pid, PROC_PSTATUS);
+    int status = PROC_FILE2STR(buffer, pid, PROC_PSTATUS);
 
     if (status != SIGAR_OK) {
         return status;
@@ -851,8 +1617,8 @@ static int proc_status_get(sigar_t *sigar, sigar_pid_t pid,
 int sigar_proc_state_get(sigar_t *sigar, sigar_pid_t pid,
                          sigar_proc_state_t *procstate)
 {
-    int status = proc_stat_read(sigar, pid);
-    linux_proc_stat_t *pstat = &sigar->last_proc_stat;
+    linux_proc_stat_t *pstat;
+    int status = proc_stat_read(sigar, pid, &pstat);
 
     if (status != SIGAR_OK) {
         return status;
@@ -876,6 +1642,114 @@ int sigar_proc_state_get(sigar_t *sigar, sigar_pid_t pid,
     return SIGAR_OK;
 }
 
+/*
+ * single pass over /proc/<pid>/stat, which also carries the thread
+ * count, rather than sigar_proc_state_get's extra read of status.
+ */
+int sigar_proc_stat_get(sigar_t *sigar,
+                        sigar_proc_stat_t *procstat)
+{
+    int status, i;
+    sigar_proc_list_t *pids;
+
+    SIGAR_ZERO(procstat);
+
+    if ((status = sigar_proc_list_get(sigar, NULL)) != SIGAR_OK) {
+        return status;
+    }
+
+    pids = sigar->pids;
+    procstat->total = pids->number;
+
+    for (i=0; i<pids->number; i++) {
+        linux_proc_stat_t *pstat;
+
+        status = proc_stat_read(sigar, pids->data[i], &pstat);
+        if (status != SIGAR_OK) {
+            continue;
+        }
+
+        if (pstat->threads > 0) {
+            procstat->threads += pstat->threads;
+        }
+        else {
+            procstat->threads++; /* 2.4 kernel, one task per pid */
+        }
+
+        switch (pstat->state) {
+          case SIGAR_PROC_STATE_IDLE:
+            procstat->idle++;
+            break;
+          case SIGAR_PROC_STATE_RUN:
+            procstat->running++;
+            break;
+          case SIGAR_PROC_STATE_SLEEP:
+            procstat->sleeping++;
+            break;
+          case SIGAR_PROC_STATE_STOP:
+            procstat->stopped++;
+            break;
+          case SIGAR_PROC_STATE_ZOMBIE:
+            procstat->zombie++;
+            break;
+          default:
+            break;
+        }
+    }
+
+    return SIGAR_OK;
+}
+
+/*
+ * running and blocked ('D', counted as idle) come from /proc/stat
+ * and the thread count from /proc/loadavg, e.g. "... 2/345 12345".
+ * both count threads rather than processes.
+ */
+int sigar_proc_stat_summary_get(sigar_t *sigar,
+                                sigar_proc_stat_t *procstat)
+{
+    char *buffer, *ptr;
+    int status;
+
+    procstat->sleeping = SIGAR_FIELD_NOTIMPL;
+    procstat->stopped  = SIGAR_FIELD_NOTIMPL;
+    procstat->zombie   = SIGAR_FIELD_NOTIMPL;
+    procstat->running  = SIGAR_FIELD_NOTIMPL;
+    procstat->idle     = SIGAR_FIELD_NOTIMPL;
+    procstat->threads  = SIGAR_FIELD_NOTIMPL;
+
+    /* getdents only, or free when the proc connector is active */
+    if ((status = sigar_proc_list_get(sigar, NULL)) != SIGAR_OK) {
+        return status;
+    }
+
+    procstat->total = sigar->pids->number;
+
+    status = sigar_proc_fd_read(sigar, PROC_FD_STAT, &buffer);
+    if (status == SIGAR_OK) {
+        /* 2.6+ kernel */
+        if ((ptr = strstr(buffer, "\nprocs_running"))) {
+            ptr = sigar_skip_token(ptr);
+            procstat->running = sigar_strtoull(ptr);
+        }
+        if ((ptr = strstr(buffer, "\nprocs_blocked"))) {
+            ptr = sigar_skip_token(ptr);
+            procstat->idle = sigar_strtoull(ptr);
+        }
+    }
+
+    status = sigar_proc_fd_read(sigar, PROC_FD_LOADAVG, &buffer);
+    if (status == SIGAR_OK) {
+        ptr = sigar_skip_multiple_token(buffer, 3);
+        if ((ptr = strchr(ptr, '/'))) {
+            ptr++;
+            procstat->threads = sigar_strtoull(ptr);
+        }
+    }
+
+    return SIGAR_OK;
+}
+
 int sigar_os_proc_args_get(sigar_t *sigar, sigar_pid_t pid,
                            sigar_proc_args_t *procargs)
 {
@@ -892,16 +1766,13 @@ int sigar_proc_env_get(sigar_t *sigar, sigar_pid_t pid,
 {
     int fd;
     char buffer[ARG_MAX]; /* XXX: ARG_MAX == 130k */
-    char name[BUFSIZ];
     size_t len;
     char *ptr, *end;
 
     /* optimize if pid == $$ and type == ENV_KEY */
     SIGAR_PROC_ENV_KEY_LOOKUP();
 
-    (void)SIGAR_PROC_FILENAME(name, pid, "/environ");
-
-    if ((fd = open(name, O_RDONLY)) < 0) {
+    if ((fd = proc_open(sigar, pid, "/environ")) < 0) {
         if (errno == ENOENT) {
             return ESRCH;
         }
@@ -959,32 +1830,25 @@ int sigar_proc_exe_get(sigar_t *sigar, sigar_pid_t pid,
                        sigar_proc_exe_t *procexe)
 {
     int len;
-    char name[BUFSIZ];
 
-    (void)SIGAR_PROC_FILENAME(name, pid, "/cwd");
-
-    if ((len = readlink(name, procexe->cwd,
-                        sizeof(procexe->cwd)-1)) < 0)
+    if ((len = proc_readlink(sigar, pid, "/cwd", procexe->cwd,
+                             sizeof(procexe->cwd)-1)) < 0)
     {
         return errno;
     }
 
     procexe->cwd[len] = '\0';
 
-    (void)SIGAR_PROC_FILENAME(name, pid, "/exe");
-
-    if ((len = readlink(name, procexe->name,
-                        sizeof(procexe->name)-1)) < 0)
+    if ((len = proc_readlink(sigar, pid, "/exe", procexe->name,
+                             sizeof(procexe->name)-1)) < 0)
     {
         return errno;
     }
 
     procexe->name[len] = '\0';
 
-    (void)SIGAR_PROC_FILENAME(name, pid, "/root");
-
-    if ((len = readlink(name, procexe->root,
-                        sizeof(procexe->root)-1)) < 0)
+    if ((len = proc_readlink(sigar, pid, "/root", procexe->root,
+                             sizeof(procexe->root)-1)) < 0)
     {
         return errno;
     }
@@ -994,19 +1858,80 @@ int sigar_proc_exe_get(sigar_t *sigar, sigar_pid_t pid,
     return SIGAR_OK;
 }
 
+/*
+ * /proc/<pid>/cgroup has one "hierarchy-ID:controllers:path" line
+ * per hierarchy; use the unified "0::" line if there is one,
+ * else the first hierarchy.
+ */
+int sigar_os_proc_cgroup_get(sigar_t *sigar, sigar_pid_t pid,
+                             char *buf, int buflen)
+{
+    char buffer[BUFSIZ], *ptr = buffer, *path = NULL;
+    int len, status = PROC_FILE2STR(buffer, pid, "/cgroup");
+
+    if (status != SIGAR_OK) {
+        return status;
+    }
+
+    while (*ptr) {
+        char *line = ptr, *end = strchr(ptr, '\n');
+        char *colon;
+
+        if (end) {
+            *end = '\0';
+            ptr = end + 1;
+        }
+        else {
+            ptr += strlen(ptr);
+        }
+
+        if (!(colon = strchr(line, ':')) ||
+            !(colon = strchr(colon + 1, ':')))
+        {
+            continue;
+        }
+
+        if (strnEQ(line, "0::", 3)) {
+            path = colon + 1;
+            break;
+        }
+        if (!path) {
+            path = colon + 1;
+        }
+    }
+
+    if (!path) {
+        return ENOENT;
+    }
+
+    len = strlen(path);
+    if (len >= buflen) {
+        len = buflen - 1;
+    }
+    memcpy(buf, path, len);
+    buf[len] = '\0';
+
+    return SIGAR_OK;
+}
+
 int sigar_proc_modules_get(sigar_t *sigar, sigar_pid_t pid,
                            sigar_proc_modules_t *procmods)
 {
     FILE *fp;
     char buffer[BUFSIZ], *ptr;
     unsigned long inode, last_inode = 0;
+    int fd;
 
-    (void)SIGAR_PROC_FILENAME(buffer, pid, "/maps");
-
-    if (!(fp = fopen(buffer, "r"))) {
+    if ((fd = proc_open(sigar, pid, "/maps")) < 0) {
         return errno;
     }
 
+    if (!(fp = fdopen(fd, "r"))) {
+        int status = errno;
+        close(fd);
+        return status;
+    }
+
     while ((ptr = fgets(buffer, sizeof(buffer), fp))) {
         int len, status;
         /* skip region, flags, offset, dev */
@@ -1408,7 +2333,9 @@ int sigar_disk_usage_get(sigar_t *sigar, const char *name,
         double tput, util;
         sigar_disk_usage_t *partition_usage=NULL;
 
-        sigar_uptime_get(sigar, &uptime);
+        if ((status = sigar_uptime_get(sigar, &uptime)) != SIGAR_OK) {
+            return status;
+        }
 
         if (iodev->is_partition &&
             (sigar->iostat == IOSTAT_DISKSTATS))
@@ -1734,66 +2661,130 @@ int sigar_net_route_list_get(sigar_t *sigar,
     return SIGAR_OK;
 }
 
+/*
+ * advance to the next /proc/net/dev entry, terminating it in place.
+ * returns the counters following the "name:" prefix, NULL at the end.
+ */
+static char *net_dev_next(char **line, char **dev)
+{
+    while (**line) {
+        char *ptr;
+        char *next = proc_next_line(*line);
+
+        if (next[-1] == '\n') {
+            next[-1] = '\0'; /* terminate the line in place */
+        }
+        *dev = *line;
+        *line = next;
+
+        while (isspace(**dev)) {
+            (*dev)++;
+        }
+
+        if (!(ptr = strchr(*dev, ':'))) {
+            continue;
+        }
+
+        *ptr++ = 0;
+
+        return ptr;
+    }
+
+    return NULL;
+}
+
+static void net_dev_stat_parse(sigar_net_interface_stat_t *ifstat,
+                               char *ptr, const char *dev)
+{
+    char speed[32];
+
+    ifstat->rx_bytes    = sigar_strtoull(ptr);
+    ifstat->rx_packets  = sigar_strtoull(ptr);
+    ifstat->rx_errors   = sigar_strtoull(ptr);
+    ifstat->rx_dropped  = sigar_strtoull(ptr);
+    ifstat->rx_overruns = sigar_strtoull(ptr);
+    ifstat->rx_frame    = sigar_strtoull(ptr);
+
+    /* skip: compressed multicast */
+    ptr = sigar_skip_multiple_token(ptr, 2);
+
+    ifstat->tx_bytes      = sigar_strtoull(ptr);
+    ifstat->tx_packets    = sigar_strtoull(ptr);
+    ifstat->tx_errors     = sigar_strtoull(ptr);
+    ifstat->tx_dropped    = sigar_strtoull(ptr);
+    ifstat->tx_overruns   = sigar_strtoull(ptr);
+    ifstat->tx_collisions = sigar_strtoull(ptr);
+    ifstat->tx_carrier    = sigar_strtoull(ptr);
+
+    /* Mb/s, -1 or EINVAL when the link is down or virtual */
+    ifstat->speed = SIGAR_FIELD_NOTIMPL;
+
+    if (strlen(dev) < 16) {
+        char path[sizeof("/sys/class/net//speed") + 16];
+        long mbits;
+
+        sprintf(path, "/sys/class/net/%s/speed", dev);
+
+        if ((sigar_file2str(path, speed, sizeof(speed)) == SIGAR_OK) &&
+            ((mbits = strtol(speed, NULL, 10)) > 0))
+        {
+            ifstat->speed = (sigar_uint64_t)mbits * 1000000;
+        }
+    }
+}
+
 int sigar_net_interface_stat_get(sigar_t *sigar, const char *name,
                                  sigar_net_interface_stat_t *ifstat)
 {
-    int found = 0;
-    char buffer[BUFSIZ];
-    FILE *fp = fopen(PROC_FS_ROOT "net/dev", "r");
-    
-    if (!fp) {
-        return errno;
+    char *line, *ptr, *dev;
+    int status = sigar_proc_fd_read(sigar, PROC_FD_NET_DEV, &line);
+
+    if (status != SIGAR_OK) {
+        return status;
     }
 
     /* skip header */
-    fgets(buffer, sizeof(buffer), fp);
-    fgets(buffer, sizeof(buffer), fp);
-
-    while (fgets(buffer, sizeof(buffer), fp)) {
-        char *ptr, *dev;
+    line = proc_next_line(line);
+    line = proc_next_line(line);
 
-        dev = buffer;
-        while (isspace(*dev)) {
-            dev++;
+    while ((ptr = net_dev_next(&line, &dev))) {
+        if (strEQ(dev, name)) {
+            net_dev_stat_parse(ifstat, ptr, dev);
+            return SIGAR_OK;
         }
+    }
 
-        if (!(ptr = strchr(dev, ':'))) {
-            continue;
-        }
+    return ENXIO;
+}
 
-        *ptr++ = 0;
+SIGAR_DECLARE(int)
+sigar_net_interface_stat_list_get(sigar_t *sigar,
+                                  sigar_net_interface_stat_list_t *statlist)
+{
+    char *line, *ptr, *dev;
+    int status = sigar_proc_fd_read(sigar, PROC_FD_NET_DEV, &line);
 
-        if (!strEQ(dev, name)) {
-            continue;
-        }
+    if (status != SIGAR_OK) {
+        return status;
+    }
 
-        found = 1;
-        ifstat->rx_bytes    = sigar_strtoull(ptr);
-        ifstat->rx_packets  = sigar_strtoull(ptr);
-        ifstat->rx_errors   = sigar_strtoull(ptr);
-        ifstat->rx_dropped  = sigar_strtoull(ptr);
-        ifstat->rx_overruns = sigar_strtoull(ptr);
-        ifstat->rx_frame    = sigar_strtoull(ptr);
+    sigar_net_interface_stat_list_create(statlist);
 
-        /* skip: compressed multicast */
-        ptr = sigar_skip_multiple_token(ptr, 2);
+    /* skip header */
+    line = proc_next_line(line);
+    line = proc_next_line(line);
 
-        ifstat->tx_bytes      = sigar_strtoull(ptr);
-        ifstat->tx_packets    = sigar_strtoull(ptr);
-        ifstat->tx_errors     = sigar_strtoull(ptr);
-        ifstat->tx_dropped    = sigar_strtoull(ptr);
-        ifstat->tx_overruns   = sigar_strtoull(ptr);
-        ifstat->tx_collisions = sigar_strtoull(ptr);
-        ifstat->tx_carrier    = sigar_strtoull(ptr);
+    while ((ptr = net_dev_next(&line, &dev))) {
+        sigar_net_interface_stat_entry_t *entry;
 
-        ifstat->speed         = SIGAR_FIELD_NOTIMPL;
+        SIGAR_NET_IFSTAT_LIST_GROW(statlist);
+        entry = &statlist->data[statlist->number++];
 
-        break;
+        SIGAR_SSTRCPY(entry->name, dev);
+        net_dev_stat_parse(&entry->stat, ptr, dev);
     }
 
-    fclose(fp);
-
-    return found ? SIGAR_OK : ENXIO;
+    return SIGAR_OK;
 }
 
 static SIGAR_INLINE void convert_hex_address(sigar_net_address_t *address,
@@ -1953,6 +2944,13 @@ static int proc_net_read(sigar_net_connection_walker_t *walker,
             continue;
         }
 
+        if ((flags & SIGAR_NETCONN_PORT) &&
+            (conn.local_port != walker->port) &&
+            (conn.remote_port != walker->port))
+        {
+            continue;
+        }
+
         conn.type = type;
 
         convert_hex_address(&conn.local_address,
@@ -1966,6 +2964,12 @@ static int proc_net_read(sigar_net_connection_walker_t *walker,
         ptr += 2;
         SKIP_WHILE(ptr, ' ');
 
+        if ((flags & SIGAR_NETCONN_STATES) &&
+            !(walker->states & (1 << conn.state)))
+        {
+            continue;
+        }
+
         conn.send_queue = hex2int(ptr, HEX_ENT_LEN);
         ptr += HEX_ENT_LEN+1; /* tx + ':' */;
 
@@ -1995,22 +2999,286 @@ static int proc_net_read(sigar_net_connection_walker_t *walker,
     return SIGAR_OK;
 }
 
+/*
+ * sock_diag netlink dumps: binary, and filtered by state and port
+ * in the kernel, where /proc/net/tcp is text formatted for every
+ * socket, which takes seconds with hundreds of thousands of them.
+ * proc_net_read is used where sock_diag is not available, and
+ * when SIGAR_PROC_NET points at a mirror.
+ */
+#include <linux/rtnetlink.h>
+#include <linux/sock_diag.h>
+#include <linux/inet_diag.h>
+
+#define NET_DIAG_BUFSIZE (32 * 1024)
+
+#define NET_DIAG_STATES_ALL 0xfff
+
+/* ops in net_diag_port_bc */
+#define NET_DIAG_BC_OPS 9
+
+typedef struct {
+    struct nlmsghdr nlh;
+    struct inet_diag_req_v2 req;
+    struct rtattr rta;
+    struct inet_diag_bc_op bc[NET_DIAG_BC_OPS];
+} net_diag_request_t;
+
+/*
+ * (sport >= port && sport <= port) || (dport >= port && dport <= port)
+ * each op jumps yes bytes if true, no bytes if false, landing at the
+ * end accepts the socket, 4 bytes past it rejects.
+ * port comparisons take the port from the following op.
+ */
+static int net_diag_port_bc(struct inet_diag_bc_op *bc,
+                            unsigned long port)
+{
+    memset(bc, 0, sizeof(*bc) * NET_DIAG_BC_OPS);
+
+    bc[0].code = INET_DIAG_BC_S_GE; /* @0 */
+    bc[0].yes = 8;
+    bc[0].no = 20; /* dport check */
+    bc[1].no = port;
+
+    bc[2].code = INET_DIAG_BC_S_LE; /* @8 */
+    bc[2].yes = 8;
+    bc[2].no = 12; /* dport check */
+    bc[3].no = port;
+
+    bc[4].code = INET_DIAG_BC_JMP; /* @16 */
+    bc[4].yes = 4;
+    bc[4].no = 20; /* accept */
+
+    bc[5].code = INET_DIAG_BC_D_GE; /* @20 */
+    bc[5].yes = 8;
+    bc[5].no = 20; /* reject */
+    bc[6].no = port;
+
+    bc[7].code = INET_DIAG_BC_D_LE; /* @28 */
+    bc[7].yes = 8; /* accept */
+    bc[7].no = 12; /* reject */
+    bc[8].no = port;
+
+    return sizeof(*bc) * NET_DIAG_BC_OPS;
+}
+
+static int net_diag_states(int flags, int type, int states)
+{
+    if (type != SIGAR_NETCONN_TCP) {
+        return NET_DIAG_STATES_ALL;
+    }
+
+    if (!(flags & SIGAR_NETCONN_STATES)) {
+        states = NET_DIAG_STATES_ALL;
+    }
+
+    switch (flags & (SIGAR_NETCONN_CLIENT|SIGAR_NETCONN_SERVER)) {
+      case SIGAR_NETCONN_SERVER:
+        return states & (1 << SIGAR_TCP_LISTEN);
+      case SIGAR_NETCONN_CLIENT:
+        return states & ~(1 << SIGAR_TCP_LISTEN);
+      default:
+        return states;
+    }
+}
+
+static void net_diag_close(sigar_t *sigar)
+{
+    if (sigar->net_diag_fd >= 0) {
+        close(sigar->net_diag_fd);
+        sigar->net_diag_fd = -1;
+    }
+}
+
+static int net_diag_send(sigar_t *sigar,
+                         sigar_net_connection_walker_t *walker,
+                         int family, int protocol, int type)
+{
+    net_diag_request_t request;
+    int len = NLMSG_LENGTH(sizeof(request.req));
+
+    if (sigar->net_diag_fd < 0) {
+        sigar->net_diag_fd =
+            socket(AF_NETLINK, SOCK_DGRAM, NETLINK_INET_DIAG);
+        if (sigar->net_diag_fd < 0) {
+            return errno;
+        }
+        fcntl(sigar->net_diag_fd, F_SETFD, FD_CLOEXEC);
+    }
+
+    memset(&request, 0, sizeof(request));
+    request.nlh.nlmsg_type = SOCK_DIAG_BY_FAMILY;
+    request.nlh.nlmsg_flags = NLM_F_REQUEST|NLM_F_DUMP;
+    request.req.sdiag_family = family;
+    request.req.sdiag_protocol = protocol;
+    request.req.idiag_states =
+        net_diag_states(walker->flags, type, walker->states);
+
+    if (walker->flags & SIGAR_NETCONN_PORT) {
+        int bclen = net_diag_port_bc(request.bc, walker->port);
+        request.rta.rta_type = INET_DIAG_REQ_BYTECODE;
+        request.rta.rta_len = RTA_LENGTH(bclen);
+        len += RTA_SPACE(bclen);
+    }
+
+    request.nlh.nlmsg_len = len;
+
+    if (send(sigar->net_diag_fd, &request, len, 0) < 0) {
+        int status = errno;
+        net_diag_close(sigar);
+        return status;
+    }
+
+    return SIGAR_OK;
+}
+
+static void net_diag_conn(struct inet_diag_msg *msg,
+                          sigar_net_connection_t *conn, int type)
+{
+    conn->type = type;
+    conn->state = msg->idiag_state;
+    conn->local_port = ntohs(msg->id.idiag_sport);
+    conn->remote_port = ntohs(msg->id.idiag_dport);
+
+    /* same word order as the /proc/net hex addresses */
+    if (msg->idiag_family == AF_INET6) {
+        conn->local_address.family = SIGAR_AF_INET6;
+        memcpy(conn->local_address.addr.in6, msg->id.idiag_src,
+               sizeof(conn->local_address.addr.in6));
+        conn->remote_address.family = SIGAR_AF_INET6;
+        memcpy(conn->remote_address.addr.in6, msg->id.idiag_dst,
+               sizeof(conn->remote_address.addr.in6));
+    }
+    else {
+        conn->local_address.family = SIGAR_AF_INET;
+        conn->local_address.addr.in = msg->id.idiag_src[0];
+        conn->remote_address.family = SIGAR_AF_INET;
+        conn->remote_address.addr.in = msg->id.idiag_dst[0];
+    }
+
+    /* wqueue of a listener is its max backlog, /proc/net shows 0 */
+    conn->send_queue =
+        (conn->state == SIGAR_TCP_LISTEN) ? 0 : msg->idiag_wqueue;
+    conn->receive_queue = msg->idiag_rqueue;
+    conn->uid = msg->idiag_uid;
+    conn->inode = msg->idiag_inode;
+}
+
+/*
+ * *count is the number of connections passed to the walker,
+ * falling back to /proc is only safe while it is still 0.
+ */
+static int net_diag_read(sigar_net_connection_walker_t *walker,
+                         int family, int protocol, int type,
+                         int *count)
+{
+    sigar_t *sigar = walker->sigar;
+    int flags = walker->flags;
+    long buf[NET_DIAG_BUFSIZE / sizeof(long)];
+    int status;
+
+    *count = 0;
+
+    status = net_diag_send(sigar, walker, family, protocol, type);
+    if (status != SIGAR_OK) {
+        return status;
+    }
+
+    while (1) {
+        struct nlmsghdr *nlh = (struct nlmsghdr *)buf;
+        struct sockaddr_nl from;
+        socklen_t fromlen = sizeof(from);
+        int len = recvfrom(sigar->net_diag_fd, buf, sizeof(buf), 0,
+                           (struct sockaddr *)&from, &fromlen);
+
+        if (len < 0) {
+            if (errno == EINTR) {
+                continue;
+            }
+            status = errno;
+            net_diag_close(sigar);
+            return status;
+        }
+
+        if (from.nl_pid != 0) {
+            continue; /* not from the kernel */
+        }
+
+        for (; NLMSG_OK(nlh, len); nlh = NLMSG_NEXT(nlh, len)) {
+            sigar_net_connection_t conn;
+
+            if (nlh->nlmsg_type == NLMSG_DONE) {
+                return SIGAR_OK;
+            }
+
+            if (nlh->nlmsg_type == NLMSG_ERROR) {
+                struct nlmsgerr *err = (struct nlmsgerr *)NLMSG_DATA(nlh);
+                return err->error ? -err->error : EINVAL;
+            }
+
+            net_diag_conn((struct inet_diag_msg *)NLMSG_DATA(nlh),
+                          &conn, type);
+
+            if (!((conn.remote_port && (flags & SIGAR_NETCONN_CLIENT)) ||
+                  (!conn.remote_port && (flags & SIGAR_NETCONN_SERVER))))
+            {
+                continue;
+            }
+
+            ++*count;
+
+            if (walker->add_connection(walker, &conn) != SIGAR_OK) {
+                /* rest of the dump is not wanted, drop it */
+                net_diag_close(sigar);
+                return SIGAR_OK;
+            }
+        }
+    }
+}
+
+static int net_conn_read(sigar_net_connection_walker_t *walker,
+                         const char *fname, int family,
+                         int protocol, int type)
+{
+    sigar_t *sigar = walker->sigar;
+
+    if (!sigar->proc_net) {
+        int count;
+        int status = net_diag_read(walker, family, protocol, type, &count);
+
+        if ((status == SIGAR_OK) || (count != 0)) {
+            return status;
+        }
+
+        if (SIGAR_LOG_IS_DEBUG(sigar)) {
+            sigar_log_printf(sigar, SIGAR_LOG_DEBUG,
+                             "[net_diag] %s: %s, using %s",
+                             family == AF_INET6 ? "inet6" : "inet",
+                             sigar_strerror(sigar, status), fname);
+        }
+    }
+
+    return proc_net_read(walker, fname, type);
+}
+
 int sigar_net_connection_walk(sigar_net_connection_walker_t *walker)
 {
     int flags = walker->flags;
     int status;
 
     if (flags & SIGAR_NETCONN_TCP) {
-        status = proc_net_read(walker,
+        status = net_conn_read(walker,
                                PROC_FS_ROOT "net/tcp",
+                               AF_INET, IPPROTO_TCP,
                                SIGAR_NETCONN_TCP);
 
         if (status != SIGAR_OK) {
             return status;
         }
 
-        status = proc_net_read(walker,
+        status = net_conn_read(walker,
                                PROC_FS_ROOT "net/tcp6",
+                               AF_INET6, IPPROTO_TCP,
                                SIGAR_NETCONN_TCP);
 
         if (!((status == SIGAR_OK) || (status == ENOENT))) {
@@ -2019,16 +3287,18 @@ int sigar_net_connection_walk(sigar_net_connection_walker_t *walker)
     }
 
     if (flags & SIGAR_NETCONN_UDP) {
-        status = proc_net_read(walker,
+        status = net_conn_read(walker,
                                PROC_FS_ROOT "net/udp",
+                               AF_INET, IPPROTO_UDP,
                                SIGAR_NETCONN_UDP);
 
         if (status != SIGAR_OK) {
             return status;
         }
 
-        status = proc_net_read(walker,
+        status = net_conn_read(walker,
                                PROC_FS_ROOT "net/udp6",
+                               AF_INET6, IPPROTO_UDP,
                                SIGAR_NETCONN_UDP);
 
         if (!((status == SIGAR_OK) || (status == ENOENT))) {
@@ -2036,6 +3306,7 @@ int sigar_net_connection_walk(sigar_net_connection_walker_t *walker)
         }
     }
 
+    /* raw sockets are only in sock_diag as of linux 4.14 */
     if (flags & SIGAR_NETCONN_RAW) {
         status = proc_net_read(walker,
                                PROC_FS_ROOT "net/raw",
@@ -2100,7 +3371,8 @@ static int sigar_net_connection_get(sigar_t *sigar,
     getter.port = port;
 
     walker.sigar = sigar;
-    walker.flags = flags;
+    walker.flags = flags | SIGAR_NETCONN_PORT;
+    walker.port = port;
     walker.data = &getter;
     walker.add_connection = proc_net_walker;
 
@@ -2448,13 +3720,227 @@ int sigar_arp_list_get(sigar_t *sigar,
     return SIGAR_OK;
 }
 
+#ifdef AT_FDCWD
+/*
+ * socket inode -> pid index, built with a single walk of every
+ * /proc/<pid>/fd and reused for SOCKET_INODE_EXPIRE seconds,
+ * rather than walking all descriptors for each port looked up.
+ * the pid is stored in place of the entry value.
+ */
+#define SOCKET_INODE_EXPIRE SIGAR_LAST_PROC_EXPIRE
+
+#define SOCKET_LINK_PREFIX "socket:["
+
+static void socket_inode_free(void *ptr)
+{
+    /* pid, nothing to free */
+}
+
+static void socket_inode_scan_pid(sigar_t *sigar, int procfd,
+                                  sigar_pid_t pid)
+{
+    char name[BUFSIZ];
+    DIR *dirp;
+    struct dirent *ent, dbuf;
+    int fd = openat(procfd, proc_relname(name, sizeof(name), pid, "/fd"),
+                    O_RDONLY);
+
+    if (fd < 0) {
+        return; /* EACCES for other users' processes */
+    }
+
+    if (!(dirp = fdopendir(fd))) {
+        close(fd);
+        return;
+    }
+
+    while ((readdir_r(dirp, &dbuf, &ent) == 0) && ent) {
+        char link[64];
+        sigar_cache_entry_t *entry;
+        int len;
+
+        if (!sigar_isdigit(*ent->d_name)) {
+            continue;
+        }
+
+        len = readlinkat(dirfd(dirp), ent->d_name, link, sizeof(link)-1);
+
+        if ((len <= SSTRLEN(SOCKET_LINK_PREFIX)) ||
+            !strnEQ(link, SOCKET_LINK_PREFIX, SSTRLEN(SOCKET_LINK_PREFIX)))
+        {
+            continue;
+        }
+        link[len] = '\0';
+
+        entry = sigar_cache_get(sigar->socket_inodes,
+                                strtoul(link + SSTRLEN(SOCKET_LINK_PREFIX),
+                                        NULL, 10));
+        if (!entry->value) {
+            /* shared after fork, the parent is listed first */
+            entry->value = (void *)(long)pid;
+        }
+    }
+
+    closedir(dirp);
+}
+
+static int socket_inode_scan(sigar_t *sigar, time_t timenow)
+{
+    sigar_proc_list_t pids;
+    unsigned long i;
+    int status, procfd = proc_dirfd_get(sigar);
+
+    if (procfd < 0) {
+        return errno;
+    }
+
+    sigar_proc_list_create(&pids);
+
+    if ((status = proc_list_scan(sigar, &pids)) != SIGAR_OK) {
+        sigar_proc_list_destroy(sigar, &pids);
+        return status;
+    }
+
+    if (sigar->socket_inodes) {
+        sigar_cache_sweep(sigar->socket_inodes, proc_cache_clear, NULL);
+    }
+    else {
+        sigar->socket_inodes = sigar_cache_new(1024);
+        sigar->socket_inodes->free_value = socket_inode_free;
+    }
+
+    for (i=0; i<pids.number; i++) {
+        socket_inode_scan_pid(sigar, procfd, pids.data[i]);
+    }
+
+    sigar_proc_list_destroy(sigar, &pids);
+
+    sigar->socket_inodes_time = timenow;
+
+    return SIGAR_OK;
+}
+
+static int socket_inode_pid_get(sigar_t *sigar, unsigned long inode,
+                                sigar_pid_t *pid)
+{
+    sigar_cache_entry_t *entry;
+    time_t timenow = time(NULL);
+    int status;
+
+    *pid = 0;
+
+    if (inode == 0) {
+        return SIGAR_OK;
+    }
+
+    if (!sigar->socket_inodes ||
+        ((timenow - sigar->socket_inodes_time) >= SOCKET_INODE_EXPIRE))
+    {
+        if ((status = socket_inode_scan(sigar, timenow)) != SIGAR_OK) {
+            return status;
+        }
+    }
+
+    entry = sigar_cache_find(sigar->socket_inodes, inode);
+
+    if (!entry && (sigar->socket_inodes_time != timenow)) {
+        /* socket may be newer than the index, at most one rescan/sec */
+        if ((status = socket_inode_scan(sigar, timenow)) != SIGAR_OK) {
+            return status;
+        }
+        entry = sigar_cache_find(sigar->socket_inodes, inode);
+    }
+
+    if (entry) {
+        *pid = (sigar_pid_t)(long)entry->value;
+    }
+
+    return SIGAR_OK;
+}
+
+static int proc_port_walker(sigar_net_connection_walker_t *walker,
+                            sigar_net_connection_t *conn)
+{
+    sigar_cache_t *ports = (sigar_cache_t *)walker->data;
+    sigar_cache_entry_t *entry;
+
+    if (conn->remote_port != 0) {
+        return SIGAR_OK;
+    }
+
+    entry = sigar_cache_get(ports, conn->local_port);
+    if (!entry->value) {
+        entry->value = (void *)(long)conn->inode;
+    }
+
+    return SIGAR_OK;
+}
+
+int sigar_proc_port_list_get(sigar_t *sigar, int protocol,
+                             unsigned long *ports,
+                             unsigned long number,
+                             sigar_pid_t *pids)
+{
+    sigar_net_connection_walker_t walker;
+    sigar_cache_t *inodes = sigar_cache_new(64); /* port -> inode */
+    unsigned long i;
+    int status;
+
+    inodes->free_value = socket_inode_free;
+
+    walker.sigar = sigar;
+    walker.flags = SIGAR_NETCONN_SERVER|protocol;
+    walker.data = inodes;
+    walker.add_connection = proc_port_walker;
+
+    status = sigar_net_connection_walk(&walker);
+
+    for (i=0; (status == SIGAR_OK) && (i<number); i++) {
+        sigar_cache_entry_t *entry = sigar_cache_find(inodes, ports[i]);
+
+        if (entry) {
+            status = socket_inode_pid_get(sigar,
+                                          (unsigned long)entry->value,
+                                          &pids[i]);
+        }
+        else {
+            pids[i] = 0;
+        }
+    }
+
+    sigar_cache_destroy(inodes);
+
+    return status;
+}
+
+int sigar_net_connection_owners_get(sigar_t *sigar,
+                                    sigar_net_connection_list_t *connlist,
+                                    sigar_pid_t *pids)
+{
+    unsigned long i;
+    int status;
+
+    for (i=0; i<connlist->number; i++) {
+        status = socket_inode_pid_get(sigar, connlist->data[i].inode,
+                                      &pids[i]);
+        if (status != SIGAR_OK) {
+            return status;
+        }
+    }
+
+    return SIGAR_OK;
+}
+#endif /* AT_FDCWD */
+
 int sigar_proc_port_get(sigar_t *sigar, int protocol,
                         unsigned long port, sigar_pid_t *pid)
 {
     int status;
     sigar_net_connection_t netconn;
+#ifndef AT_FDCWD
     DIR *dirp;
     struct dirent *ent, dbuf;
+#endif
 
     SIGAR_ZERO(&netconn);
     *pid = 0;
@@ -2470,6 +3956,9 @@ int sigar_proc_port_get(sigar_t *sigar, int protocol,
         return SIGAR_OK; /* XXX or ENOENT? */
     }
 
+#ifdef AT_FDCWD
+    return socket_inode_pid_get(sigar, netconn.inode, pid);
+#else
     if (!(dirp = opendir(PROCP_FS_ROOT))) {
         return errno;
     }
@@ -2552,6 +4041,7 @@ int sigar_proc_port_get(sigar_t *sigar, int protocol,
     closedir(dirp);
 
     return SIGAR_OK;
+#endif
 }
 
 static void generic_vendor_parse(char *line, sigar_sys_info_t *info)
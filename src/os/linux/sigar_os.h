@@ -35,6 +35,7 @@
 typedef struct {
     sigar_pid_t pid;
     time_t mtime;
+    unsigned int generation;
     sigar_uint64_t vsize;
     sigar_uint64_t rss;
     sigar_uint64_t minor_faults;
@@ -49,6 +50,7 @@ typedef struct {
     char name[SIGAR_PROC_NAME_LEN];
     char state;
     int processor;
+    int threads;
 } linux_proc_stat_t;
 
 typedef enum {
@@ -58,17 +60,49 @@ typedef enum {
     IOSTAT_SYS /* 2.6 */
 } linux_iostat_e;
 
+/* system-wide /proc files kept open and re-read with pread() */
+typedef enum {
+    PROC_FD_MEMINFO,
+    PROC_FD_STAT,
+    PROC_FD_UPTIME,
+    PROC_FD_LOADAVG,
+    PROC_FD_NET_DEV,
+    PROC_FD_MAX
+} linux_proc_fd_e;
+
+/* proc_cn_state */
+#define PROC_CN_OFF    0
+#define PROC_CN_WANTED 1
+#define PROC_CN_ACTIVE 2
+#define PROC_CN_FAILED 3
+
 struct sigar_t {
     SIGAR_T_BASE;
     int pagesize;
     int ram;
     int proc_signal_offset;
-    linux_proc_stat_t last_proc_stat;
+    sigar_cache_t *proc_stat; /* pid -> linux_proc_stat_t */
+    unsigned int proc_stat_gen;
+    unsigned int proc_stat_sweep;
     int lcpu;
     linux_iostat_e iostat;
     char *proc_net;
     /* Native POSIX Thread Library 2.6+ kernel */
     int has_nptl;
+    int proc_fd[PROC_FD_MAX];
+    char *proc_buf;
+    int proc_buflen;
+    int proc_dirfd; /* /proc, for openat() and getdents64() */
+    /* netlink proc connector, see proc_cn_open() */
+    int proc_cn_fd;
+    int proc_cn_state;
+    int proc_cn_list; /* list processes from proc_cn_pids */
+    int proc_cn_error;
+    sigar_cache_t *proc_cn_pids;
+    sigar_proc_event_list_t *proc_cn_events;
+    sigar_cache_t *socket_inodes; /* inode -> pid */
+    time_t socket_inodes_time;
+    int net_diag_fd; /* sock_diag netlink */
 };
 
 #define HAVE_STRERROR_R
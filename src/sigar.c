@@ -56,9 +56,11 @@ SIGAR_DECLARE(int) sigar_open(sigar_t **sigar)
         (*sigar)->fsdev = NULL;
         (*sigar)->pids = NULL;
         (*sigar)->proc_cpu = NULL;
+        (*sigar)->proc_cpu_sweep = 0;
         (*sigar)->net_listen = NULL;
         (*sigar)->net_services_tcp = NULL;
         (*sigar)->net_services_udp = NULL;
+        (*sigar)->ptql_memo = NULL;
     }
 
     return status;
@@ -91,6 +93,9 @@ SIGAR_DECLARE(int) sigar_close(sigar_t *sigar)
     if (sigar->net_services_udp) {
         sigar_cache_destroy(sigar->net_services_udp);
     }
+    if (sigar->ptql_memo) {
+        sigar_cache_destroy(sigar->ptql_memo);
+    }
 
     return sigar_os_close(sigar);
 }
@@ -106,20 +111,67 @@ SIGAR_DECLARE(sigar_pid_t) sigar_pid_get(sigar_t *sigar)
 }
 #endif
 
+/* entries not used between sweeps are checked against the process */
+#define SIGAR_PROC_CPU_SWEEP (60 * 1000)
+
+typedef struct {
+    sigar_t *sigar;
+    sigar_uint64_t since;
+} proc_cpu_sweep_t;
+
+static int proc_cpu_stale(void *data, sigar_cache_entry_t *entry)
+{
+    proc_cpu_sweep_t *sweep = (proc_cpu_sweep_t *)data;
+    sigar_proc_cpu_t *prev = (sigar_proc_cpu_t *)entry->value;
+    sigar_proc_time_t proctime;
+
+    if (!prev) {
+        return 1;
+    }
+    if (prev->last_time >= sweep->since) {
+        return 0; /* in use */
+    }
+    if (sigar_proc_time_get(sweep->sigar, entry->id, &proctime) != SIGAR_OK) {
+        return 1; /* process has gone away */
+    }
+
+    return proctime.start_time != prev->start_time; /* pid reused */
+}
+
+static void proc_cpu_sweep(sigar_t *sigar, sigar_uint64_t time_now)
+{
+    proc_cpu_sweep_t sweep;
+
+    if (sigar->proc_cpu_sweep == 0) {
+        sigar->proc_cpu_sweep = time_now;
+        return;
+    }
+    if ((time_now - sigar->proc_cpu_sweep) < SIGAR_PROC_CPU_SWEEP) {
+        return;
+    }
+
+    sweep.sigar = sigar;
+    sweep.since = sigar->proc_cpu_sweep;
+    sigar_cache_sweep(sigar->proc_cpu, proc_cpu_stale, &sweep);
+    sigar->proc_cpu_sweep = time_now;
+}
+
 /* XXX: add clear() function */
-/* XXX: check for stale-ness using start_time */
 SIGAR_DECLARE(int) sigar_proc_cpu_get(sigar_t *sigar, sigar_pid_t pid,
                                       sigar_proc_cpu_t *proccpu)
 {
     sigar_cache_entry_t *entry;
     sigar_proc_cpu_t *prev;
-    sigar_uint64_t otime, time_now = sigar_time_now_millis();
+    sigar_uint64_t otime, ostart, time_now = sigar_time_now_millis();
     sigar_uint64_t time_diff, total_diff;
     int status;
 
     if (!sigar->proc_cpu) {
         sigar->proc_cpu = sigar_cache_new(128);
     }
+    else {
+        proc_cpu_sweep(sigar, time_now);
+    }
 
     entry = sigar_cache_get(sigar->proc_cpu, pid);
     if (entry->value) {
@@ -140,17 +192,25 @@ SIGAR_DECLARE(int) sigar_proc_cpu_get(sigar_t *sigar, sigar_pid_t pid,
     }
 
     otime = prev->total;
+    ostart = prev->start_time;
 
     status =
         sigar_proc_time_get(sigar, pid,
                             (sigar_proc_time_t *)proccpu);
 
     if (status != SIGAR_OK) {
+        /* do not keep an entry for a process we cannot see */
+        sigar_cache_delete(sigar->proc_cpu, pid);
         return status;
     }
 
     memcpy(prev, proccpu, sizeof(*prev));
 
+    if (proccpu->start_time != ostart) {
+        /* pid has been reused, previous times are another process */
+        otime = 0;
+    }
+
     if (proccpu->total < otime) {
         /* XXX this should not happen */
         otime = 0;
@@ -168,6 +228,7 @@ SIGAR_DECLARE(int) sigar_proc_cpu_get(sigar_t *sigar, sigar_pid_t pid,
     return SIGAR_OK;
 }
 
+#ifndef __linux__
 SIGAR_DECLARE(int) sigar_proc_stat_get(sigar_t *sigar,
                                        sigar_proc_stat_t *procstat)
 {
@@ -220,6 +281,236 @@ SIGAR_DECLARE(int) sigar_proc_stat_get(sigar_t *sigar,
     return SIGAR_OK;
 }
 
+SIGAR_DECLARE(int) sigar_proc_stat_summary_get(sigar_t *sigar,
+                                               sigar_proc_stat_t *procstat)
+{
+    return sigar_proc_stat_get(sigar, procstat);
+}
+#endif
+
+int sigar_proc_group_list_create(sigar_proc_group_list_t *groups)
+{
+    groups->number = 0;
+    groups->size = SIGAR_PROC_GROUP_LIST_MAX;
+    groups->data = malloc(sizeof(*(groups->data)) *
+                          groups->size);
+    return SIGAR_OK;
+}
+
+int sigar_proc_group_list_grow(sigar_proc_group_list_t *groups)
+{
+    groups->data = realloc(groups->data,
+                           sizeof(*(groups->data)) *
+                           (groups->size + SIGAR_PROC_GROUP_LIST_MAX));
+    groups->size += SIGAR_PROC_GROUP_LIST_MAX;
+
+    return SIGAR_OK;
+}
+
+/* index values are data offsets + 1, nothing to free */
+static void proc_group_index_free(void *ptr)
+{
+}
+
+/* FNV-1a, the index is only a hint for string keys */
+static sigar_uint64_t proc_group_hash(const char *key)
+{
+    unsigned int hash = 2166136261U;
+
+    while (*key) {
+        hash ^= (unsigned char)*key++;
+        hash *= 16777619U;
+    }
+
+    return hash;
+}
+
+static int proc_group_key(sigar_t *sigar, sigar_pid_t pid, int by,
+                          sigar_proc_state_t *state,
+                          char *key, int keylen, sigar_uint64_t *id)
+{
+    int status;
+
+    switch (by) {
+      case SIGAR_PROC_GROUP_UID:
+        {
+            sigar_proc_cred_t cred;
+
+            if ((status = sigar_proc_cred_get(sigar, pid, &cred)) != SIGAR_OK) {
+                return status;
+            }
+            *id = cred.uid;
+        }
+        break;
+      case SIGAR_PROC_GROUP_PPID:
+        *id = state->ppid;
+        break;
+      case SIGAR_PROC_GROUP_STATE_NAME:
+        strncpy(key, state->name, keylen);
+        key[keylen-1] = '\0';
+        return SIGAR_OK;
+      case SIGAR_PROC_GROUP_EXE_NAME:
+        {
+            sigar_proc_exe_t exe;
+
+            if ((status = sigar_proc_exe_get(sigar, pid, &exe)) != SIGAR_OK) {
+                return status;
+            }
+            strncpy(key, exe.name, keylen);
+            key[keylen-1] = '\0';
+        }
+        return SIGAR_OK;
+#ifdef __linux__
+      case SIGAR_PROC_GROUP_CGROUP:
+        return sigar_os_proc_cgroup_get(sigar, pid, key, keylen);
+#endif
+      default:
+        return SIGAR_ENOTIMPL;
+    }
+
+    sprintf(key, SIGAR_F_U64, *id);
+
+    return SIGAR_OK;
+}
+
+static sigar_proc_group_t *proc_group_find(sigar_proc_group_list_t *groups,
+                                           sigar_cache_t *index,
+                                           sigar_uint64_t hash,
+                                           sigar_uint64_t id,
+                                           const char *key)
+{
+    sigar_cache_entry_t *entry = sigar_cache_get(index, hash);
+    sigar_proc_group_t *group;
+    unsigned long i;
+
+    if (entry->value) {
+        group = &groups->data[(unsigned long)entry->value - 1];
+        if (strEQ(group->key, key)) {
+            return group;
+        }
+
+        /* hash collision, these few are not indexed */
+        for (i=0; i<groups->number; i++) {
+            if (strEQ(groups->data[i].key, key)) {
+                return &groups->data[i];
+            }
+        }
+        entry = NULL;
+    }
+
+    SIGAR_PROC_GROUP_LIST_GROW(groups);
+    group = &groups->data[groups->number++];
+
+    SIGAR_ZERO(group);
+    group->key = sigar_strdup(key);
+    group->id = id;
+
+    if (entry) {
+        entry->value = (void *)groups->number;
+    }
+
+    return group;
+}
+
+SIGAR_DECLARE(int) sigar_proc_group_list_get(sigar_t *sigar, int by,
+                                             sigar_proc_group_list_t *groups)
+{
+    int status;
+    unsigned long i;
+    int numeric =
+        (by == SIGAR_PROC_GROUP_UID) || (by == SIGAR_PROC_GROUP_PPID);
+    char key[SIGAR_PATH_MAX+1];
+    sigar_proc_list_t *pids;
+    sigar_cache_t *index;
+
+    switch (by) {
+      case SIGAR_PROC_GROUP_UID:
+      case SIGAR_PROC_GROUP_STATE_NAME:
+      case SIGAR_PROC_GROUP_EXE_NAME:
+      case SIGAR_PROC_GROUP_PPID:
+        break;
+#ifdef __linux__
+      case SIGAR_PROC_GROUP_CGROUP:
+        break;
+#endif
+      default:
+        return SIGAR_ENOTIMPL;
+    }
+
+    if ((status = sigar_proc_list_get(sigar, NULL)) != SIGAR_OK) {
+        return status;
+    }
+
+    pids = sigar->pids;
+    index = sigar_cache_new(64);
+    index->free_value = proc_group_index_free;
+
+    sigar_proc_group_list_create(groups);
+
+    for (i=0; i<pids->number; i++) {
+        sigar_pid_t pid = pids->data[i];
+        sigar_proc_state_t state;
+        sigar_proc_time_t time;
+        sigar_proc_mem_t mem;
+        sigar_proc_fd_t fd;
+        sigar_proc_group_t *group;
+        sigar_uint64_t id = SIGAR_FIELD_NOTIMPL;
+        sigar_uint64_t hash;
+
+        if (sigar_proc_state_get(sigar, pid, &state) != SIGAR_OK) {
+            continue; /* exited since the list was read */
+        }
+
+        if (proc_group_key(sigar, pid, by, &state,
+                           key, sizeof(key), &id) != SIGAR_OK)
+        {
+            key[0] = '\0';
+            id = SIGAR_FIELD_NOTIMPL;
+        }
+
+        hash = numeric ? id : proc_group_hash(key);
+        group = proc_group_find(groups, index, hash, id, key);
+
+        group->processes++;
+
+        if (state.threads != SIGAR_FIELD_NOTIMPL) {
+            group->threads += state.threads;
+        }
+        if (sigar_proc_time_get(sigar, pid, &time) == SIGAR_OK) {
+            group->cpu_total += time.total;
+        }
+        if ((sigar_proc_mem_get(sigar, pid, &mem) == SIGAR_OK) &&
+            (mem.resident != SIGAR_FIELD_NOTIMPL))
+        {
+            group->resident += mem.resident;
+        }
+        if (sigar_proc_fd_get(sigar, pid, &fd) == SIGAR_OK) {
+            group->fds += fd.total;
+        }
+    }
+
+    sigar_cache_destroy(index);
+
+    return SIGAR_OK;
+}
+
+SIGAR_DECLARE(int) sigar_proc_group_list_destroy(sigar_t *sigar,
+                                                 sigar_proc_group_list_t *groups)
+{
+    unsigned long i;
+
+    for (i=0; i<groups->number; i++) {
+        free(groups->data[i].key);
+    }
+
+    if (groups->size) {
+        free(groups->data);
+        groups->number = groups->size = 0;
+    }
+
+    return SIGAR_OK;
+}
+
 SIGAR_DECLARE(int) sigar_sys_info_get(sigar_t *sigar,
                                       sigar_sys_info_t *sysinfo)
 {
@@ -334,6 +625,56 @@ SIGAR_DECLARE(int) sigar_proc_list_get(sigar_t *sigar,
     return sigar_os_proc_list_get(sigar, proclist);
 }
 
+int sigar_proc_event_list_create(sigar_proc_event_list_t *events)
+{
+    events->number = 0;
+    events->size = SIGAR_PROC_EVENT_LIST_MAX;
+    events->data = malloc(sizeof(*(events->data)) *
+                          events->size);
+    return SIGAR_OK;
+}
+
+int sigar_proc_event_list_grow(sigar_proc_event_list_t *events)
+{
+    events->data = realloc(events->data,
+                           sizeof(*(events->data)) *
+                           (events->size + SIGAR_PROC_EVENT_LIST_MAX));
+    events->size += SIGAR_PROC_EVENT_LIST_MAX;
+
+    return SIGAR_OK;
+}
+
+SIGAR_DECLARE(int) sigar_proc_event_list_destroy(sigar_t *sigar,
+                                                 sigar_proc_event_list_t *events)
+{
+    if (events->size) {
+        free(events->data);
+        events->number = events->size = 0;
+    }
+
+    return SIGAR_OK;
+}
+
+SIGAR_DECLARE(int) sigar_proc_event_list_get(sigar_t *sigar,
+                                             sigar_proc_event_list_t *events,
+                                             int timeout)
+{
+#ifdef __linux__
+    int status;
+
+    sigar_proc_event_list_create(events);
+
+    status = sigar_os_proc_event_list_get(sigar, events, timeout);
+    if (status != SIGAR_OK) {
+        sigar_proc_event_list_destroy(sigar, events);
+    }
+
+    return status;
+#else
+    return SIGAR_ENOTIMPL;
+#endif
+}
+
 int sigar_proc_args_create(sigar_proc_args_t *procargs)
 {
     procargs->number = 0;
@@ -659,6 +1000,74 @@ sigar_net_interface_list_destroy(sigar_t *sigar,
     return SIGAR_OK;
 }
 
+int sigar_net_interface_stat_list_create(sigar_net_interface_stat_list_t *statlist)
+{
+    statlist->number = 0;
+    statlist->size = SIGAR_NET_IFLIST_MAX;
+    statlist->data = malloc(sizeof(*(statlist->data)) *
+                            statlist->size);
+    return SIGAR_OK;
+}
+
+int sigar_net_interface_stat_list_grow(sigar_net_interface_stat_list_t *statlist)
+{
+    statlist->data = realloc(statlist->data,
+                             sizeof(*(statlist->data)) *
+                             (statlist->size + SIGAR_NET_IFLIST_MAX));
+    statlist->size += SIGAR_NET_IFLIST_MAX;
+
+    return SIGAR_OK;
+}
+
+#ifndef __linux__
+SIGAR_DECLARE(int)
+sigar_net_interface_stat_list_get(sigar_t *sigar,
+                                  sigar_net_interface_stat_list_t *statlist)
+{
+    int status;
+    unsigned int i;
+    sigar_net_interface_list_t iflist;
+
+    if ((status = sigar_net_interface_list_get(sigar, &iflist)) != SIGAR_OK) {
+        return status;
+    }
+
+    sigar_net_interface_stat_list_create(statlist);
+
+    for (i=0; i<iflist.number; i++) {
+        sigar_net_interface_stat_entry_t *entry;
+
+        SIGAR_NET_IFSTAT_LIST_GROW(statlist);
+        entry = &statlist->data[statlist->number];
+
+        if (sigar_net_interface_stat_get(sigar, iflist.data[i],
+                                         &entry->stat) != SIGAR_OK)
+        {
+            continue; /* e.g. alias or down */
+        }
+
+        SIGAR_SSTRCPY(entry->name, iflist.data[i]);
+        statlist->number++;
+    }
+
+    sigar_net_interface_list_destroy(sigar, &iflist);
+
+    return SIGAR_OK;
+}
+#endif
+
+SIGAR_DECLARE(int)
+sigar_net_interface_stat_list_destroy(sigar_t *sigar,
+                                      sigar_net_interface_stat_list_t *statlist)
+{
+    if (statlist->size) {
+        free(statlist->data);
+        statlist->number = statlist->size = 0;
+    }
+
+    return SIGAR_OK;
+}
+
 int sigar_net_connection_list_create(sigar_net_connection_list_t *connlist)
 {
     connlist->number = 0;
@@ -734,6 +1143,36 @@ sigar_net_connection_list_get(sigar_t *sigar,
 }
 #endif
 
+#if !defined(__linux__) || !defined(AT_FDCWD)
+/* linux answers these from a socket inode -> pid index */
+SIGAR_DECLARE(int) sigar_proc_port_list_get(sigar_t *sigar,
+                                            int protocol,
+                                            unsigned long *ports,
+                                            unsigned long number,
+                                            sigar_pid_t *pids)
+{
+    unsigned long i;
+    int status;
+
+    for (i=0; i<number; i++) {
+        status = sigar_proc_port_get(sigar, protocol, ports[i], &pids[i]);
+        if (status != SIGAR_OK) {
+            return status;
+        }
+    }
+
+    return SIGAR_OK;
+}
+
+SIGAR_DECLARE(int)
+sigar_net_connection_owners_get(sigar_t *sigar,
+                                sigar_net_connection_list_t *connlist,
+                                sigar_pid_t *pids)
+{
+    return SIGAR_ENOTIMPL;
+}
+#endif
+
 static void sigar_net_listen_address_add(sigar_t *sigar,
                                          sigar_net_connection_t *conn)
 {
@@ -915,7 +1354,8 @@ sigar_net_stat_port_get(sigar_t *sigar,
     walker.data = &getter;
     walker.add_connection = net_stat_port_walker;
 
-    walker.flags = flags;
+    walker.flags = flags | SIGAR_NETCONN_PORT;
+    walker.port = port;
 
     if (SIGAR_LOG_IS_DEBUG(sigar)) {
         char name[SIGAR_FQDN_LEN];
@@ -949,7 +1389,10 @@ int sigar_tcp_curr_estab(sigar_t *sigar, sigar_tcp_t *tcp)
     walker.sigar = sigar;
     walker.data = tcp;
     walker.add_connection = tcp_curr_estab_count;
-    walker.flags = SIGAR_NETCONN_CLIENT|SIGAR_NETCONN_TCP;
+    walker.flags = SIGAR_NETCONN_CLIENT|SIGAR_NETCONN_TCP|
+        SIGAR_NETCONN_STATES;
+    walker.states =
+        (1 << SIGAR_TCP_ESTABLISHED) | (1 << SIGAR_TCP_CLOSE_WAIT);
 
     tcp->curr_estab = 0;
 
@@ -16,6 +16,7 @@
  * USA.
  */
 
+
 #include "sigar.h"
 #include "sigar_private.h"
 #include "sigar_util.h"
@@ -26,25 +27,67 @@
  *  pid -> some process data
  *  uid -> user name
  *  gid -> group name
+ *
+ * linear probing over a power-of-2 sized array of entry pointers.
+ * deleted slots are marked so probing continues past them and
+ * are reclaimed when the table is rehashed.
  */
 
+struct sigar_cache_slab_t {
+    sigar_cache_slab_t *next;
+    sigar_cache_entry_t entries[1];
+};
+
 #define ENTRIES_SIZE(n) \
     (sizeof(sigar_cache_entry_t *) * (n))
 
+#define SLAB_SIZE(n) \
+    (sizeof(sigar_cache_slab_t) + (sizeof(sigar_cache_entry_t) * ((n)-1)))
+
+#define SIGAR_CACHE_MIN_SIZE 16
+
+/* rehash when 3/4 of the slots are in use or deleted */
+#define SIGAR_CACHE_FULL(t, n) \
+    ((n) * 4 > (t)->size * 3)
+
+static sigar_cache_entry_t deleted_entry;
+
+#define SIGAR_CACHE_DELETED (&deleted_entry)
+
 /* wrap free() for use w/ dmalloc */
 static void free_value(void *ptr)
 {
     free(ptr);
 }
 
+static unsigned int sigar_cache_hash(sigar_uint64_t key)
+{
+    unsigned int hash = (unsigned int)(key ^ (key >> 32));
+    /* spread sequential keys such as pids and ports */
+    hash *= 2654435769U;
+    return hash ^ (hash >> 16);
+}
+
+#define SIGAR_CACHE_IX(t, k) \
+    (sigar_cache_hash(k) & ((t)->size - 1))
+
 sigar_cache_t *sigar_cache_new(int size)
 {
     sigar_cache_t *table = malloc(sizeof(*table));
+    unsigned int n = SIGAR_CACHE_MIN_SIZE;
+
+    while (n < (unsigned int)size * 2) {
+        n <<= 1;
+    }
+
     table->count = 0;
-    table->size = size;
-    table->entries = malloc(ENTRIES_SIZE(size));
-    memset(table->entries, '\0', ENTRIES_SIZE(size));
+    table->used = 0;
+    table->size = n;
+    table->entries = malloc(ENTRIES_SIZE(n));
+    memset(table->entries, '\0', ENTRIES_SIZE(n));
     table->free_value = free_value;
+    table->slabs = NULL;
+    table->free_list = NULL;
     return table;
 }
 
@@ -58,13 +101,14 @@ static void sigar_cache_dump(sigar_cache_t *table)
     for (i=0; i<table->size; i++) {
         sigar_cache_entry_t *entry = *entries++;
 
-        printf("|");
-        while (entry) {
-            printf("%lld", entry->id);
-            if (entry->next) {
-                printf(",");
-            }
-            entry = entry->next;
+        if (!entry) {
+            printf("|");
+        }
+        else if (entry == SIGAR_CACHE_DELETED) {
+            printf("|x");
+        }
+        else {
+            printf("|%lld", entry->id);
         }
     }
     printf("\n");
@@ -72,49 +116,78 @@ static void sigar_cache_dump(sigar_cache_t *table)
 }
 #endif
 
+static sigar_cache_entry_t *sigar_cache_entry_new(sigar_cache_t *table)
+{
+    sigar_cache_entry_t *entry;
+
+    if (!table->free_list) {
+        /* grow by the number of live entries, at least 8 */
+        unsigned int i, n = table->count < 8 ? 8 : table->count;
+        sigar_cache_slab_t *slab = malloc(SLAB_SIZE(n));
+
+        slab->next = table->slabs;
+        table->slabs = slab;
+
+        for (i=0; i<n; i++) {
+            slab->entries[i].next = table->free_list;
+            table->free_list = &slab->entries[i];
+        }
+    }
+
+    entry = table->free_list;
+    table->free_list = entry->next;
+    entry->next = NULL;
+
+    return entry;
+}
+
 static void sigar_cache_rehash(sigar_cache_t *table)
 {
-    int i;
-    unsigned int new_size = table->size * 2 + 1;
+    unsigned int i;
+    unsigned int old_size = table->size;
     sigar_cache_entry_t **entries = table->entries;
-    sigar_cache_entry_t **new_entries =
-        malloc(ENTRIES_SIZE(new_size));
+    sigar_cache_entry_t **new_entries;
 
-    memset(new_entries, '\0', ENTRIES_SIZE(new_size));
+    /* only grow if the slots are taken by live entries */
+    while (SIGAR_CACHE_FULL(table, table->count * 2)) {
+        table->size <<= 1;
+    }
 
-    for (i=0; i<table->size; i++) {
-        sigar_cache_entry_t *entry = *entries++;
+    new_entries = malloc(ENTRIES_SIZE(table->size));
+    memset(new_entries, '\0', ENTRIES_SIZE(table->size));
 
-        while (entry) {
-            sigar_cache_entry_t *next = entry->next;
-            sigar_uint64_t hash = entry->id % new_size;
+    for (i=0; i<old_size; i++) {
+        sigar_cache_entry_t *entry = entries[i];
+        unsigned int ix;
+
+        if (!entry || (entry == SIGAR_CACHE_DELETED)) {
+            continue;
+        }
 
-            entry->next = new_entries[hash];
-            new_entries[hash] = entry;
-            entry = next;
+        ix = SIGAR_CACHE_IX(table, entry->id);
+        while (new_entries[ix]) {
+            ix = (ix + 1) & (table->size - 1);
         }
+        new_entries[ix] = entry;
     }
 
     free(table->entries);
     table->entries = new_entries;
-    table->size = new_size;
+    table->used = table->count;
 }
 
-#define SIGAR_CACHE_IX(t, k) \
-    t->entries + (k % t->size)
-
 sigar_cache_entry_t *sigar_cache_find(sigar_cache_t *table,
                                       sigar_uint64_t key)
 {
-    sigar_cache_entry_t *entry, **ptr;
+    unsigned int mask = table->size - 1;
+    unsigned int ix = SIGAR_CACHE_IX(table, key);
+    sigar_cache_entry_t *entry;
 
-    for (ptr = SIGAR_CACHE_IX(table, key), entry = *ptr;
-         entry;
-         ptr = &entry->next, entry = *ptr)
-    {
-        if (entry->id == key) {
+    while ((entry = table->entries[ix])) {
+        if ((entry != SIGAR_CACHE_DELETED) && (entry->id == key)) {
             return entry;
         }
+        ix = (ix + 1) & mask;
     }
 
     return NULL;
@@ -124,58 +197,126 @@ sigar_cache_entry_t *sigar_cache_find(sigar_cache_t *table,
 sigar_cache_entry_t *sigar_cache_get(sigar_cache_t *table,
                                      sigar_uint64_t key)
 {
-    sigar_cache_entry_t *entry, **ptr;
+    unsigned int mask = table->size - 1;
+    unsigned int ix = SIGAR_CACHE_IX(table, key);
+    sigar_cache_entry_t *entry, **slot = NULL;
 
-    for (ptr = SIGAR_CACHE_IX(table, key), entry = *ptr;
-         entry;
-         ptr = &entry->next, entry = *ptr)
-    {
-        if (entry->id == key) {
+    while ((entry = table->entries[ix])) {
+        if (entry == SIGAR_CACHE_DELETED) {
+            if (!slot) {
+                slot = &table->entries[ix];
+            }
+        }
+        else if (entry->id == key) {
             return entry;
         }
+        ix = (ix + 1) & mask;
     }
 
-    if (table->count++ > table->size) {
+    if (slot) {
+        /* reuse deleted slot */
+        table->used--;
+    }
+    else if (SIGAR_CACHE_FULL(table, table->used + 1)) {
         sigar_cache_rehash(table);
 
-        for (ptr = SIGAR_CACHE_IX(table, key), entry = *ptr;
-             entry;
-             ptr = &entry->next, entry = *ptr)
-        {
+        mask = table->size - 1;
+        ix = SIGAR_CACHE_IX(table, key);
+        while (table->entries[ix]) {
+            ix = (ix + 1) & mask;
         }
+        slot = &table->entries[ix];
+    }
+    else {
+        slot = &table->entries[ix];
     }
 
-    *ptr = entry = malloc(sizeof(*entry));
+    *slot = entry = sigar_cache_entry_new(table);
     entry->id = key;
     entry->value = NULL;
-    entry->next = NULL;
+    table->count++;
+    table->used++;
 
     return entry;
 }
 
+static void sigar_cache_slot_delete(sigar_cache_t *table,
+                                    sigar_cache_entry_t **slot)
+{
+    sigar_cache_entry_t *entry = *slot;
+
+    if (entry->value) {
+        table->free_value(entry->value);
+        entry->value = NULL;
+    }
+
+    entry->next = table->free_list;
+    table->free_list = entry;
+
+    *slot = SIGAR_CACHE_DELETED;
+    table->count--;
+}
+
+int sigar_cache_delete(sigar_cache_t *table,
+                       sigar_uint64_t key)
+{
+    unsigned int mask = table->size - 1;
+    unsigned int ix = SIGAR_CACHE_IX(table, key);
+    sigar_cache_entry_t *entry;
+
+    while ((entry = table->entries[ix])) {
+        if ((entry != SIGAR_CACHE_DELETED) && (entry->id == key)) {
+            sigar_cache_slot_delete(table, &table->entries[ix]);
+            return 1;
+        }
+        ix = (ix + 1) & mask;
+    }
+
+    return 0;
+}
+
+void sigar_cache_sweep(sigar_cache_t *table,
+                       sigar_cache_sweep_t sweep, void *data)
+{
+    unsigned int i;
+
+    for (i=0; i<table->size; i++) {
+        sigar_cache_entry_t *entry = table->entries[i];
+
+        if (!entry || (entry == SIGAR_CACHE_DELETED)) {
+            continue;
+        }
+
+        if (sweep(data, entry)) {
+            sigar_cache_slot_delete(table, &table->entries[i]);
+        }
+    }
+}
+
 void sigar_cache_destroy(sigar_cache_t *table)
 {
-    int i;
+    unsigned int i;
     sigar_cache_entry_t **entries = table->entries;
+    sigar_cache_slab_t *slab = table->slabs;
 
 #ifdef DEBUG_CACHE
     sigar_cache_dump(table);
 #endif
 
     for (i=0; i<table->size; i++) {
-        sigar_cache_entry_t *entry, *ptr;
-        entry = *entries++;
+        sigar_cache_entry_t *entry = *entries++;
 
-        while (entry) {
-            if (entry->value) {
-                table->free_value(entry->value);
-            }
-            ptr = entry->next;
-            free(entry);
-            entry = ptr;
+        if (entry && (entry != SIGAR_CACHE_DELETED) && entry->value) {
+            table->free_value(entry->value);
         }
     }
 
+    while (slab) {
+        sigar_cache_slab_t *next = slab->next;
+        free(slab);
+        slab = next;
+    }
+
     free(table->entries);
     free(table);
 }
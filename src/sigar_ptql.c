@@ -26,6 +26,9 @@
 
 #ifdef SIGAR_HAS_PCRE
 #include "pcre.h"
+#elif !defined(WIN32) && !defined(NETWARE)
+#include <regex.h>
+#define PTQL_HAS_REGEX
 #endif
 
 /* See http://gcc.gnu.org/ml/libstdc++/2002-03/msg00164.html */
@@ -105,6 +108,8 @@ typedef enum {
 #define PTQL_OP_FLAG_GLOB   4
 #define PTQL_OP_FLAG_PID    8
 #define PTQL_OP_FLAG_ICASE  16
+#define PTQL_OP_FLAG_RE     32 /* value.ptr is a compiled regex_t */
+#define PTQL_OP_FLAG_STATIC 64 /* result fixed per process image */
 
 struct ptql_parse_branch_t {
     char *name;
@@ -179,11 +184,76 @@ struct ptql_branch_t {
     } match;
     any_value_t value;
     void (*value_free)(void *);
+    unsigned int cost;
+    char *text;
 };
 
+/*
+ * relative per-process cost of a lookup, used to order branches
+ * so the cheap ones can short-circuit before any expensive reads.
+ * Pid, Port and Service filter the pid list once up front and
+ * cost nothing per process.
+ */
+#define PTQL_COST_PID     0
+#define PTQL_COST_STATE   10 /* /proc/<pid>/stat or equivalent */
+#define PTQL_COST_CPU     15
+#define PTQL_COST_MEM     20
+#define PTQL_COST_CRED    20
+#define PTQL_COST_NAME    30 /* + getpwuid/getgrgid */
+#define PTQL_COST_EXE     40
+#define PTQL_COST_FD      50
+#define PTQL_COST_ARGS    60
+#define PTQL_COST_ENV     70
+#define PTQL_COST_MODULES 80
+#define PTQL_COST_PARENT  PTQL_COST_STATE /* P modifier: ppid lookup */
+#define PTQL_COST_MEMO    (PTQL_COST_STATE * 2) /* state + time lookup */
+
+/*
+ * lookups whose value does not change while a process runs the same
+ * image, i.e. for a given pid, start time and name.  results of
+ * these branches are remembered per query and sigar_t, see
+ * ptql_memo_get.  Cred can change with setuid() and Args can be
+ * rewritten in place, so those are not listed.
+ */
+static const char *ptql_static_lookups[] = {
+    "Exe.Name",
+    "State.Name",
+    "Time.StartTime",
+    "Cpu.StartTime",
+    "Env.*",
+    NULL
+};
+
+#define PTQL_MEMO_UNKNOWN -1
+
+/* memo tables not used by a scan for this long are dropped */
+#define PTQL_MEMO_SWEEP (10 * 60 * 1000)
+
+typedef struct {
+    sigar_uint64_t start_time;
+    char name[sizeof(((sigar_proc_state_t *)0)->name)];
+    unsigned int generation;
+    int matched;
+} ptql_memo_t;
+
+/*
+ * memo of one query, kept in sigar->ptql_memo rather than in the
+ * query so a query can be shared by threads with their own sigar_t.
+ */
+typedef struct {
+    sigar_ptql_query_t *query;
+    sigar_uint64_t last_time;
+    unsigned int generation;
+    sigar_cache_t *procs;
+} ptql_memo_table_t;
+
+/* key into sigar->ptql_memo, 0 if the query is not memoized */
+static sigar_uint64_t ptql_memo_serial = 0;
+
 typedef struct {
     char *name;
     ptql_lookup_t *members;
+    unsigned int cost;
 } ptql_entry_t;
 
 typedef struct {
@@ -194,6 +264,13 @@ typedef struct {
 
 struct sigar_ptql_query_t {
     ptql_branch_list_t branches;
+    int planned;
+    sigar_uint64_t memo;
+    ptql_lookup_t *sort;
+    char *sort_name;
+    void *sort_data;
+    int sort_desc;
+    unsigned long limit;
 #ifdef PTQL_DEBUG
     char *ptql;
 #endif
@@ -435,6 +512,12 @@ static int ptql_op_str_re(ptql_branch_t *branch,
     int rc =
         pcre_exec(re, NULL, haystack, len, 0, 0, NULL, 0);
     return rc >= 0;
+#elif defined(PTQL_HAS_REGEX)
+    if (branch->op_flags & PTQL_OP_FLAG_RE) {
+        return regexec((regex_t *)branch->value.ptr,
+                       haystack, 0, NULL, 0) == 0;
+    }
+    return 0;
 #else
     return 0;
 #endif
@@ -545,8 +628,13 @@ static int ptql_branch_list_destroy(ptql_branch_list_t *branches)
                 branch->data_free(branch->data.ptr);
             }
 
+            if (branch->text) {
+                free(branch->text);
+            }
+
             if (branch->lookup &&
-                (branch->lookup->type == PTQL_VALUE_TYPE_STR) &&
+                ((branch->lookup->type == PTQL_VALUE_TYPE_STR) ||
+                 (branch->op_flags & PTQL_OP_FLAG_RE)) &&
                 !(branch->op_flags & PTQL_OP_FLAG_REF))
             {
                 if (branch->value.str) {
@@ -564,6 +652,7 @@ static int ptql_branch_list_destroy(ptql_branch_list_t *branches)
 
 #ifdef WIN32
 #define vsnprintf _vsnprintf
+#define snprintf _snprintf
 #endif
 
 #define PTQL_ERRNAN \
@@ -597,7 +686,9 @@ static int ptql_str_match(sigar_t *sigar, ptql_branch_t *branch, char *value)
         return 0;
     }
 #ifndef SIGAR_HAS_PCRE
-    if (branch->op_name == PTQL_OP_RE) {
+    if ((branch->op_name == PTQL_OP_RE) &&
+        !(branch->op_flags & PTQL_OP_FLAG_RE))
+    {
         if (sigar->ptql_re_impl) {
             return sigar->ptql_re_impl(sigar->ptql_re_data,
                                        value,
@@ -1409,20 +1500,20 @@ static ptql_lookup_t PTQL_Service[] = {
 };
 
 static ptql_entry_t ptql_map[] = {
-    { "Time",     PTQL_Time },
-    { "Cpu",      PTQL_Cpu },
-    { "CredName", PTQL_CredName },
-    { "Mem",      PTQL_Mem },
-    { "Exe",      PTQL_Exe },
-    { "Cred",     PTQL_Cred },
-    { "State",    PTQL_State },
-    { "Fd",       PTQL_Fd },
-    { "Args",     PTQL_Args },
-    { "Modules",  PTQL_Modules },
-    { "Env",      PTQL_Env },
-    { "Port",     PTQL_Port },
-    { "Pid",      PTQL_Pid },
-    { "Service",  PTQL_Service },
+    { "Time",     PTQL_Time,     PTQL_COST_STATE },
+    { "Cpu",      PTQL_Cpu,      PTQL_COST_CPU },
+    { "CredName", PTQL_CredName, PTQL_COST_NAME },
+    { "Mem",      PTQL_Mem,      PTQL_COST_MEM },
+    { "Exe",      PTQL_Exe,      PTQL_COST_EXE },
+    { "Cred",     PTQL_Cred,     PTQL_COST_CRED },
+    { "State",    PTQL_State,    PTQL_COST_STATE },
+    { "Fd",       PTQL_Fd,       PTQL_COST_FD },
+    { "Args",     PTQL_Args,     PTQL_COST_ARGS },
+    { "Modules",  PTQL_Modules,  PTQL_COST_MODULES },
+    { "Env",      PTQL_Env,      PTQL_COST_ENV },
+    { "Port",     PTQL_Port,     PTQL_COST_PID },
+    { "Pid",      PTQL_Pid,      PTQL_COST_PID },
+    { "Service",  PTQL_Service,  PTQL_COST_PID },
     { NULL }
 };
 
@@ -1490,6 +1581,136 @@ static int ptql_branch_parse(char *query, ptql_parse_branch_t *branch,
     return SIGAR_OK;
 }
 
+#ifdef PTQL_HAS_REGEX
+/*
+ * java.util.regex shorthand classes which POSIX ERE lacks.
+ */
+static const char *ptql_re_class(char c)
+{
+    switch (c) {
+      case 'd':
+        return "[0-9]";
+      case 'D':
+        return "[^0-9]";
+      case 's':
+        return "[[:space:]]";
+      case 'S':
+        return "[^[:space:]]";
+      case 'w':
+        return "[[:alnum:]_]";
+      case 'W':
+        return "[^[:alnum:]_]";
+      default:
+        return NULL;
+    }
+}
+
+/*
+ * compile a java.util.regex style pattern as POSIX ERE.
+ * returns NULL for syntax that would not mean the same thing
+ * to both engines (escapes within brackets, \b, \Q, (?i), etc.),
+ * leaving those patterns to the sigar->ptql_re_impl callback.
+ */
+static regex_t *ptql_regcomp(const char *pattern, int icase)
+{
+    regex_t *re;
+    const char *cls;
+    char *ere, *ptr;
+    int bracket = 0;
+
+    /* worst case: every 2 char escape becomes 13 chars */
+    ere = ptr = malloc(strlen(pattern) * 7 + 1);
+
+    while (*pattern) {
+        char c = *pattern++;
+
+        if (bracket) {
+            if ((c == '\\') || (c == '[') ||
+                ((c == '&') && (*pattern == '&')))
+            {
+                free(ere);
+                return NULL;
+            }
+            if (c == ']') {
+                bracket = 0;
+            }
+            *ptr++ = c;
+        }
+        else if (c == '\\') {
+            c = *pattern++;
+            if ((cls = ptql_re_class(c))) {
+                strcpy(ptr, cls);
+                ptr += strlen(cls);
+            }
+            else if (c && strchr(".[]()*+?{}|^$\\", c)) {
+                *ptr++ = '\\';
+                *ptr++ = c; /* escaped metacharacter */
+            }
+            else if (c && (c > ' ') && (c < 0x7f) &&
+                     !sigar_isalpha(c) && !sigar_isdigit(c))
+            {
+                /* e.g. \< is a word anchor to glibc, a literal to java */
+                *ptr++ = '[';
+                *ptr++ = c;
+                *ptr++ = ']';
+            }
+            else {
+                free(ere);
+                return NULL;
+            }
+        }
+        else {
+            *ptr++ = c;
+            if (c == '[') {
+                bracket = 1;
+                if (*pattern == '^') {
+                    *ptr++ = *pattern++;
+                }
+                if (*pattern == ']') {
+                    *ptr++ = *pattern++; /* literal ']' */
+                }
+            }
+        }
+    }
+    *ptr = '\0';
+
+    re = malloc(sizeof(*re));
+    if (regcomp(re, ere,
+                REG_EXTENDED | REG_NOSUB | (icase ? REG_ICASE : 0)) != 0)
+    {
+        free(re);
+        re = NULL;
+    }
+
+    free(ere);
+    return re;
+}
+
+static void ptql_regfree(void *re)
+{
+    regfree((regex_t *)re);
+    free(re);
+}
+#endif
+
+static int ptql_lookup_is_static(const char *name, const char *attr)
+{
+    int i;
+    size_t len = strlen(name);
+
+    for (i=0; ptql_static_lookups[i]; i++) {
+        const char *lookup = ptql_static_lookups[i];
+
+        if (strnEQ(lookup, name, len) && (lookup[len] == '.') &&
+            (strEQ(&lookup[len+1], "*") || strEQ(&lookup[len+1], attr)))
+        {
+            return 1;
+        }
+    }
+
+    return 0;
+}
+
 static int ptql_branch_add(ptql_parse_branch_t *parsed,
                            ptql_branch_list_t *branches,
                            sigar_ptql_error_t *error)
@@ -1508,6 +1729,15 @@ static int ptql_branch_add(ptql_parse_branch_t *parsed,
     branch->value_free = data_free;
     branch->op_flags = parsed->op_flags;
 
+    /* as written, for sigar_ptql_query_explain */
+    branch->text = malloc(strlen(parsed->name) + strlen(parsed->attr) +
+                          strlen(parsed->op) + strlen(parsed->value) + 6);
+    sprintf(branch->text, "%s.%s.%s%s%s=%s",
+            parsed->name, parsed->attr,
+            (branch->op_flags & PTQL_OP_FLAG_PARENT) ? "P" : "",
+            IS_ICASE(branch) ? "I" : "",
+            parsed->op, parsed->value);
+
     branch->op_name = ptql_op_code_get(parsed->op);
     if (branch->op_name == PTQL_OP_MAX) {
         return ptql_error(error, "Unsupported operator: %s", parsed->op);
@@ -1551,6 +1781,14 @@ static int ptql_branch_add(ptql_parse_branch_t *parsed,
 
     branch->lookup = lookup;
 
+    branch->cost = entry->cost;
+    if (branch->op_flags & PTQL_OP_FLAG_PARENT) {
+        branch->cost += PTQL_COST_PARENT;
+    }
+    else if (ptql_lookup_is_static(parsed->name, parsed->attr)) {
+        branch->op_flags |= PTQL_OP_FLAG_STATIC;
+    }
+
     if ((lookup->type < PTQL_VALUE_TYPE_STR) &&
         (branch->op_name > PTQL_OP_MAX_NSTR))
     {
@@ -1606,6 +1844,15 @@ static int ptql_branch_add(ptql_parse_branch_t *parsed,
         is_set = 1;
         branch->value.ptr = re;
         branch->value_free = pcre_free;
+#elif defined(PTQL_HAS_REGEX)
+        regex_t *re = ptql_regcomp(parsed->value, IS_ICASE(branch));
+        if (re) {
+            is_set = 1;
+            branch->value.ptr = re;
+            branch->value_free = ptql_regfree;
+            branch->op_flags |= PTQL_OP_FLAG_RE;
+        }
+        /* else left to sigar->ptql_re_impl at match time */
 #endif
     }
 
@@ -1663,19 +1910,123 @@ static int ptql_branch_add(ptql_parse_branch_t *parsed,
 
 static int ptql_branch_compare(const void *b1, const void *b2)
 {
-    /* XXX can do better */
     ptql_branch_t *branch1 = (ptql_branch_t *)b1;
     ptql_branch_t *branch2 = (ptql_branch_t *)b2;
+
+    if (branch1->cost != branch2->cost) {
+        return branch1->cost < branch2->cost ? -1 : 1;
+    }
+    /* numeric compares before string */
     return
         branch1->lookup->type -
         branch2->lookup->type;
 }
 
+/*
+ * options follow the branches, each after a ';':
+ *   State.Name.eq=java;sort=Mem.Resident;desc;limit=20
+ * a ';' not followed by an option is left as part of a branch value.
+ */
+static char *ptql_options_find(char *ptql)
+{
+    char *ptr = ptql;
+
+    while ((ptr = strchr(ptr, ';'))) {
+        char *opt = ptr + 1;
+
+        if (strnEQ(opt, "sort=", 5) || strnEQ(opt, "limit=", 6) ||
+            strEQ(opt, "asc") || strnEQ(opt, "asc;", 4) ||
+            strEQ(opt, "desc") || strnEQ(opt, "desc;", 5))
+        {
+            return ptr;
+        }
+        ptr = opt;
+    }
+
+    return NULL;
+}
+
+/* numeric sigar_proc_*_get lookup by name, e.g. "Mem.Resident" */
+static ptql_lookup_t *ptql_sort_lookup_find(char *name)
+{
+    int i;
+    char *attr = strchr(name, '.');
+
+    if (!attr) {
+        return NULL;
+    }
+
+    for (i=0; ptql_map[i].name; i++) {
+        ptql_lookup_t *lookup = ptql_map[i].members;
+
+        if (!strnEQ(ptql_map[i].name, name, attr - name) ||
+            (ptql_map[i].name[attr - name] != '\0'))
+        {
+            continue;
+        }
+
+        for (; lookup->name; lookup++) {
+            if (strEQ(lookup->name, attr + 1) &&
+                (lookup->type <= PTQL_VALUE_TYPE_DBL) &&
+                !lookup->init)
+            {
+                return lookup;
+            }
+        }
+    }
+
+    return NULL;
+}
+
+static int ptql_options_parse(sigar_ptql_query_t *query, char *opts,
+                              sigar_ptql_error_t *error)
+{
+    char *ptr;
+
+    do {
+        if ((ptr = strchr(opts, ';'))) {
+            *ptr++ = '\0';
+        }
+
+        if (strnEQ(opts, "sort=", 5)) {
+            ptql_lookup_t *lookup = ptql_sort_lookup_find(opts + 5);
+
+            if (!lookup || query->sort) {
+                return ptql_error(error, "Unsupported sort key: %s",
+                                  opts + 5);
+            }
+            query->sort = lookup;
+            query->sort_name = sigar_strdup(opts + 5);
+            query->sort_data = malloc(lookup->data_size);
+        }
+        else if (strnEQ(opts, "limit=", 6)) {
+            char *end;
+
+            SIGAR_CLEAR_ERRNO();
+            query->limit = strtoul(opts + 6, &end, 10);
+            if (strtonum_failed(opts + 6, end) || (query->limit == 0)) {
+                return ptql_error(error, "Invalid limit: %s", opts + 6);
+            }
+        }
+        else if (strEQ(opts, "desc")) {
+            query->sort_desc = 1;
+        }
+        else if (strEQ(opts, "asc")) {
+            query->sort_desc = 0;
+        }
+        else {
+            return ptql_error(error, "Unsupported option: %s", opts);
+        }
+    } while ((opts = ptr) && *opts);
+
+    return SIGAR_OK;
+}
+
 SIGAR_DECLARE(int) sigar_ptql_query_create(sigar_ptql_query_t **queryp,
                                            char *ptql,
                                            sigar_ptql_error_t *error)
 {
-    char *ptr, *ptql_copy = sigar_strdup(ptql);
+    char *ptr, *opts, *ptql_copy = sigar_strdup(ptql);
     int status = SIGAR_OK;
     int has_ref = 0;
     sigar_ptql_query_t *query =
@@ -1683,6 +2034,14 @@ SIGAR_DECLARE(int) sigar_ptql_query_create(sigar_ptql_query_t **queryp,
 
     (void)ptql_error(error, "Malformed query");
 
+    query->planned = 0;
+    query->memo = 0;
+    query->sort = NULL;
+    query->sort_name = NULL;
+    query->sort_data = NULL;
+    query->sort_desc = 0;
+    query->limit = 0;
+
 #ifdef PTQL_DEBUG
     query->ptql = sigar_strdup(ptql);
 #endif
@@ -1691,6 +2050,10 @@ SIGAR_DECLARE(int) sigar_ptql_query_create(sigar_ptql_query_t **queryp,
 
     ptql_branch_list_create(&query->branches);
 
+    if ((opts = ptql_options_find(ptql))) {
+        *opts++ = '\0';
+    }
+
     do {
         ptql_parse_branch_t parsed;
 
@@ -1722,6 +2085,10 @@ SIGAR_DECLARE(int) sigar_ptql_query_create(sigar_ptql_query_t **queryp,
         }
     } while (*ptql);
 
+    if ((status == SIGAR_OK) && opts) {
+        status = ptql_options_parse(query, opts, error);
+    }
+
     free(ptql_copy);
 
     if (status != SIGAR_OK) {
@@ -1729,10 +2096,29 @@ SIGAR_DECLARE(int) sigar_ptql_query_create(sigar_ptql_query_t **queryp,
         *queryp = NULL;
     }
     else if (!has_ref && (query->branches.number > 1)) {
+        /* $N references index the branches as written */
         qsort(query->branches.data,
               query->branches.number,
               sizeof(query->branches.data[0]),
               ptql_branch_compare);
+        query->planned = 1;
+    }
+
+    if ((status == SIGAR_OK) && !has_ref) {
+        /* $N references need the data of every branch per process */
+        int i;
+        unsigned int cost = 0;
+
+        for (i=0; i<query->branches.number; i++) {
+            ptql_branch_t *branch = &query->branches.data[i];
+            if (branch->op_flags & PTQL_OP_FLAG_STATIC) {
+                cost += branch->cost;
+            }
+        }
+
+        if (cost > PTQL_COST_MEMO) {
+            query->memo = ++ptql_memo_serial;
+        }
     }
 
     if (status == SIGAR_OK) {
@@ -1746,11 +2132,69 @@ SIGAR_DECLARE(int) sigar_ptql_query_destroy(sigar_ptql_query_t *query)
 #ifdef PTQL_DEBUG
     free(query->ptql);
 #endif
+    if (query->sort_name) {
+        free(query->sort_name);
+        free(query->sort_data);
+    }
     ptql_branch_list_destroy(&query->branches);
     free(query);
     return SIGAR_OK;
 }
 
+SIGAR_DECLARE(int) sigar_ptql_query_explain(sigar_ptql_query_t *query,
+                                            char *buffer, int buflen)
+{
+    int i, len = 0;
+
+    buffer[0] = '\0';
+
+    for (i=0; i<query->branches.number; i++) {
+        ptql_branch_t *branch = &query->branches.data[i];
+        const char *note = "";
+        int n;
+
+        if (branch->op_flags & PTQL_OP_FLAG_PID) {
+            note = ", pid list filter";
+        }
+        else if (query->memo && (branch->op_flags & PTQL_OP_FLAG_STATIC)) {
+            note = ", memoized";
+        }
+
+        n = snprintf(buffer + len, buflen - len,
+                     "%d. %s (cost=%u%s)\n",
+                     i + 1, branch->text, branch->cost, note);
+        if ((n < 0) || (n >= buflen - len)) {
+            buffer[buflen-1] = '\0'; /* truncated */
+            return SIGAR_OK;
+        }
+        len += n;
+    }
+
+    if (!query->planned && (query->branches.number > 1)) {
+        int n = snprintf(buffer + len, buflen - len,
+                         "(order as written: query uses $N references)\n");
+        if ((n < 0) || (n >= buflen - len)) {
+            buffer[buflen-1] = '\0';
+            return SIGAR_OK;
+        }
+        len += n;
+    }
+
+    if (query->sort) {
+        snprintf(buffer + len, buflen - len,
+                 "sort by %s %s, keeping %lu\n",
+                 query->sort_name, query->sort_desc ? "desc" : "asc",
+                 query->limit);
+    }
+    else if (query->limit) {
+        snprintf(buffer + len, buflen - len,
+                 "first %lu matches\n", query->limit);
+    }
+    buffer[buflen-1] = '\0';
+
+    return SIGAR_OK;
+}
+
 SIGAR_DECLARE(void) sigar_ptql_re_impl_set(sigar_t *sigar, void *data,
                                            sigar_ptql_re_impl_t impl)
 {
@@ -1758,68 +2202,246 @@ SIGAR_DECLARE(void) sigar_ptql_re_impl_set(sigar_t *sigar, void *data,
     sigar->ptql_re_impl = impl;
 }
 
-SIGAR_DECLARE(int) sigar_ptql_query_match(sigar_t *sigar,
-                                          sigar_ptql_query_t *query,
-                                          sigar_pid_t query_pid)
+static int ptql_branch_eval(sigar_t *sigar,
+                            sigar_ptql_query_t *query,
+                            ptql_branch_t *branch,
+                            sigar_pid_t pid)
 {
-    int i;
+    int status, matched=0;
+    ptql_lookup_t *lookup = branch->lookup;
 
-    for (i=0; i<query->branches.number; i++) {
-        sigar_pid_t pid = query_pid;
-        int status, matched=0;
-        ptql_branch_t *branch = &query->branches.data[i];
-        ptql_lookup_t *lookup = branch->lookup;
+    if (branch->op_flags & PTQL_OP_FLAG_PARENT) {
+        sigar_proc_state_t state;
 
-        if (branch->op_flags & PTQL_OP_FLAG_PARENT) {
-            sigar_proc_state_t state;
+        status = sigar_proc_state_get(sigar, pid, &state);
+        if (status != SIGAR_OK) {
+            return status;
+        }
 
-            status = sigar_proc_state_get(sigar, pid, &state);
-            if (status != SIGAR_OK) {
-                return status;
-            }
+        pid = state.ppid;
+    }
 
-            pid = state.ppid;
+    if (lookup->type == PTQL_VALUE_TYPE_ANY) {
+        /* Args, Env, etc. */
+        status = lookup->get(sigar, pid, branch);
+        if (status == SIGAR_OK) {
+            matched = 1;
         }
-
-        if (lookup->type == PTQL_VALUE_TYPE_ANY) {
-            /* Args, Env, etc. */
-            status = lookup->get(sigar, pid, branch);
-            if (status == SIGAR_OK) {
-                matched = 1;
-            }
+    }
+    else {
+        /* standard sigar_proc_*_get / structptr + offset */
+        if (!branch->data.ptr) {
+            branch->data_size = lookup->data_size;
+            branch->data.ptr = malloc(branch->data_size);
+        }
+        status = lookup->get(sigar, pid, branch->data.ptr);
+        if (status != SIGAR_OK) {
+            return status;
         }
-        else {
-            /* standard sigar_proc_*_get / structptr + offset */
-            if (!branch->data.ptr) {
-                branch->data_size = lookup->data_size;
-                branch->data.ptr = malloc(branch->data_size);
-            }
-            status = lookup->get(sigar, pid, branch->data.ptr);
-            if (status != SIGAR_OK) {
-                return status;
-            }
 
-            if (branch->op_flags & PTQL_OP_FLAG_REF) {
-                ptql_branch_t *ref =
-                    &query->branches.data[branch->value.ui32];
+        if (branch->op_flags & PTQL_OP_FLAG_REF) {
+            ptql_branch_t *ref =
+                &query->branches.data[branch->value.ui32];
 
-                matched = ptql_branch_match_ref(branch, ref);
-            }
+            matched = ptql_branch_match_ref(branch, ref);
+        }
 #ifndef SIGAR_HAS_PCRE
-            else if (branch->lookup->type == PTQL_VALUE_TYPE_STR) {
-                matched = ptql_str_match(sigar, branch, (char *)DATA_PTR(branch));
-            }
+        else if (branch->lookup->type == PTQL_VALUE_TYPE_STR) {
+            matched = ptql_str_match(sigar, branch, (char *)DATA_PTR(branch));
+        }
 #endif
-            else {
-                matched = ptql_branch_match(branch);
-            }
+        else {
+            matched = ptql_branch_match(branch);
         }
+    }
+
+    return matched ? SIGAR_OK : 1;
+}
+
+static void ptql_memo_table_free(void *ptr)
+{
+    ptql_memo_table_t *table = (ptql_memo_table_t *)ptr;
+
+    sigar_cache_destroy(table->procs);
+    free(table);
+}
+
+/*
+ * this sigar_t's memo table for query, NULL if the query
+ * is not memoized.
+ */
+static ptql_memo_table_t *ptql_memo_table_get(sigar_t *sigar,
+                                              sigar_ptql_query_t *query)
+{
+    sigar_cache_entry_t *entry;
+    ptql_memo_table_t *table;
+
+    if (!query->memo) {
+        return NULL;
+    }
+
+    if (!sigar->ptql_memo) {
+        sigar->ptql_memo = sigar_cache_new(16);
+        sigar->ptql_memo->free_value = ptql_memo_table_free;
+    }
+
+    entry = sigar_cache_get(sigar->ptql_memo, query->memo);
+    if ((table = (ptql_memo_table_t *)entry->value) &&
+        (table->query != query))
+    {
+        /* serial handed out twice by a concurrent compile */
+        ptql_memo_table_free(table);
+        table = entry->value = NULL;
+    }
+
+    if (!table) {
+        table = entry->value = malloc(sizeof(*table));
+        table->query = query;
+        table->last_time = sigar_time_now_millis();
+        table->generation = 0;
+        table->procs = sigar_cache_new(128);
+    }
+
+    return table;
+}
+
+static int ptql_memo_table_stale(void *data, sigar_cache_entry_t *entry)
+{
+    ptql_memo_table_t *table = (ptql_memo_table_t *)entry->value;
+
+    return !table ||
+        ((*(sigar_uint64_t *)data - table->last_time) > PTQL_MEMO_SWEEP);
+}
+
+/*
+ * start a scan of the process list: drop the tables of queries
+ * that have not been used for a while, e.g. destroyed ones.
+ */
+static ptql_memo_table_t *ptql_memo_scan(sigar_t *sigar,
+                                         sigar_ptql_query_t *query)
+{
+    sigar_uint64_t time_now = sigar_time_now_millis();
+    ptql_memo_table_t *table;
+
+    if (sigar->ptql_memo) {
+        sigar_cache_sweep(sigar->ptql_memo, ptql_memo_table_stale,
+                          &time_now);
+    }
 
-        if (!matched) {
+    if ((table = ptql_memo_table_get(sigar, query))) {
+        table->last_time = time_now;
+        table->generation++;
+    }
+
+    return table;
+}
+
+/*
+ * memo entry for the process image running as pid, reset when
+ * the pid is reused (start time) or the process exec()s (name).
+ * NULL if the identity cannot be read, e.g. the process is gone.
+ */
+static ptql_memo_t *ptql_memo_get(sigar_t *sigar,
+                                  ptql_memo_table_t *table,
+                                  sigar_pid_t pid)
+{
+    sigar_proc_state_t state;
+    sigar_proc_time_t ptime;
+    sigar_cache_entry_t *entry;
+    ptql_memo_t *memo;
+
+    if ((sigar_proc_state_get(sigar, pid, &state) != SIGAR_OK) ||
+        (sigar_proc_time_get(sigar, pid, &ptime) != SIGAR_OK))
+    {
+        return NULL;
+    }
+
+    entry = sigar_cache_get(table->procs, pid);
+    if (!(memo = (ptql_memo_t *)entry->value)) {
+        memo = entry->value = malloc(sizeof(*memo));
+        memo->matched = PTQL_MEMO_UNKNOWN;
+    }
+    else if ((memo->start_time != ptime.start_time) ||
+             !strEQ(memo->name, state.name))
+    {
+        memo->matched = PTQL_MEMO_UNKNOWN;
+    }
+
+    memo->start_time = ptime.start_time;
+    /* same size as state.name, no truncation */
+    memcpy(memo->name, state.name, sizeof(memo->name));
+    memo->name[sizeof(memo->name)-1] = '\0';
+    memo->generation = table->generation;
+
+    return memo;
+}
+
+static int ptql_memo_stale(void *data, sigar_cache_entry_t *entry)
+{
+    ptql_memo_t *memo = (ptql_memo_t *)entry->value;
+
+    return !memo || (memo->generation != *(unsigned int *)data);
+}
+
+/* drop processes not seen by the scan that just finished */
+static void ptql_memo_sweep(ptql_memo_table_t *table)
+{
+    if (table) {
+        sigar_cache_sweep(table->procs, ptql_memo_stale,
+                          &table->generation);
+    }
+}
+
+SIGAR_DECLARE(int) sigar_ptql_query_match(sigar_t *sigar,
+                                          sigar_ptql_query_t *query,
+                                          sigar_pid_t query_pid)
+{
+    int i, status;
+    ptql_memo_table_t *table;
+    ptql_memo_t *memo = NULL;
+
+    if ((table = ptql_memo_table_get(sigar, query))) {
+        memo = ptql_memo_get(sigar, table, query_pid);
+    }
+
+    if (memo) {
+        if (memo->matched == PTQL_MEMO_UNKNOWN) {
+            for (i=0; i<query->branches.number; i++) {
+                ptql_branch_t *branch = &query->branches.data[i];
+
+                if (!(branch->op_flags & PTQL_OP_FLAG_STATIC)) {
+                    continue;
+                }
+
+                status = ptql_branch_eval(sigar, query, branch, query_pid);
+                if (status == 1) {
+                    memo->matched = 0;
+                    return 1;
+                }
+                else if (status != SIGAR_OK) {
+                    return status; /* not remembered, try again next time */
+                }
+            }
+            memo->matched = 1;
+        }
+        else if (!memo->matched) {
             return 1;
         }
     }
 
+    for (i=0; i<query->branches.number; i++) {
+        ptql_branch_t *branch = &query->branches.data[i];
+
+        if (memo && (branch->op_flags & PTQL_OP_FLAG_STATIC)) {
+            continue; /* already known to match */
+        }
+
+        status = ptql_branch_eval(sigar, query, branch, query_pid);
+        if (status != SIGAR_OK) {
+            return status;
+        }
+    }
+
     return SIGAR_OK;
 }
 
@@ -1882,12 +2504,15 @@ SIGAR_DECLARE(int) sigar_ptql_query_find_process(sigar_t *sigar,
     int status;
     int i, matches=0;
     sigar_proc_list_t *pids;
+    ptql_memo_table_t *table;
 
     status = ptql_proc_list_get(sigar, query, &pids);
     if (status != SIGAR_OK) {
         return status;
     }
 
+    table = ptql_memo_scan(sigar, query);
+
     for (i=0; i<pids->number; i++) {
         int query_status =
             sigar_ptql_query_match(sigar, query, pids->data[i]);
@@ -1903,6 +2528,7 @@ SIGAR_DECLARE(int) sigar_ptql_query_find_process(sigar_t *sigar,
         } /* else ok, e.g. permission denied */
     }
 
+    ptql_memo_sweep(table);
     ptql_proc_list_destroy(sigar, pids);
 
     if (status != SIGAR_OK) {
@@ -1925,28 +2551,174 @@ SIGAR_DECLARE(int) sigar_ptql_query_find_process(sigar_t *sigar,
     return -1;
 }
 
-SIGAR_DECLARE(int) sigar_ptql_query_find(sigar_t *sigar,
-                                         sigar_ptql_query_t *query,
-                                         sigar_proc_list_t *proclist)
+typedef struct {
+    sigar_pid_t pid;
+    double value;
+} ptql_sort_entry_t;
+
+/* non-zero if entry a sorts after entry b */
+#define PTQL_SORT_AFTER(query, a, b) \
+    ((query)->sort_desc ? \
+     ((a)->value < (b)->value) : ((a)->value > (b)->value))
+
+static int ptql_sort_value_get(sigar_t *sigar,
+                               sigar_ptql_query_t *query,
+                               sigar_pid_t pid,
+                               double *value)
+{
+    ptql_lookup_t *lookup = query->sort;
+    char *ptr = (char *)query->sort_data + lookup->offset;
+    int status = lookup->get(sigar, pid, query->sort_data);
+
+    if (status != SIGAR_OK) {
+        return status;
+    }
+
+    switch (lookup->type) {
+      case PTQL_VALUE_TYPE_UI64:
+        *value = (double)*(sigar_uint64_t *)ptr;
+        break;
+      case PTQL_VALUE_TYPE_UI32:
+        *value = (double)*(sigar_uint32_t *)ptr;
+        break;
+      case PTQL_VALUE_TYPE_DBL:
+      default:
+        *value = *(double *)ptr;
+        break;
+    }
+
+    return SIGAR_OK;
+}
+
+/*
+ * the result is kept as a heap with the entry that sorts last at
+ * the root, so with a limit only the best N entries are ever held.
+ */
+static void ptql_sort_heap_up(sigar_ptql_query_t *query,
+                              ptql_sort_entry_t *heap,
+                              unsigned long i)
+{
+    while (i > 0) {
+        unsigned long parent = (i - 1) / 2;
+        ptql_sort_entry_t tmp;
+
+        if (!PTQL_SORT_AFTER(query, &heap[i], &heap[parent])) {
+            break;
+        }
+        tmp = heap[i];
+        heap[i] = heap[parent];
+        heap[parent] = tmp;
+        i = parent;
+    }
+}
+
+static void ptql_sort_heap_down(sigar_ptql_query_t *query,
+                                ptql_sort_entry_t *heap,
+                                unsigned long n)
+{
+    unsigned long i = 0;
+
+    for (;;) {
+        unsigned long last = i, child = (2 * i) + 1;
+        ptql_sort_entry_t tmp;
+
+        if ((child < n) && PTQL_SORT_AFTER(query, &heap[child], &heap[last])) {
+            last = child;
+        }
+        child++;
+        if ((child < n) && PTQL_SORT_AFTER(query, &heap[child], &heap[last])) {
+            last = child;
+        }
+        if (last == i) {
+            break;
+        }
+        tmp = heap[i];
+        heap[i] = heap[last];
+        heap[last] = tmp;
+        i = last;
+    }
+}
+
+static int ptql_sort_asc(const void *e1, const void *e2)
+{
+    double v1 = ((ptql_sort_entry_t *)e1)->value;
+    double v2 = ((ptql_sort_entry_t *)e2)->value;
+
+    return (v1 < v2) ? -1 : ((v1 > v2) ? 1 : 0);
+}
+
+static int ptql_sort_desc(const void *e1, const void *e2)
+{
+    return ptql_sort_asc(e2, e1);
+}
+
+static int ptql_query_find(sigar_t *sigar,
+                           sigar_ptql_query_t *query,
+                           sigar_proc_list_t *proclist,
+                           double **values)
 {
     int status;
     int i;
+    unsigned long n = 0, size = 0;
     sigar_proc_list_t *pids;
+    ptql_memo_table_t *table;
+    ptql_sort_entry_t *entries = NULL;
 
     status = ptql_proc_list_get(sigar, query, &pids);
     if (status != SIGAR_OK) {
         return status;
     }
 
+    table = ptql_memo_scan(sigar, query);
+
+    if (query->sort) {
+        size = pids->number;
+        if (query->limit && (query->limit < size)) {
+            size = query->limit;
+        }
+        entries = malloc(sizeof(*entries) * (size + 1));
+    }
+
     sigar_proc_list_create(proclist);
 
     for (i=0; i<pids->number; i++) {
-        int query_status =
+        int query_status;
+
+        if (!query->sort && query->limit &&
+            (proclist->number >= query->limit))
+        {
+            break;
+        }
+
+        query_status =
             sigar_ptql_query_match(sigar, query, pids->data[i]);
 
         if (query_status == SIGAR_OK) {
-            SIGAR_PROC_LIST_GROW(proclist);
-            proclist->data[proclist->number++] = pids->data[i];
+            if (entries) {
+                ptql_sort_entry_t entry;
+
+                entry.pid = pids->data[i];
+                if (ptql_sort_value_get(sigar, query, entry.pid,
+                                        &entry.value) != SIGAR_OK)
+                {
+                    continue; /* e.g. permission denied */
+                }
+
+                if (n < size) {
+                    entries[n] = entry;
+                    ptql_sort_heap_up(query, entries, n++);
+                }
+                else if (size &&
+                         PTQL_SORT_AFTER(query, &entries[0], &entry))
+                {
+                    entries[0] = entry;
+                    ptql_sort_heap_down(query, entries, n);
+                }
+            }
+            else {
+                SIGAR_PROC_LIST_GROW(proclist);
+                proclist->data[proclist->number++] = pids->data[i];
+            }
         }
         else if (query_status == SIGAR_ENOTIMPL) {
             /* let caller know query is invalid. */
@@ -1955,12 +2727,52 @@ SIGAR_DECLARE(int) sigar_ptql_query_find(sigar_t *sigar,
         }
     }
 
+    ptql_memo_sweep(table);
     ptql_proc_list_destroy(sigar, pids);
 
     if (status != SIGAR_OK) {
+        if (entries) {
+            free(entries);
+        }
         sigar_proc_list_destroy(sigar, proclist);
         return status;
     }
 
+    if (entries) {
+        qsort(entries, n, sizeof(*entries),
+              query->sort_desc ? ptql_sort_desc : ptql_sort_asc);
+
+        for (i=0; i<n; i++) {
+            SIGAR_PROC_LIST_GROW(proclist);
+            proclist->data[proclist->number++] = entries[i].pid;
+        }
+    }
+
+    if (values) {
+        *values = malloc(sizeof(**values) * (proclist->number + 1));
+        for (i=0; i<proclist->number; i++) {
+            (*values)[i] = entries ? entries[i].value : 0;
+        }
+    }
+
+    if (entries) {
+        free(entries);
+    }
+
     return SIGAR_OK;
 }
+
+SIGAR_DECLARE(int) sigar_ptql_query_find(sigar_t *sigar,
+                                         sigar_ptql_query_t *query,
+                                         sigar_proc_list_t *proclist)
+{
+    return ptql_query_find(sigar, query, proclist, NULL);
+}
+
+SIGAR_DECLARE(int) sigar_ptql_query_find_sorted(sigar_t *sigar,
+                                                sigar_ptql_query_t *query,
+                                                sigar_proc_list_t *proclist,
+                                                double **values)
+{
+    return ptql_query_find(sigar, query, proclist, values);
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2009, Sun Microsystems Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * - Neither the name of Sun Microsystems Inc. nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+#include <assert.h>
+#include <stdlib.h>
+#include <stdio.h>
+#include <string.h>
+
+#include "sigar.h"
+#include "sigar_private.h"
+#include "sigar_util.h"
+#include "sigar_tests.h"
+
+static int sweep_odd(void *data, sigar_cache_entry_t *entry) {
+	int *swept = (int *)data;
+
+	if (entry->id % 2) {
+		(*swept)++;
+		return 1;
+	}
+	return 0;
+}
+
+TEST(test_sigar_cache) {
+	sigar_cache_t *cache = sigar_cache_new(4);
+	sigar_cache_entry_t *entry;
+	sigar_uint64_t i;
+	int swept = 0;
+
+	/* grows past the initial size */
+	for (i = 0; i < 1000; i++) {
+		entry = sigar_cache_get(cache, i);
+		assert(entry->id == i);
+		assert(entry->value == NULL);
+		entry->value = malloc(sizeof(i));
+		memcpy(entry->value, &i, sizeof(i));
+	}
+	assert(cache->count == 1000);
+
+	for (i = 0; i < 1000; i++) {
+		entry = sigar_cache_find(cache, i);
+		assert(entry != NULL);
+		assert(*(sigar_uint64_t *)entry->value == i);
+		assert(sigar_cache_get(cache, i) == entry);
+	}
+	assert(sigar_cache_find(cache, 1000) == NULL);
+
+	/* delete */
+	assert(sigar_cache_delete(cache, 10) == 1);
+	assert(sigar_cache_delete(cache, 10) == 0);
+	assert(sigar_cache_find(cache, 10) == NULL);
+	assert(sigar_cache_find(cache, 11) != NULL);
+	assert(cache->count == 999);
+
+	/* sweep */
+	sigar_cache_sweep(cache, sweep_odd, &swept);
+	assert(swept == 500);
+	assert(cache->count == 499);
+	for (i = 0; i < 1000; i++) {
+		entry = sigar_cache_find(cache, i);
+		if ((i % 2) || (i == 10)) {
+			assert(entry == NULL);
+		}
+		else {
+			assert(entry != NULL);
+			assert(*(sigar_uint64_t *)entry->value == i);
+		}
+	}
+
+	/* churn does not grow the table */
+	for (i = 0; i < 100000; i++) {
+		sigar_cache_get(cache, 1000 + i);
+		assert(sigar_cache_delete(cache, 1000 + i) == 1);
+	}
+	assert(cache->count == 499);
+	assert(cache->size <= 4096);
+
+	sigar_cache_destroy(cache);
+
+	return 0;
+}
+
+int main() {
+	sigar_t *t;
+
+	assert(SIGAR_OK == sigar_open(&t));
+
+	test_sigar_cache(t);
+
+	sigar_close(t);
+
+	return 0;
+}
@@ -39,6 +39,12 @@
 #include <stdio.h>
 #include <string.h>
 #include <errno.h>
+#ifdef SIGAR_TEST_OS_LINUX
+#include <unistd.h>
+#include <sys/socket.h>
+#include <netinet/in.h>
+#include <arpa/inet.h>
+#endif
 
 #include "sigar.h"
 #include "sigar_private.h"
@@ -84,6 +90,162 @@ TEST(test_sigar_net_connections_get) {
 	return 0;
 }
 
+#ifdef SIGAR_TEST_OS_LINUX
+/**
+ * sigar_t handle with SIGAR_PROC_NET set, which makes
+ * the linux port skip sock_diag and read /proc/net/{tcp,udp}{,6}
+ */
+static sigar_t *proc_net_open(void) {
+	sigar_t *p;
+
+	assert(0 == setenv("SIGAR_PROC_NET", "/proc", 1));
+	assert(SIGAR_OK == sigar_open(&p));
+	assert(0 == unsetenv("SIGAR_PROC_NET"));
+
+	return p;
+}
+
+static sigar_net_connection_t *conn_find(sigar_net_connection_list_t *connlist,
+		sigar_net_connection_t *con) {
+	size_t i;
+
+	for (i = 0; i < connlist->number; i++) {
+		sigar_net_connection_t *c = &connlist->data[i];
+
+		if ((c->inode == con->inode) && (c->type == con->type)) {
+			return c;
+		}
+	}
+
+	return NULL;
+}
+
+static void conn_list_contains(sigar_net_connection_list_t *a,
+		sigar_net_connection_list_t *b) {
+	size_t i;
+
+	for (i = 0; i < a->number; i++) {
+		sigar_net_connection_t *con = &a->data[i];
+		sigar_net_connection_t *c = conn_find(b, con);
+
+		if (c == NULL) {
+			fprintf(stderr, "inode %lu (port %lu) missing" EOL,
+					(unsigned long)con->inode, con->local_port);
+			assert(c != NULL);
+		}
+
+		assert(c->local_port == con->local_port);
+		assert(c->remote_port == con->remote_port);
+		assert(c->state == con->state);
+		assert(c->uid == con->uid);
+		assert(SIGAR_OK == sigar_net_address_equals(&c->local_address,
+					&con->local_address));
+	}
+}
+
+/**
+ * listening sockets read via sock_diag and via /proc/net must be the same
+ */
+TEST(test_sigar_net_connections_diag) {
+	sigar_t *p = proc_net_open();
+	sigar_net_connection_list_t diaglist, proclist;
+	int flags = SIGAR_NETCONN_SERVER |
+		SIGAR_NETCONN_TCP | SIGAR_NETCONN_UDP;
+
+	assert(SIGAR_OK == sigar_net_connection_list_get(t, &diaglist, flags));
+	assert(SIGAR_OK == sigar_net_connection_list_get(p, &proclist, flags));
+
+	assert(diaglist.number == proclist.number);
+	conn_list_contains(&diaglist, &proclist);
+	conn_list_contains(&proclist, &diaglist);
+
+	assert(SIGAR_OK == sigar_net_connection_list_destroy(t, &diaglist));
+	assert(SIGAR_OK == sigar_net_connection_list_destroy(p, &proclist));
+
+	sigar_close(p);
+
+	return 0;
+}
+
+static int port_conn_walker(sigar_net_connection_walker_t *walker,
+		sigar_net_connection_t *con) {
+	sigar_net_connection_list_t *connlist = walker->data;
+
+	assert(con->local_port == walker->port ||
+			con->remote_port == walker->port);
+
+	SIGAR_NET_CONNLIST_GROW(connlist);
+	memcpy(&connlist->data[connlist->number++], con, sizeof(*con));
+
+	return SIGAR_OK;
+}
+
+static void port_conn_list_get(sigar_t *sigar,
+		sigar_net_connection_list_t *connlist,
+		unsigned long port) {
+	sigar_net_connection_walker_t walker;
+
+	assert(SIGAR_OK == sigar_net_connection_list_create(connlist));
+
+	walker.sigar = sigar;
+	walker.data = connlist;
+	walker.add_connection = port_conn_walker;
+	walker.flags = SIGAR_NETCONN_SERVER | SIGAR_NETCONN_CLIENT |
+		SIGAR_NETCONN_TCP | SIGAR_NETCONN_PORT;
+	walker.port = port;
+
+	assert(SIGAR_OK == sigar_net_connection_walk(&walker));
+}
+
+/**
+ * the SIGAR_NETCONN_PORT filter is applied by the kernel for sock_diag
+ * and by proc_net_read otherwise, both must find our own listener
+ */
+TEST(test_sigar_net_connections_port) {
+	sigar_t *p = proc_net_open();
+	sigar_net_connection_list_t diaglist, proclist;
+	struct sockaddr_in sin;
+	socklen_t len = sizeof(sin);
+	unsigned long port;
+	sigar_pid_t pid;
+	int fd;
+
+	assert(-1 != (fd = socket(AF_INET, SOCK_STREAM, 0)));
+
+	memset(&sin, 0, sizeof(sin));
+	sin.sin_family = AF_INET;
+	sin.sin_addr.s_addr = htonl(INADDR_LOOPBACK);
+	sin.sin_port = 0;
+
+	assert(0 == bind(fd, (struct sockaddr *)&sin, sizeof(sin)));
+	assert(0 == listen(fd, 1));
+	assert(0 == getsockname(fd, (struct sockaddr *)&sin, &len));
+	port = ntohs(sin.sin_port);
+
+	port_conn_list_get(t, &diaglist, port);
+	port_conn_list_get(p, &proclist, port);
+
+	assert(diaglist.number == 1);
+	assert(proclist.number == 1);
+	conn_list_contains(&diaglist, &proclist);
+	assert(diaglist.data[0].local_port == port);
+	assert(diaglist.data[0].state == SIGAR_TCP_LISTEN);
+
+	assert(SIGAR_OK == sigar_proc_port_get(t, SIGAR_NETCONN_TCP, port, &pid));
+	assert(pid == sigar_pid_get(t));
+	assert(SIGAR_OK == sigar_proc_port_get(p, SIGAR_NETCONN_TCP, port, &pid));
+	assert(pid == sigar_pid_get(p));
+
+	assert(SIGAR_OK == sigar_net_connection_list_destroy(t, &diaglist));
+	assert(SIGAR_OK == sigar_net_connection_list_destroy(p, &proclist));
+
+	close(fd);
+	sigar_close(p);
+
+	return 0;
+}
+#endif
+
 int main() {
 	sigar_t *t;
 	int err = 0;
@@ -91,6 +253,10 @@ int main() {
 	assert(SIGAR_OK == sigar_open(&t));
 
 	test_sigar_net_connections_get(t);
+#ifdef SIGAR_TEST_OS_LINUX
+	test_sigar_net_connections_diag(t);
+	test_sigar_net_connections_port(t);
+#endif
 
 	sigar_close(t);
 
@@ -42,6 +42,11 @@
 #if defined(_WIN32)
 #include <WinError.h>
 #endif
+#ifdef SIGAR_TEST_OS_LINUX
+#include <unistd.h>
+#include <signal.h>
+#include <sys/wait.h>
+#endif
 
 #include "sigar.h"
 #include "sigar_private.h"
@@ -63,6 +68,39 @@ TEST(test_sigar_proc_stat_get) {
 	return 0;
 }
 
+#ifdef SIGAR_TEST_OS_LINUX
+/**
+ * subscribing to process events must not hide zombies,
+ * which the event pid set drops on EXIT
+ */
+TEST(test_sigar_proc_stat_zombie) {
+	sigar_proc_event_list_t events;
+	sigar_proc_stat_t proc_stat;
+	siginfo_t info;
+	pid_t pid;
+
+	if (SIGAR_OK != sigar_proc_event_list_get(t, &events, 0)) {
+		return 0; /* e.g. no CAP_NET_ADMIN */
+	}
+	sigar_proc_event_list_destroy(t, &events);
+
+	if ((pid = fork()) == 0) {
+		_exit(0);
+	}
+	assert(pid > 0);
+
+	/* wait for the exit, but leave the child unreaped */
+	assert(0 == waitid(P_PID, pid, &info, WEXITED | WNOWAIT));
+
+	assert(SIGAR_OK == sigar_proc_stat_get(t, &proc_stat));
+	assert(proc_stat.zombie >= 1);
+
+	waitpid(pid, NULL, 0);
+
+	return 0;
+}
+#endif
+
 TEST(test_sigar_proc_list_get) {
 	sigar_proc_list_t proclist;
 	size_t i;
@@ -191,6 +229,9 @@ int main() {
 	assert(SIGAR_OK == sigar_open(&t));
 
 	test_sigar_proc_stat_get(t);
+#ifdef SIGAR_TEST_OS_LINUX
+	test_sigar_proc_stat_zombie(t);
+#endif
 	test_sigar_proc_list_get(t);
 
 	sigar_close(t);